@@ -0,0 +1,92 @@
+package com.database.benchmarks;
+
+import com.database.models.Address;
+import com.database.models.Product;
+import com.database.services.ProductImportService;
+import com.database.services.entityManager.EntityManagerFactoryProvider;
+
+import javax.persistence.EntityManager;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Fresh in-memory H2 database (in MySQL mode) per benchmark trial, with the schema created from the
+ * persistence unit and seeded through the same code paths the application uses.
+ */
+final class BenchmarkDatabase {
+    static final int STOCK_PER_PRODUCT = 1_000_000_000;
+
+    private BenchmarkDatabase() {
+    }
+
+    static EntityManagerFactoryProvider createProvider() {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("javax.persistence.jdbc.url", "jdbc:h2:mem:shop-" + UUID.randomUUID() + ";MODE=MySQL");
+        properties.put("javax.persistence.jdbc.driver", "org.h2.Driver");
+        properties.put("javax.persistence.jdbc.user", "sa");
+        properties.put("javax.persistence.jdbc.password", "");
+        properties.put("javax.persistence.schema-generation.database.action", "create");
+        properties.put("hibernate.generate_statistics", "false");
+        return new EntityManagerFactoryProvider(EntityManagerFactoryProvider.PERSISTENCE_UNIT_NAME, properties);
+    }
+
+    /**
+     * Products get the ids 1..productCount.
+     */
+    static void seedProducts(EntityManagerFactoryProvider provider, int productCount) {
+        try {
+            Path csvFile = Files.createTempFile("benchmark-products", ".csv");
+            try (BufferedWriter writer = Files.newBufferedWriter(csvFile, StandardCharsets.UTF_8)) {
+                writer.write("name,priceBeforeDiscount,priceAfterDiscount,quantity,description,discount,productType,properties");
+                writer.newLine();
+                for (int i = 1; i <= productCount; i++) {
+                    int price = 10 + i % 100;
+                    writer.write("product" + i + "," + price + "," + price + "," + STOCK_PER_PRODUCT + ",benchmark product " + i + ",1,BAG,colour=black");
+                    writer.newLine();
+                }
+            }
+            new ProductImportService(provider).importProducts(csvFile, 1000);
+            Files.delete(csvFile);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static void seedAddresses(EntityManagerFactoryProvider provider, int addressCount) {
+        EntityManager entityManager = provider.getEntityManagerFactory().createEntityManager();
+        try {
+            entityManager.getTransaction().begin();
+            for (int i = 0; i < addressCount; i++) {
+                entityManager.persist(address(i));
+                if (i % 1000 == 999) {
+                    entityManager.flush();
+                    entityManager.clear();
+                }
+            }
+            entityManager.getTransaction().commit();
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    static List<Product> loadProducts(EntityManagerFactoryProvider provider) {
+        EntityManager entityManager = provider.getEntityManagerFactory().createEntityManager();
+        try {
+            return entityManager.createQuery("from Product p order by p.id", Product.class).getResultList();
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    static Address address(long number) {
+        return new Address("Poland", "30-091", "Cracow", "street " + number, (int) (number % 100) + 1);
+    }
+}
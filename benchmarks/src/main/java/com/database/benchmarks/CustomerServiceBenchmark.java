@@ -0,0 +1,84 @@
+package com.database.benchmarks;
+
+import com.database.models.Customer;
+import com.database.services.CustomerService;
+import com.database.services.entityManager.EntityManagerFactoryProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Date;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class CustomerServiceBenchmark {
+
+    @Param({"1000", "100000"})
+    private int addressCount;
+
+    private final AtomicLong newAddressNumber = new AtomicLong();
+    private EntityManagerFactoryProvider provider;
+    private CustomerService customerService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        provider = BenchmarkDatabase.createProvider();
+        BenchmarkDatabase.seedAddresses(provider, addressCount);
+        newAddressNumber.set(addressCount);
+        customerService = new CustomerService(provider);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        provider.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Customer addCustomerWithNewAddress() {
+        return addCustomer(newAddressNumber.getAndIncrement());
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Customer addCustomerWithNewAddressConcurrently() {
+        return addCustomer(newAddressNumber.getAndIncrement());
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Customer addCustomerWithExistingAddress() {
+        return addCustomer(ThreadLocalRandom.current().nextInt(addressCount));
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Customer addCustomerWithExistingAddressConcurrently() {
+        return addCustomer(ThreadLocalRandom.current().nextInt(addressCount));
+    }
+
+    private Customer addCustomer(long addressNumber) {
+        Customer customer = new Customer("Patrick", "Smith", "benchmark@test.com", new Date(11111999L), "password", false,
+                BenchmarkDatabase.address(addressNumber));
+        customerService.addCustomerToDatabase(customer);
+        return customer;
+    }
+}
@@ -0,0 +1,65 @@
+package com.database.benchmarks;
+
+import com.database.services.concurrent.StripedLocks;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.infra.IterationParams;
+import org.openjdk.jmh.profile.InternalProfiler;
+import org.openjdk.jmh.results.AggregationPolicy;
+import org.openjdk.jmh.results.IterationResult;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.ScalarResult;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Lock waits of the striped product locks of {@link ProductLockBenchmark} as secondary results of every
+ * iteration, so they end up in JMH's output and result files, e.g.
+ * {@code -prof com.database.benchmarks.LockWaitProfiler -rf json}. The counts are those of the iteration, the
+ * wait percentiles cover the trial so far.
+ */
+public class LockWaitProfiler implements InternalProfiler {
+    private static volatile StripedLocks locks;
+
+    private StripedLocks locksBefore;
+    private long acquisitionsBefore;
+    private long contendedAcquisitionsBefore;
+
+    /**
+     * Locks of the running trial, null when it takes no striped locks.
+     */
+    static void setLocks(StripedLocks stripedLocks) {
+        locks = stripedLocks;
+    }
+
+    @Override
+    public String getDescription() {
+        return "Lock waits of the striped product locks";
+    }
+
+    @Override
+    public void beforeIteration(BenchmarkParams benchmarkParams, IterationParams iterationParams) {
+        // the trial's setup runs after the first beforeIteration, so these may still be the locks of an earlier trial
+        locksBefore = locks;
+        acquisitionsBefore = locksBefore == null ? 0 : locksBefore.getAcquisitions();
+        contendedAcquisitionsBefore = locksBefore == null ? 0 : locksBefore.getContendedAcquisitions();
+    }
+
+    @Override
+    public Collection<? extends Result> afterIteration(BenchmarkParams benchmarkParams, IterationParams iterationParams, IterationResult result) {
+        StripedLocks current = locks;
+        if (current == null) {
+            return Collections.emptyList();
+        }
+        if (current != locksBefore) {
+            acquisitionsBefore = 0;
+            contendedAcquisitionsBefore = 0;
+        }
+        return List.of(
+                new ScalarResult("lock.acquisitions", current.getAcquisitions() - acquisitionsBefore, "#", AggregationPolicy.SUM),
+                new ScalarResult("lock.contended", current.getContendedAcquisitions() - contendedAcquisitionsBefore, "#", AggregationPolicy.SUM),
+                new ScalarResult("lock.wait.p99", current.getLockWaitP99Millis(), "ms", AggregationPolicy.MAX),
+                new ScalarResult("lock.wait.max", current.getLockWaitMaxMillis(), "ms", AggregationPolicy.MAX));
+    }
+}
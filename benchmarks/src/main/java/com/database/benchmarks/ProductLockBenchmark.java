@@ -0,0 +1,71 @@
+package com.database.benchmarks;
+
+import com.database.services.ProductService;
+import com.database.services.concurrent.StripedLocks;
+import com.database.services.entityManager.EntityManagerFactoryProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Concurrent purchases of a few hot products, with the buyers either queuing only on the product rows in the
+ * database or first on the striped product locks of {@link ProductService#setProductLocks(StripedLocks)}.
+ * Run with as many threads as the box has cores, e.g. {@code -t 16}, and one hot product for the worst case.
+ * Add {@code -prof com.database.benchmarks.LockWaitProfiler} for the lock waits of the striped runs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ProductLockBenchmark {
+
+    @Param({"database", "striped"})
+    private String locking;
+
+    @Param({"1", "16", "1000"})
+    private int hotProducts;
+
+    @Param({"256"})
+    private int stripes;
+
+    private EntityManagerFactoryProvider provider;
+    private ProductService productService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        provider = BenchmarkDatabase.createProvider();
+        BenchmarkDatabase.seedProducts(provider, hotProducts);
+        productService = new ProductService(provider);
+        if (locking.equals("striped")) {
+            productService.setProductLocks(new StripedLocks(stripes));
+        }
+        LockWaitProfiler.setLocks(productService.getProductLocks());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        provider.close();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void buyHotProduct() {
+        productService.buyProduct(ThreadLocalRandom.current().nextLong(1, hotProducts + 1), 1);
+    }
+}
@@ -0,0 +1,77 @@
+package com.database.benchmarks;
+
+import com.database.models.Product;
+import com.database.services.ProductService;
+import com.database.services.entityManager.EntityManagerFactoryProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ProductServiceBenchmark {
+
+    @Param({"1000", "100000"})
+    private int productCount;
+
+    private EntityManagerFactoryProvider provider;
+    private ProductService productService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        provider = BenchmarkDatabase.createProvider();
+        BenchmarkDatabase.seedProducts(provider, productCount);
+        productService = new ProductService(provider);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        provider.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Product getProductById() {
+        return productService.getProductById(randomProductId());
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Product getProductByIdConcurrently() {
+        return productService.getProductById(randomProductId());
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void buyProduct() {
+        productService.buyProduct(randomProductId(), 1);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void buyProductConcurrently() {
+        productService.buyProduct(randomProductId(), 1);
+    }
+
+    private long randomProductId() {
+        return ThreadLocalRandom.current().nextLong(1, productCount + 1);
+    }
+}
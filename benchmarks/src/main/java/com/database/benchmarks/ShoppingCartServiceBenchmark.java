@@ -0,0 +1,105 @@
+package com.database.benchmarks;
+
+import com.database.models.Customer;
+import com.database.models.Product;
+import com.database.models.ShoppingCart;
+import com.database.models.enums.Status;
+import com.database.services.ShoppingCartService;
+import com.database.services.entityManager.EntityManagerFactoryProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Every benchmark thread works on its own cart, so the numbers show the cost of a cart operation and not
+ * the contention on one cart row. Removal works on lines that are filled up at setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ShoppingCartServiceBenchmark {
+    private static final int PREFILLED_LINES = 100;
+
+    @Param({"1000", "100000"})
+    private int productCount;
+
+    private EntityManagerFactoryProvider provider;
+    private ShoppingCartService shoppingCartService;
+    private List<Product> products;
+
+    @State(Scope.Thread)
+    public static class ThreadCart {
+        private Long shoppingCartId;
+
+        @Setup(Level.Trial)
+        public void setUp(ShoppingCartServiceBenchmark benchmark) {
+            Customer customer = new Customer("Patrick", "Smith", "benchmark@test.com", new Date(11111999L), "password", false, BenchmarkDatabase.address(0));
+            ShoppingCart shoppingCart = new ShoppingCart(new Date(), 0, Status.IN_PROGRESS, customer);
+            benchmark.shoppingCartService.addShoppingCartToDatabase(shoppingCart);
+            shoppingCartId = shoppingCart.getId();
+            for (int i = 0; i < PREFILLED_LINES; i++) {
+                benchmark.shoppingCartService.addProductToShoppingCart(shoppingCartId, benchmark.products.get(i), 1_000_000);
+            }
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        provider = BenchmarkDatabase.createProvider();
+        BenchmarkDatabase.seedProducts(provider, Math.max(productCount, PREFILLED_LINES));
+        products = BenchmarkDatabase.loadProducts(provider);
+        shoppingCartService = new ShoppingCartService(provider);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        provider.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void addProductToShoppingCart(ThreadCart cart) {
+        shoppingCartService.addProductToShoppingCart(cart.shoppingCartId, randomProduct(products.size()));
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void addProductToShoppingCartConcurrently(ThreadCart cart) {
+        shoppingCartService.addProductToShoppingCart(cart.shoppingCartId, randomProduct(products.size()));
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void removeProductFromShoppingCart(ThreadCart cart) {
+        shoppingCartService.removeProductFromShoppingCart(cart.shoppingCartId, randomProduct(PREFILLED_LINES), 1);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void removeProductFromShoppingCartConcurrently(ThreadCart cart) {
+        shoppingCartService.removeProductFromShoppingCart(cart.shoppingCartId, randomProduct(PREFILLED_LINES), 1);
+    }
+
+    private Product randomProduct(int bound) {
+        return products.get(ThreadLocalRandom.current().nextInt(bound));
+    }
+}
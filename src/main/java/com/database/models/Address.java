@@ -1,7 +1,12 @@
 package com.database.models;
 
 import javax.persistence.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
 import java.util.HashSet;
+import java.util.Locale;
 import java.util.Set;
 
 @Entity
@@ -17,6 +22,9 @@ public class Address {
     private String street;
     private int homeNumber;
 
+    @Column(unique = true, nullable = false, length = 64)
+    private String fingerprint;
+
     @OneToMany(mappedBy = "address")
     private Set<Customer> customers = new HashSet<>();
 
@@ -75,6 +83,42 @@ public class Address {
         this.homeNumber = homeNumber;
     }
 
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * SHA-256 of the normalized address, so the same address typed with different case or spacing
+     * ends up in the same row.
+     */
+    public static String fingerprintOf(Address address) {
+        String normalized = normalize(address.country) + '|' + normalize(address.zipCode) + '|' + normalize(address.city)
+                + '|' + normalize(address.street) + '|' + address.homeNumber;
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(normalized.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static String normalize(String value) {
+        if (value == null) {
+            return "";
+        }
+        return Normalizer.normalize(value, Normalizer.Form.NFC).trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    @PrePersist
+    @PreUpdate
+    private void updateFingerprint() {
+        fingerprint = fingerprintOf(this);
+    }
+
     public Set<Customer> getCustomers() {
         return customers;
     }
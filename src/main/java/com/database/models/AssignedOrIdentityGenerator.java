@@ -0,0 +1,21 @@
+package com.database.models;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentityGenerator;
+
+import java.io.Serializable;
+
+/**
+ * Identity column generation that keeps an id the application assigned before saving, e.g. a customer id
+ * chosen by the shard router. Only {@code Session.save} inserts an entity with an assigned id, JPA's persist
+ * takes it for a detached entity.
+ */
+public class AssignedOrIdentityGenerator extends IdentityGenerator {
+    public static final String NAME = "assigned-or-identity";
+
+    @Override
+    public Serializable generate(SharedSessionContractImplementor session, Object object) {
+        Serializable id = session.getEntityPersister(null, object).getIdentifier(object, session);
+        return id != null ? id : super.generate(session, object);
+    }
+}
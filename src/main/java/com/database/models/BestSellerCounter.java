@@ -0,0 +1,43 @@
+package com.database.models;
+
+import com.database.models.enums.ProductType;
+
+import javax.persistence.*;
+
+/**
+ * Stored total of units sold of a product, written periodically by the best seller tracker of ProductService.
+ */
+@Entity
+@Table(name = "best_seller_counter")
+public class BestSellerCounter {
+
+    @Id
+    private Long productId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 32)
+    private ProductType productType;
+
+    private long unitsSold;
+
+    public BestSellerCounter() {
+    }
+
+    public BestSellerCounter(Long productId, ProductType productType, long unitsSold) {
+        this.productId = productId;
+        this.productType = productType;
+        this.unitsSold = unitsSold;
+    }
+
+    public Long getProductId() {
+        return productId;
+    }
+
+    public ProductType getProductType() {
+        return productType;
+    }
+
+    public long getUnitsSold() {
+        return unitsSold;
+    }
+}
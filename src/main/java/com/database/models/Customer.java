@@ -1,5 +1,7 @@
 package com.database.models;
 
+import org.hibernate.annotations.GenericGenerator;
+
 import javax.persistence.*;
 import java.util.Date;
 import java.util.HashSet;
@@ -10,7 +12,8 @@ import java.util.Set;
 public class Customer {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(generator = AssignedOrIdentityGenerator.NAME)
+    @GenericGenerator(name = AssignedOrIdentityGenerator.NAME, strategy = "com.database.models.AssignedOrIdentityGenerator")
     private Long id;
     private String name;
     private String surname;
@@ -44,6 +47,10 @@ public class Customer {
         return id;
     }
 
+    public void setId(Long id) {
+        this.id = id;
+    }
+
     public String getName() {
         return name;
     }
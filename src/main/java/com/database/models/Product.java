@@ -1,13 +1,22 @@
 package com.database.models;
 
 import com.database.models.enums.ProductType;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 import javax.persistence.*;
 import java.util.HashSet;
 import java.util.Set;
 
 @Entity
-@Table(name = "product")
+@Table(name = "product", indexes = {
+        @Index(name = "product_type_price_idx", columnList = "productType, priceAfterDiscount"),
+        @Index(name = "product_price_idx", columnList = "priceAfterDiscount"),
+        @Index(name = "product_type_name_idx", columnList = "productType, name"),
+        @Index(name = "product_name_idx", columnList = "name")
+})
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "product")
 public class Product {
 
     @Id
@@ -24,11 +33,9 @@ public class Product {
     private ProductType productType;
 
     @OneToMany(mappedBy = "product")
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "product-properties")
     private Set<Property> properties = new HashSet<>();
 
-    @ManyToMany(mappedBy = "products")
-    private Set<ShoppingCart> shoppingCarts = new HashSet<>();
-
 
     public Product() {
     }
@@ -103,14 +110,6 @@ public class Product {
         this.productType = productType;
     }
 
-    public Set<ShoppingCart> getShoppingCarts() {
-        return shoppingCarts;
-    }
-
-    public void setShoppingCarts(Set<ShoppingCart> shoppingCarts) {
-        this.shoppingCarts = shoppingCarts;
-    }
-
     public Set<Property> getProperties() {
         return properties;
     }
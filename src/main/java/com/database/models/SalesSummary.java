@@ -0,0 +1,74 @@
+package com.database.models;
+
+import com.database.models.enums.ProductType;
+
+import javax.persistence.*;
+import java.util.Date;
+
+/**
+ * Units sold and revenue of one product type on one day. The sales of a type and day are spread over up to
+ * {@link #STRIPES} rows, so concurrent checkouts rarely update the same row, and SalesSummaryService adds the
+ * stripes up when reading. Rows are maintained by the checkouts themselves (see ShoppingCartService#updateStatus)
+ * and rebuilt from the cart history by SalesSummaryService, never edited through the entity.
+ */
+@Entity
+@Table(name = "sales_summary", uniqueConstraints = {
+        @UniqueConstraint(name = "sales_summary_type_date_stripe_uk", columnNames = {"productType", "saleDate", "stripe"})
+}, indexes = {
+        @Index(name = "sales_summary_date_idx", columnList = "saleDate")
+})
+public class SalesSummary {
+    public static final int STRIPES = 16;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 32)
+    private ProductType productType;
+
+    @Temporal(TemporalType.DATE)
+    @Column(nullable = false)
+    private Date saleDate;
+
+    private int stripe;
+    private long unitsSold;
+    private double revenue;
+
+    public SalesSummary() {
+    }
+
+    /**
+     * Sales of the type on the day, all stripes added up.
+     */
+    public SalesSummary(ProductType productType, Date saleDate, long unitsSold, double revenue) {
+        this.productType = productType;
+        this.saleDate = saleDate;
+        this.unitsSold = unitsSold;
+        this.revenue = revenue;
+    }
+
+    /**
+     * Null for the sales read through SalesSummaryService, which add up several rows.
+     */
+    public Long getId() {
+        return id;
+    }
+
+    public ProductType getProductType() {
+        return productType;
+    }
+
+    public Date getSaleDate() {
+        return saleDate;
+    }
+
+    public long getUnitsSold() {
+        return unitsSold;
+    }
+
+    public double getRevenue() {
+        return revenue;
+    }
+}
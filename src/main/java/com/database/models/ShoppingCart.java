@@ -1,6 +1,5 @@
 package com.database.models;
 
-import com.database.models.enums.ProductType;
 import com.database.models.enums.Status;
 
 import javax.persistence.*;
@@ -9,7 +8,10 @@ import java.util.HashSet;
 import java.util.Set;
 
 @Entity
-@Table(name = "shopping_cart")
+@Table(name = "shopping_cart", indexes = {
+        @Index(name = "shopping_cart_status_date_idx", columnList = "status, dateOfPurchase"),
+        @Index(name = "shopping_cart_customer_date_idx", columnList = "customer_id, dateOfPurchase, id")
+})
 public class ShoppingCart {
 
     @Id
@@ -25,13 +27,8 @@ public class ShoppingCart {
     @JoinColumn(name = "customer_id", nullable = false)
     private Customer customer;
 
-    @ManyToMany
-    @JoinTable(
-            name = "shoppingCart_and_product",
-            joinColumns = {@JoinColumn(name = "shoppingCart_id")},
-            inverseJoinColumns = {@JoinColumn(name = "product_id")}
-    )
-    private Set<Product> products = new HashSet<>();
+    @OneToMany(mappedBy = "shoppingCart", cascade = CascadeType.REMOVE)
+    private Set<CartLine> lines = new HashSet<>();
 
     public ShoppingCart() {
     }
@@ -63,6 +60,14 @@ public class ShoppingCart {
         this.totalPrice = totalPrice;
     }
 
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
     public Customer getCustomer() {
         return customer;
     }
@@ -71,11 +76,11 @@ public class ShoppingCart {
         this.customer = customer;
     }
 
-    public Set<Product> getProducts() {
-        return products;
+    public Set<CartLine> getLines() {
+        return lines;
     }
 
-    public void setProducts(Set<Product> products) {
-        this.products = products;
+    public void setLines(Set<CartLine> lines) {
+        this.lines = lines;
     }
 }
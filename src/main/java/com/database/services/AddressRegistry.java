@@ -0,0 +1,86 @@
+package com.database.services;
+
+import com.database.models.Address;
+import org.hibernate.exception.ConstraintViolationException;
+
+import javax.persistence.EntityManager;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds or creates addresses by their unique fingerprint, so registering a customer costs one indexed
+ * lookup (or none, when the fingerprint is in the bounded LRU cache) whatever the size of the address table.
+ */
+class AddressRegistry {
+    private static final int DEFAULT_CACHE_SIZE = 10_000;
+
+    private final Map<String, Long> addressIdsByFingerprint;
+
+    AddressRegistry() {
+        this(DEFAULT_CACHE_SIZE);
+    }
+
+    AddressRegistry(int cacheSize) {
+        addressIdsByFingerprint = Collections.synchronizedMap(new LinkedHashMap<String, Long>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > cacheSize;
+            }
+        });
+    }
+
+    /**
+     * Returns a managed address equal to the provided one, persisting the provided instance when there is none yet.
+     */
+    Address findOrCreate(EntityManager entityManager, Address address) {
+        String fingerprint = Address.fingerprintOf(address);
+
+        Long cachedAddressId = addressIdsByFingerprint.get(fingerprint);
+        if (cachedAddressId != null) {
+            return entityManager.getReference(Address.class, cachedAddressId);
+        }
+
+        List<Address> resultList = entityManager
+                .createQuery("from Address a where a.fingerprint = ?1", Address.class)
+                .setParameter(1, fingerprint)
+                .getResultList();
+
+        Address storedAddress;
+        if (resultList.isEmpty()) {
+            entityManager.persist(address);
+            storedAddress = address;
+        } else {
+            storedAddress = resultList.get(0);
+        }
+
+        addressIdsByFingerprint.put(fingerprint, storedAddress.getId());
+        return storedAddress;
+    }
+
+    /**
+     * Runs the transaction again when it failed on a constraint, either because a concurrent registration
+     * inserted the same address first or because a cached address was deleted in the meantime.
+     */
+    void retryOnConflict(Address address, Runnable transaction) {
+        try {
+            transaction.run();
+        } catch (RuntimeException e) {
+            if (!isConstraintViolation(e)) {
+                throw e;
+            }
+            addressIdsByFingerprint.remove(Address.fingerprintOf(address));
+            transaction.run();
+        }
+    }
+
+    private boolean isConstraintViolation(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConstraintViolationException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -3,129 +3,146 @@ package com.database.services;
 import com.database.models.Address;
 import com.database.models.Customer;
 import com.database.services.exceptions.InvalidParameterProvidedException;
-import com.database.services.exceptions.MoreThanOneFindedAddressException;
+import com.database.services.entityManager.EntityManagerFactoryProvider;
 import com.database.services.entityManager.EntityManagerService;
 import org.hibernate.Session;
 
-import javax.persistence.EntityTransaction;
-import javax.persistence.Query;
-import java.util.List;
-
 
 public class CustomerService extends EntityManagerService {
+    private final AddressRegistry addressRegistry = new AddressRegistry();
+    private final OrderHistoryLoader orderHistoryLoader = new OrderHistoryLoader();
 
-    public void addCustomerToDatabase(Customer customer) {
-        if (customer == null) {
-            throw new InvalidParameterProvidedException("customer shouldn't be null");
-        }
-
-        Address address = customer.getAddress();
+    public CustomerService() {
+    }
 
-        Query q = entityManager
-                .createQuery(
-                        "from Address a where a.city = ?1 AND a.country = ?2 AND a.homeNumber = ?3 AND a.street = ?4 AND a.zipCode = ?5", Address.class);
-        q.setParameter(1, address.getCity());
-        q.setParameter(2, address.getCountry());
-        q.setParameter(3, address.getHomeNumber());
-        q.setParameter(4, address.getStreet());
-        q.setParameter(5, address.getZipCode());
+    public CustomerService(EntityManagerFactoryProvider entityManagerFactoryProvider) {
+        super(entityManagerFactoryProvider);
+    }
 
-        List<Address> resultList = q.getResultList();
+    public void addCustomerToDatabase(Customer customer) {
+        runMetered(() -> {
+            if (customer == null) {
+                throw new InvalidParameterProvidedException("customer shouldn't be null");
+            }
 
-        EntityTransaction tx = entityManager.getTransaction();
-        tx.begin();
+            Address address = customer.getAddress();
 
-        if(resultList.size()==0){
-            entityManager.persist(customer);
-            customer.getAddress().getCustomers().add(customer);
-        }else if(resultList.size() ==1){
-            customer.setAddress(resultList.get(0));
-            entityManager.persist(customer);
+            addressRegistry.retryOnConflict(address, () -> runInTransaction(entityManager -> {
+                customer.setAddress(addressRegistry.findOrCreate(entityManager, address));
+                entityManager.persist(customer);
+            }));
             address.getCustomers().add(customer);
-        }else{
-            throw new MoreThanOneFindedAddressException("There are two or more equals addresses in database");
-        }
+        });
+    }
 
-        tx.commit();
+    /**
+     * Adds the customer under an id chosen by the caller instead of the database's next one, e.g. by
+     * {@link com.database.services.sharding.ShardedCustomerService}, which places customers by their id.
+     * A database takes its customers either all this way or all through {@link #addCustomerToDatabase(Customer)}:
+     * an assigned id moves the identity column past it, and generated ids could collide with later assigned ones.
+     */
+    public void addCustomerToDatabase(Customer customer, long customerId) {
+        runMetered(() -> {
+            if (customer == null) {
+                throw new InvalidParameterProvidedException("customer shouldn't be null");
+            }
+            validateCustomerId(customerId);
+
+            Address address = customer.getAddress();
+
+            addressRegistry.retryOnConflict(address, () -> runInTransaction(entityManager -> {
+                customer.setId(customerId);
+                customer.setAddress(addressRegistry.findOrCreate(entityManager, address));
+                entityManager.unwrap(Session.class).save(customer);
+            }));
+            address.getCustomers().add(customer);
+        });
     }
 
     public Customer getCustomerById(Long customerId) {
-        if (customerId == null || customerId <= 0) {
-            throw new InvalidParameterProvidedException("customerId shouldn't be null or lower than 0");
-        }
-        return entityManager.find(Customer.class, customerId);
+        return metered(() -> {
+            validateCustomerId(customerId);
+            return withReadOnlyEntityManager(entityManager -> entityManager.find(Customer.class, customerId));
+        });
+    }
+
+    /**
+     * Customer with the address and the shopping carts loaded, enough to list the orders. One statement.
+     */
+    public Customer getCustomerWithOrderSummary(Long customerId) {
+        return metered(() -> {
+            validateCustomerId(customerId);
+            return withReadOnlyEntityManager(entityManager -> orderHistoryLoader.loadCustomerWithShoppingCarts(entityManager, customerId));
+        });
+    }
+
+    /**
+     * Customer with the address, the shopping carts, their lines and the products with their properties loaded.
+     * Two statements, plus one for every further {@value OrderHistoryLoader#PRODUCT_BATCH_SIZE} distinct products.
+     * Carts buffered in an unpaid cart store are returned as last written to the database.
+     */
+    public Customer getCustomerWithOrderHistory(Long customerId) {
+        return metered(() -> {
+            validateCustomerId(customerId);
+            return withReadOnlyEntityManager(entityManager -> orderHistoryLoader.loadCustomerWithOrderHistory(entityManager, customerId));
+        });
     }
 
     public void removeCustomerFromDatabase(Long customerId) {
-        Customer customerById = getCustomerById(customerId);
-        EntityTransaction tx = entityManager.getTransaction();
-        tx.begin();
-        customerById.getAddress().getCustomers().remove(customerById);
-        entityManager.remove(customerById);
-        tx.commit();
+        runMetered(() -> {
+            validateCustomerId(customerId);
+            runInTransaction(entityManager -> {
+                Customer customerById = entityManager.find(Customer.class, customerId);
+                customerById.getAddress().getCustomers().remove(customerById);
+                entityManager.remove(customerById);
+            });
+        });
     }
 
     public void updateEmail(Long customerId, String email) {
-        if (email == null || email.equals("") || !email.contains("@")) {
-            throw new InvalidParameterProvidedException("email shouldn't be null, empty or should contain @ character as well");
-        }
-        Customer customerById = getCustomerById(customerId);
-        customerById.setEmail(email);
-        EntityTransaction tx = entityManager.getTransaction();
-        tx.begin();
-        entityManager.merge(customerById);
-        tx.commit();
+        runMetered(() -> {
+            if (email == null || email.equals("") || !email.contains("@")) {
+                throw new InvalidParameterProvidedException("email shouldn't be null, empty or should contain @ character as well");
+            }
+            validateCustomerId(customerId);
+            runInTransaction(entityManager -> entityManager.find(Customer.class, customerId).setEmail(email));
+        });
     }
 
     public void updatePassword(Long customerId, String password) {
-        if (password == null || password.equals("")) {
-            throw new InvalidParameterProvidedException("password shouldn't be null or empty as well");
-        }
-        Customer customerById = getCustomerById(customerId);
-        customerById.setPassword(password);
-        EntityTransaction tx = entityManager.getTransaction();
-        tx.begin();
-        entityManager.merge(customerById);
-        tx.commit();
+        runMetered(() -> {
+            if (password == null || password.equals("")) {
+                throw new InvalidParameterProvidedException("password shouldn't be null or empty as well");
+            }
+            validateCustomerId(customerId);
+            runInTransaction(entityManager -> entityManager.find(Customer.class, customerId).setPassword(password));
+        });
     }
 
     public void updateIsAdminStatus(Long customerId, boolean isAdmin) {
-        Customer customerById = getCustomerById(customerId);
-        customerById.setAdmin(isAdmin);
-        EntityTransaction tx = entityManager.getTransaction();
-        tx.begin();
-        entityManager.merge(customerById);
-        tx.commit();
+        runMetered(() -> {
+            validateCustomerId(customerId);
+            runInTransaction(entityManager -> entityManager.find(Customer.class, customerId).setAdmin(isAdmin));
+        });
     }
 
     public void updateAddress(Long customerId, Address address) {
-        if (address == null || address.getCountry() == null || address.getCity() == null || address.getZipCode() == null || address.getStreet() == null || address.getHomeNumber() == 0) {
-            throw new InvalidParameterProvidedException("address shouldn't be null and address parameters shouldn't be null");
-        }
+        runMetered(() -> {
+            if (address == null || address.getCountry() == null || address.getCity() == null || address.getZipCode() == null || address.getStreet() == null || address.getHomeNumber() == 0) {
+                throw new InvalidParameterProvidedException("address shouldn't be null and address parameters shouldn't be null");
+            }
+            validateCustomerId(customerId);
+
+            addressRegistry.retryOnConflict(address, () -> runInTransaction(entityManager -> {
+                Customer customerById = entityManager.find(Customer.class, customerId);
+                customerById.setAddress(addressRegistry.findOrCreate(entityManager, address));
+            }));
+        });
+    }
 
-        Customer customerById = getCustomerById(customerId);
-        EntityTransaction tx = entityManager.getTransaction();
-        Query q = entityManager
-                .createQuery(
-                        "from Address a where a.city = ?1 AND a.country = ?2 AND a.home_number = ?3 AND a.street = ?4 AND a.zipCode = ?5", Address.class);
-        q.setParameter(1, address.getCity());
-        q.setParameter(2, address.getCountry());
-        q.setParameter(3, address.getHomeNumber());
-        q.setParameter(4, address.getStreet());
-        q.setParameter(5, address.getZipCode());
-
-        List<Address> resultList = q.getResultList();
-
-        tx.begin();
-        if (resultList.size() == 1) {
-            customerById.setAddress(resultList.get(0));
-            resultList.get(0).getCustomers().add(customerById);
-
-        } else {
-            entityManager.persist(address);
-            customerById.setAddress(address);
-            address.getCustomers().add(customerById);
+    private void validateCustomerId(Long customerId) {
+        if (customerId == null || customerId <= 0) {
+            throw new InvalidParameterProvidedException("customerId shouldn't be null or lower than 0");
         }
-        tx.commit();
     }
 }
@@ -0,0 +1,54 @@
+package com.database.services;
+
+import com.database.models.enums.Status;
+import com.database.services.fulfilment.CartStatusRepository;
+import com.database.services.fulfilment.FulfilmentPipeline;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Creates {@link FulfilmentPipeline}s moving the carts stored in the database through their {@link Status} lifecycle.
+ * Status transitions go through {@link ShoppingCartService#transitionStatus(java.util.Collection, Status, Status)},
+ * so carts buffered by its unpaid cart store are written out when they move on from {@link Status#UNPAID}.
+ */
+public class FulfilmentService {
+    private final ShoppingCartService shoppingCartService;
+
+    public FulfilmentService() {
+        this(new ShoppingCartService());
+    }
+
+    public FulfilmentService(ShoppingCartService shoppingCartService) {
+        this.shoppingCartService = shoppingCartService;
+    }
+
+    public FulfilmentPipeline createPipeline() {
+        return new FulfilmentPipeline(new DatabaseCartStatusRepository());
+    }
+
+    private class DatabaseCartStatusRepository implements CartStatusRepository {
+
+        @Override
+        public long[] findCartIds(Status status, long afterId, int limit) {
+            return toArray(shoppingCartService.findShoppingCartIds(status, afterId, limit));
+        }
+
+        @Override
+        public long[] transition(long[] shoppingCartIds, Status from, Status to) {
+            List<Long> ids = new ArrayList<>(shoppingCartIds.length);
+            for (long shoppingCartId : shoppingCartIds) {
+                ids.add(shoppingCartId);
+            }
+            return toArray(shoppingCartService.transitionStatus(ids, from, to));
+        }
+
+        private long[] toArray(List<Long> ids) {
+            long[] array = new long[ids.size()];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = ids.get(i);
+            }
+            return array;
+        }
+    }
+}
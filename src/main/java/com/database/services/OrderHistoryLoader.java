@@ -0,0 +1,95 @@
+package com.database.services;
+
+import com.database.models.CartLine;
+import com.database.models.Customer;
+import com.database.models.Product;
+import com.database.models.ShoppingCart;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fetch plans of the order history. Each plan loads its graph with fetch joins in a number of statements that
+ * doesn't depend on the number of carts or lines: the collections along one path (customer, carts, lines,
+ * products) are fetched in one query, and the product properties, a second collection of the leaves, in one
+ * more query per {@value #PRODUCT_BATCH_SIZE} products. Joining them into the first query would multiply its
+ * rows by the number of properties.
+ */
+class OrderHistoryLoader {
+    static final int PRODUCT_BATCH_SIZE = 500;
+
+    private static final String DISTINCT_IN_MEMORY_ONLY = "hibernate.query.passDistinctThrough";
+
+    /**
+     * Customer with the address and the carts, one statement.
+     */
+    Customer loadCustomerWithShoppingCarts(EntityManager entityManager, Long customerId) {
+        return single(entityManager
+                .createQuery("select distinct c from Customer c join fetch c.address left join fetch c.shoppingCarts where c.id = ?1", Customer.class)
+                .setHint(DISTINCT_IN_MEMORY_ONLY, false)
+                .setParameter(1, customerId)
+                .getResultList());
+    }
+
+    /**
+     * Customer with the address, the carts, their lines and the products with their properties.
+     */
+    Customer loadCustomerWithOrderHistory(EntityManager entityManager, Long customerId) {
+        Customer customer = single(entityManager
+                .createQuery("select distinct c from Customer c join fetch c.address left join fetch c.shoppingCarts s "
+                        + "left join fetch s.lines l left join fetch l.product where c.id = ?1", Customer.class)
+                .setHint(DISTINCT_IN_MEMORY_ONLY, false)
+                .setParameter(1, customerId)
+                .getResultList());
+        if (customer != null) {
+            fetchProductProperties(entityManager, customer.getShoppingCarts());
+        }
+        return customer;
+    }
+
+    /**
+     * Cart with the customer and the address, the lines and the products with their properties.
+     */
+    ShoppingCart loadShoppingCartWithLines(EntityManager entityManager, Long shoppingCartId) {
+        ShoppingCart shoppingCart = single(entityManager
+                .createQuery("select distinct s from ShoppingCart s join fetch s.customer c join fetch c.address "
+                        + "left join fetch s.lines l left join fetch l.product where s.id = ?1", ShoppingCart.class)
+                .setHint(DISTINCT_IN_MEMORY_ONLY, false)
+                .setParameter(1, shoppingCartId)
+                .getResultList());
+        if (shoppingCart != null) {
+            fetchProductProperties(entityManager, List.of(shoppingCart));
+        }
+        return shoppingCart;
+    }
+
+    /**
+     * Initializes the properties of the products in the carts. The products are already managed, so fetching
+     * them again only fills their uninitialized collections.
+     */
+    private void fetchProductProperties(EntityManager entityManager, Collection<ShoppingCart> shoppingCarts) {
+        Map<Long, Product> products = new LinkedHashMap<>();
+        for (ShoppingCart shoppingCart : shoppingCarts) {
+            for (CartLine line : shoppingCart.getLines()) {
+                products.putIfAbsent(line.getProduct().getId(), line.getProduct());
+            }
+        }
+
+        List<Long> productIds = new ArrayList<>(products.keySet());
+        for (int from = 0; from < productIds.size(); from += PRODUCT_BATCH_SIZE) {
+            entityManager
+                    .createQuery("select distinct p from Product p left join fetch p.properties where p.id in ?1", Product.class)
+                    .setHint(DISTINCT_IN_MEMORY_ONLY, false)
+                    .setParameter(1, productIds.subList(from, Math.min(from + PRODUCT_BATCH_SIZE, productIds.size())))
+                    .getResultList();
+        }
+    }
+
+    private static <T> T single(List<T> results) {
+        return results.isEmpty() ? null : results.get(0);
+    }
+}
@@ -0,0 +1,230 @@
+package com.database.services;
+
+import com.database.models.Product;
+import com.database.models.Property;
+import com.database.models.enums.ProductType;
+import com.database.services.dto.ProductImportReport;
+import com.database.services.entityManager.EntityManagerFactoryProvider;
+import com.database.services.entityManager.EntityManagerService;
+import com.database.services.exceptions.InvalidParameterProvidedException;
+import com.database.services.index.ProductFacetIndex;
+import com.database.services.index.ProductSearchIndex;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streams a supplier catalog into the database. The file is a UTF-8 CSV with a header row and the columns
+ * {@code name,priceBeforeDiscount,priceAfterDiscount,quantity,description,discount,productType,properties},
+ * where the optional last column holds {@code key=value} pairs separated by {@code |}.
+ * Only one batch of rows is kept in memory at a time and every batch is written in its own transaction.
+ */
+public class ProductImportService extends EntityManagerService {
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    private static final String INSERT_PRODUCT = "insert into product (name, priceBeforeDiscount, priceAfterDiscount, quantity, description, discount, productType) values (?, ?, ?, ?, ?, ?, ?)";
+    private static final String INSERT_PROPERTY = "insert into Property (property, result, product_id) values (?, ?, ?)";
+
+    private ProductFacetIndex facetIndex;
+    private ProductSearchIndex searchIndex;
+
+    public ProductImportService() {
+    }
+
+    public ProductImportService(EntityManagerFactoryProvider entityManagerFactoryProvider) {
+        super(entityManagerFactoryProvider);
+    }
+
+    /**
+     * Imported products are added to the facet index as well when one is set.
+     */
+    public void setFacetIndex(ProductFacetIndex facetIndex) {
+        this.facetIndex = facetIndex;
+    }
+
+    /**
+     * Imported products are added to the search index as well when one is set.
+     */
+    public void setSearchIndex(ProductSearchIndex searchIndex) {
+        this.searchIndex = searchIndex;
+    }
+
+    public ProductImportReport importProducts(Path csvFile) {
+        return importProducts(csvFile, DEFAULT_BATCH_SIZE);
+    }
+
+    public ProductImportReport importProducts(Path csvFile, int batchSize) {
+        if (csvFile == null || batchSize <= 0) {
+            throw new InvalidParameterProvidedException("csvFile shouldn't be null and batchSize should be higher than 0");
+        }
+
+        ProductImportReport report = new ProductImportReport();
+        long startTime = System.nanoTime();
+
+        try (BufferedReader reader = Files.newBufferedReader(csvFile, StandardCharsets.UTF_8)) {
+            List<Product> batch = new ArrayList<>(batchSize);
+            reader.readLine();
+            long lineNumber = 1;
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+
+                try {
+                    Product product = parseProduct(line);
+                    if (!ProductService.isProductCorrect(product)) {
+                        report.addRejectedRow(lineNumber, "product doesn't pass validation");
+                        continue;
+                    }
+                    batch.add(product);
+                } catch (IllegalArgumentException e) {
+                    report.addRejectedRow(lineNumber, e.getMessage());
+                    continue;
+                }
+
+                if (batch.size() == batchSize) {
+                    writeBatch(batch, report);
+                    batch.clear();
+                }
+            }
+
+            if (!batch.isEmpty()) {
+                writeBatch(batch, report);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        report.setElapsedMillis((System.nanoTime() - startTime) / 1_000_000);
+        return report;
+    }
+
+    private void writeBatch(List<Product> products, ProductImportReport report) {
+        long[] productIds = new long[products.size()];
+        runInTransaction(entityManager -> doWork(entityManager, connection -> {
+            try (PreparedStatement productStatement = connection.prepareStatement(INSERT_PRODUCT, Statement.RETURN_GENERATED_KEYS);
+                 PreparedStatement propertyStatement = connection.prepareStatement(INSERT_PROPERTY)) {
+                for (Product product : products) {
+                    productStatement.setString(1, product.getName());
+                    productStatement.setFloat(2, product.getPriceBeforeDiscount());
+                    productStatement.setFloat(3, product.getPriceAfterDiscount());
+                    productStatement.setInt(4, product.getQuantity());
+                    productStatement.setString(5, product.getDescription());
+                    productStatement.setFloat(6, product.getDiscount());
+                    productStatement.setString(7, product.getProductType() == null ? null : product.getProductType().name());
+                    productStatement.addBatch();
+                }
+                productStatement.executeBatch();
+
+                boolean hasProperties = false;
+                try (ResultSet generatedKeys = productStatement.getGeneratedKeys()) {
+                    for (int i = 0; i < products.size(); i++) {
+                        generatedKeys.next();
+                        productIds[i] = generatedKeys.getLong(1);
+                        for (Property property : products.get(i).getProperties()) {
+                            propertyStatement.setString(1, property.getProperty());
+                            propertyStatement.setString(2, property.getResult());
+                            propertyStatement.setLong(3, productIds[i]);
+                            propertyStatement.addBatch();
+                            hasProperties = true;
+                        }
+                    }
+                }
+                if (hasProperties) {
+                    propertyStatement.executeBatch();
+                }
+            }
+        }));
+
+        if (facetIndex != null) {
+            for (int i = 0; i < products.size(); i++) {
+                Product product = products.get(i);
+                facetIndex.addProduct(productIds[i], product.getProductType());
+                for (Property property : product.getProperties()) {
+                    facetIndex.addProperty(productIds[i], property.getProperty(), property.getResult());
+                }
+            }
+        }
+        if (searchIndex != null) {
+            for (int i = 0; i < products.size(); i++) {
+                searchIndex.index(productIds[i], products.get(i).getName(), products.get(i).getDescription());
+            }
+        }
+        report.addImportedRows(products.size(), products.stream().mapToLong(product -> product.getProperties().size()).sum());
+    }
+
+    private Product parseProduct(String line) {
+        List<String> columns = parseCsvLine(line);
+        if (columns.size() < 7) {
+            throw new IllegalArgumentException("expected at least 7 columns but found " + columns.size());
+        }
+
+        Product product = new Product(
+                columns.get(0),
+                Float.parseFloat(columns.get(1)),
+                Float.parseFloat(columns.get(2)),
+                Integer.parseInt(columns.get(3)),
+                columns.get(4),
+                Float.parseFloat(columns.get(5)),
+                ProductType.valueOf(columns.get(6).trim().toUpperCase()));
+
+        if (columns.size() > 7 && !columns.get(7).isEmpty()) {
+            for (String pair : columns.get(7).split("\\|")) {
+                int separator = pair.indexOf('=');
+                if (separator <= 0 || separator == pair.length() - 1) {
+                    throw new IllegalArgumentException("property '" + pair + "' should have a non empty key and value");
+                }
+                product.getProperties().add(new Property(pair.substring(0, separator), pair.substring(separator + 1), product));
+            }
+        }
+        return product;
+    }
+
+    /**
+     * Splits one CSV record, honouring double quoted fields and {@code ""} escapes. Records can't span lines.
+     */
+    private List<String> parseCsvLine(String line) {
+        List<String> columns = new ArrayList<>();
+        StringBuilder column = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    column.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    column.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                columns.add(column.toString());
+                column.setLength(0);
+            } else {
+                column.append(c);
+            }
+        }
+
+        if (quoted) {
+            throw new IllegalArgumentException("unterminated quoted column");
+        }
+        columns.add(column.toString());
+        return columns;
+    }
+}
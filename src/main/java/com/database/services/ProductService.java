@@ -2,157 +2,742 @@ package com.database.services;
 
 import com.database.models.Product;
 import com.database.models.Property;
+import com.database.models.enums.ProductType;
+import com.database.services.bestseller.BestSeller;
+import com.database.services.bestseller.BestSellerTracker;
+import com.database.services.cache.CatalogCacheStatistics;
+import com.database.services.concurrent.StripedLocks;
+import com.database.services.dto.CatalogPage;
+import com.database.services.dto.CatalogQuery;
+import com.database.services.dto.ProductSummary;
 import com.database.services.exceptions.InvalidParameterProvidedException;
+import com.database.services.index.ProductFacetIndex;
+import com.database.services.index.ProductSearchIndex;
+import com.database.services.reservation.StockReservations;
+import com.database.services.entityManager.EntityManagerFactoryProvider;
 import com.database.services.entityManager.EntityManagerService;
+import org.hibernate.SessionFactory;
 
-import javax.persistence.EntityTransaction;
+import javax.persistence.Cache;
+import javax.persistence.EntityManager;
 import javax.persistence.Query;
+import javax.persistence.TypedQuery;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 public class ProductService extends EntityManagerService {
+    private static final String DECREMENT_STOCK = "update product set quantity = quantity - ? where id = ? AND quantity >= ?";
+    private static final String ADD_UNITS_SOLD = "insert into best_seller_counter (productId, productType, unitsSold) values (?, ?, ?) "
+            + "on duplicate key update unitsSold = unitsSold + values(unitsSold)";
+
+    private ProductFacetIndex facetIndex;
+    private ProductSearchIndex searchIndex;
+    private StockReservations stockReservations;
+    private StripedLocks productLocks;
+    private volatile BestSellerTracker bestSellerTracker;
+
+    public ProductService() {
+    }
+
+    public ProductService(EntityManagerFactoryProvider entityManagerFactoryProvider) {
+        super(entityManagerFactoryProvider);
+    }
 
     public void addProductToDatabase(Product product) {
-        if (!isProductCorrect(product)) {
-            throw new InvalidParameterProvidedException("Product shouln't be null and some fields shouldn't be null");
-        }
-        EntityTransaction tx = entityManager.getTransaction();
-        tx.begin();
-        entityManager.persist(product);
-        tx.commit();
+        runMetered(() -> {
+            if (!isProductCorrect(product)) {
+                throw new InvalidParameterProvidedException("Product shouln't be null and some fields shouldn't be null");
+            }
+            runInTransaction(entityManager -> entityManager.persist(product));
+            if (facetIndex != null) {
+                facetIndex.addProduct(product.getId(), product.getProductType());
+            }
+            if (searchIndex != null) {
+                searchIndex.index(product.getId(), product.getName(), product.getDescription());
+            }
+        });
     }
 
     public Product getProductById(Long productId) {
-        if (productId == null && productId <= 0) {
-            throw new InvalidParameterProvidedException("productId shouldn't be null");
-        }
-        return entityManager.find(Product.class, productId);
+        return metered(() -> {
+            validateProductId(productId);
+            if (getEntityManagerFactory().getCache().contains(Product.class, productId)) {
+                // served from the second-level cache without a statement, a replica would only add a round trip
+                return withEntityManager(entityManager -> entityManager.find(Product.class, productId));
+            }
+            return withReadOnlyEntityManager(entityManager -> entityManager.find(Product.class, productId));
+        });
+    }
+
+    /**
+     * Lists the catalog as lightweight projections. Pages are located with a keyset condition on the sort
+     * column and the id of the previous page's last item, so a deep page costs the same as the first one.
+     */
+    public CatalogPage getCatalogPage(CatalogQuery catalogQuery) {
+        return metered(() -> {
+            if (catalogQuery == null || catalogQuery.getSort() == null || catalogQuery.getPageSize() <= 0) {
+                throw new InvalidParameterProvidedException("catalogQuery shouldn't be null, should have sort and pageSize higher than 0");
+            }
+
+            StringBuilder jpql = new StringBuilder("select new com.database.services.dto.ProductSummary(p.id, p.name, p.priceAfterDiscount, p.quantity, p.productType) from Product p where 1 = 1");
+            Map<String, Object> parameters = new HashMap<>();
+
+            if (catalogQuery.getProductType() != null) {
+                jpql.append(" AND p.productType = :productType");
+                parameters.put("productType", catalogQuery.getProductType());
+            }
+            if (catalogQuery.getMinPrice() != null) {
+                jpql.append(" AND p.priceAfterDiscount >= :minPrice");
+                parameters.put("minPrice", catalogQuery.getMinPrice());
+            }
+            if (catalogQuery.getMaxPrice() != null) {
+                jpql.append(" AND p.priceAfterDiscount <= :maxPrice");
+                parameters.put("maxPrice", catalogQuery.getMaxPrice());
+            }
+            if (catalogQuery.isInStockOnly()) {
+                jpql.append(" AND p.quantity > 0");
+            }
+
+            ProductSummary after = catalogQuery.getAfter();
+            switch (catalogQuery.getSort()) {
+                case PRICE_ASC:
+                    if (after != null) {
+                        jpql.append(" AND (p.priceAfterDiscount > :lastPrice OR (p.priceAfterDiscount = :lastPrice AND p.id > :lastId))");
+                        parameters.put("lastPrice", after.getPriceAfterDiscount());
+                    }
+                    jpql.append(" order by p.priceAfterDiscount asc, p.id asc");
+                    break;
+                case PRICE_DESC:
+                    if (after != null) {
+                        jpql.append(" AND (p.priceAfterDiscount < :lastPrice OR (p.priceAfterDiscount = :lastPrice AND p.id < :lastId))");
+                        parameters.put("lastPrice", after.getPriceAfterDiscount());
+                    }
+                    jpql.append(" order by p.priceAfterDiscount desc, p.id desc");
+                    break;
+                case NAME_ASC:
+                    if (after != null) {
+                        jpql.append(" AND (p.name > :lastName OR (p.name = :lastName AND p.id > :lastId))");
+                        parameters.put("lastName", after.getName());
+                    }
+                    jpql.append(" order by p.name asc, p.id asc");
+                    break;
+            }
+            if (after != null) {
+                parameters.put("lastId", after.getId());
+            }
+
+            List<ProductSummary> items = withReadOnlyEntityManager(entityManager -> {
+                TypedQuery<ProductSummary> query = entityManager.createQuery(jpql.toString(), ProductSummary.class);
+                parameters.forEach(query::setParameter);
+                return query.setMaxResults(catalogQuery.getPageSize() + 1).getResultList();
+            });
+
+            boolean hasNext = items.size() > catalogQuery.getPageSize();
+            return new CatalogPage(hasNext ? items.subList(0, catalogQuery.getPageSize()) : items, hasNext);
+        });
     }
 
     public void removeProductFromDatabase(Long productId) {
-        Product productById = getProductById(productId);
-        EntityTransaction tx = entityManager.getTransaction();
-        removeAllPropertiesForOneProduct(productId);
-        tx.begin();
-        entityManager.remove(productById);
-        tx.commit();
+        runMetered(() -> {
+            validateProductId(productId);
+            runInTransaction(entityManager -> {
+                Product productById = entityManager.find(Product.class, productId);
+                removeAllPropertiesForOneProduct(entityManager, productById);
+                entityManager.remove(productById);
+                entityManager.createQuery("delete from BestSellerCounter c where c.productId = ?1")
+                        .setParameter(1, productId)
+                        .executeUpdate();
+            });
+            if (facetIndex != null) {
+                facetIndex.removeProduct(productId);
+            }
+            if (bestSellerTracker != null) {
+                bestSellerTracker.remove(productId);
+            }
+            if (searchIndex != null) {
+                searchIndex.remove(productId);
+            }
+            stockChanged(Collections.singleton(productId));
+        });
     }
 
+    /**
+     * Buys the quantity straight from stock. With stock reservations set, only the stock on hand that no cart
+     * reserved can be bought.
+     */
     public void buyProduct(Long productId, int quantity) {
-        if (quantity <= 0) {
-            throw new InvalidParameterProvidedException("quantity should be higher than 0");
-        }
+        runMetered(() -> {
+            if (quantity <= 0) {
+                throw new InvalidParameterProvidedException("quantity should be higher than 0");
+            }
+            validateProductId(productId);
 
-        Product product = getProductById(productId);
+            Map<Long, Integer> quantities = Collections.singletonMap(productId, quantity);
+            StockReservations reservations = holdStock(null, quantities);
+            Map<Long, ProductType> productTypes;
+            try {
+                productTypes = withProductLocks(Collections.singleton(productId), () -> inTransaction(entityManager -> {
+                    int updatedRows = doReturningWork(entityManager, connection -> {
+                        try (PreparedStatement statement = connection.prepareStatement(DECREMENT_STOCK)) {
+                            statement.setInt(1, quantity);
+                            statement.setLong(2, productId);
+                            statement.setInt(3, quantity);
+                            return statement.executeUpdate();
+                        }
+                    });
 
-        if (quantity > product.getQuantity()) {
-            throw new InvalidParameterProvidedException("provided quantity shouldn't be higher than quantity of product in database");
-        }
+                    if (updatedRows == 0) {
+                        if (entityManager.find(Product.class, productId) == null) {
+                            throw new InvalidParameterProvidedException("product with provided id doesn't exist");
+                        }
+                        throw new InvalidParameterProvidedException("provided quantity shouldn't be higher than quantity of product in database");
+                    }
+                    return productTypesOf(entityManager, Collections.singleton(productId));
+                }));
+                evictProducts(Collections.singleton(productId));
+                stockChanged(Collections.singleton(productId));
+            } finally {
+                releaseHolds(reservations, quantities);
+            }
+            recordBestSellers(productTypes, quantities);
+        });
+    }
 
-        EntityTransaction tx = entityManager.getTransaction();
-        product.setQuantity(product.getQuantity() - quantity);
-        tx.begin();
-        entityManager.merge(product);
-        tx.commit();
+    /**
+     * Buys every line of a cart in one transaction: either all quantities are taken from stock or none.
+     * Lines are updated in one JDBC batch in ascending product id order, so concurrent checkouts of
+     * overlapping carts always lock rows in the same order and can't deadlock. With stock reservations set,
+     * only the stock on hand that no cart reserved can be bought.
+     */
+    public void buyProducts(Map<Long, Integer> quantitiesByProductId) {
+        buyProducts(null, quantitiesByProductId);
     }
 
-    public void addKeyValueProperty(Long productId, String key, String value) {
-        if (key == null || value == null || key.equals("") || value.equals("")) {
-            throw new InvalidParameterProvidedException("provided parameter shouldn't be null or empty string");
-        }
+    /**
+     * Like {@link #buyProducts(Map)} for the lines of a shopping cart, whose own reservations can be bought too.
+     */
+    public void buyProducts(Long shoppingCartId, Map<Long, Integer> quantitiesByProductId) {
+        runMetered(() -> {
+            if (quantitiesByProductId == null || quantitiesByProductId.isEmpty()) {
+                throw new InvalidParameterProvidedException("quantitiesByProductId shouldn't be null or empty");
+            }
+            quantitiesByProductId.forEach((productId, quantity) -> {
+                validateProductId(productId);
+                if (quantity == null || quantity <= 0) {
+                    throw new InvalidParameterProvidedException("quantity should be higher than 0");
+                }
+            });
+
+            SortedMap<Long, Integer> orderedQuantities = new TreeMap<>(quantitiesByProductId);
 
-        Product productById = getProductById(productId);
-        Property property = new Property(key, value, productById);
+            StockReservations reservations = holdStock(shoppingCartId, orderedQuantities);
+            Map<Long, ProductType> productTypes;
+            try {
+                productTypes = withProductLocks(orderedQuantities.keySet(), () -> inTransaction(entityManager -> {
+                    doWork(entityManager, connection -> {
+                        try (PreparedStatement statement = connection.prepareStatement(DECREMENT_STOCK)) {
+                            for (Map.Entry<Long, Integer> line : orderedQuantities.entrySet()) {
+                                statement.setInt(1, line.getValue());
+                                statement.setLong(2, line.getKey());
+                                statement.setInt(3, line.getValue());
+                                statement.addBatch();
+                            }
 
-        EntityTransaction tx = entityManager.getTransaction();
-        tx.begin();
-        entityManager.persist(property);
-        productById.getProperties().add(property);
-        tx.commit();
+                            int[] updatedRows = statement.executeBatch();
+                            int lineIndex = 0;
+                            for (Long productId : orderedQuantities.keySet()) {
+                                if (updatedRows[lineIndex++] == 0) {
+                                    throw new InvalidParameterProvidedException("product " + productId + " doesn't exist or provided quantity is higher than quantity of product in database");
+                                }
+                            }
+                        }
+                    });
+                    return productTypesOf(entityManager, orderedQuantities.keySet());
+                }));
+                evictProducts(orderedQuantities.keySet());
+                stockChanged(orderedQuantities.keySet());
+            } finally {
+                releaseHolds(reservations, orderedQuantities);
+            }
+            recordBestSellers(productTypes, orderedQuantities);
+        });
     }
 
-    public void removeKeyValueProperty(Long productId, String key, String value) {
-        if (key == null || value == null || key.equals("") || value.equals("")) {
-            throw new InvalidParameterProvidedException("provided parameter shouldn't be null or empty string");
-        }
+    public void addKeyValueProperty(Long productId, String key, String value) {
+        runMetered(() -> {
+            if (key == null || value == null || key.equals("") || value.equals("")) {
+                throw new InvalidParameterProvidedException("provided parameter shouldn't be null or empty string");
+            }
+            validateProductId(productId);
 
-        Product productById = getProductById(productId);
+            runInTransaction(entityManager -> {
+                Product productById = entityManager.find(Product.class, productId);
+                Property property = new Property(key, value, productById);
+                entityManager.persist(property);
+                productById.getProperties().add(property);
+            });
+            if (facetIndex != null) {
+                facetIndex.addProperty(productId, key, value);
+            }
+        });
+    }
 
-        Query q1 = entityManager.createQuery("from Property p where p.product = ?1 AND p.property =?2 AND p.result =?3", Property.class);
-        q1.setParameter(1, productById);
-        q1.setParameter(2, key);
-        q1.setParameter(3, value);
+    public void removeKeyValueProperty(Long productId, String key, String value) {
+        runMetered(() -> {
+            if (key == null || value == null || key.equals("") || value.equals("")) {
+                throw new InvalidParameterProvidedException("provided parameter shouldn't be null or empty string");
+            }
+            validateProductId(productId);
 
-        List resultList = q1.getResultList();
+            boolean lastMatchingProperty = inTransaction(entityManager -> {
+                Product productById = entityManager.find(Product.class, productId);
+
+                Query q1 = entityManager.createQuery("from Property p where p.product = ?1 AND p.property =?2 AND p.result =?3", Property.class);
+                q1.setParameter(1, productById);
+                q1.setParameter(2, key);
+                q1.setParameter(3, value);
 
-        EntityTransaction tx = entityManager.getTransaction();
-        tx.begin();
-        entityManager.remove(resultList.get(0));
-        productById.getProperties().remove(resultList.get(0));
-        tx.commit();
+                List resultList = q1.getResultList();
 
+                entityManager.remove(resultList.get(0));
+                productById.getProperties().remove(resultList.get(0));
+                return resultList.size() == 1;
+            });
+            if (facetIndex != null && lastMatchingProperty) {
+                facetIndex.removeProperty(productId, key, value);
+            }
+        });
     }
 
     public void updateName(Long productId, String name) {
-        Product productById = getProductById(productId);
-        productById.setName(name);
-        EntityTransaction tx = entityManager.getTransaction();
-        tx.begin();
-        entityManager.merge(productById);
-        tx.commit();
+        runMetered(() -> {
+            validateProductId(productId);
+            updateProductColumns(productId, "name = ?", name);
+            indexSearchText(productId);
+        });
     }
 
     public void updatePrice(Long productId, float price) {
-        Product productById = getProductById(productId);
-        productById.setPriceBeforeDiscount(price);
-        EntityTransaction tx = entityManager.getTransaction();
-        tx.begin();
-        entityManager.merge(productById);
-        tx.commit();
+        runMetered(() -> {
+            validateProductId(productId);
+            updateProductColumns(productId, "priceBeforeDiscount = ?, priceAfterDiscount = ? * discount", price, price);
+        });
     }
 
     public void updateQuantity(Long productId, int quantity) {
-        Product productById = getProductById(productId);
-        productById.setQuantity(quantity);
-        EntityTransaction tx = entityManager.getTransaction();
-        tx.begin();
-        entityManager.merge(quantity);
-        tx.commit();
+        runMetered(() -> {
+            validateProductId(productId);
+            withProductLocks(Collections.singleton(productId), () -> {
+                updateProductColumns(productId, "quantity = ?", quantity);
+                return null;
+            });
+            stockChanged(Collections.singleton(productId));
+        });
     }
 
     public void updateDescription(Long productId, String description) {
-        Product productById = getProductById(productId);
-        productById.setDescription(description);
-        EntityTransaction tx = entityManager.getTransaction();
-        tx.begin();
-        entityManager.merge(description);
-        tx.commit();
+        runMetered(() -> {
+            validateProductId(productId);
+            updateProductColumns(productId, "description = ?", description);
+            indexSearchText(productId);
+        });
     }
 
     public void updateDiscount(Long productId, float discount) {
-        Product productById = getProductById(productId);
-        productById.setDiscount(discount);
-        EntityTransaction tx = entityManager.getTransaction();
-        tx.begin();
-        entityManager.merge(discount);
-        tx.commit();
+        runMetered(() -> {
+            validateProductId(productId);
+            updateProductColumns(productId, "discount = ?, priceAfterDiscount = priceBeforeDiscount * ?", discount, discount);
+        });
+    }
+
+    /**
+     * Sets the discount of every product of the type and recomputes their price after discount in one
+     * UPDATE statement, e.g. for a seasonal campaign.
+     *
+     * @return number of repriced products
+     */
+    public int repriceProductType(ProductType productType, float discount) {
+        return metered(() -> {
+            if (productType == null) {
+                throw new InvalidParameterProvidedException("productType shouldn't be null");
+            }
+            validateDiscount(discount);
+            return repriceProducts("p.productType = :productType", Collections.singletonMap("productType", productType), discount);
+        });
+    }
+
+    /**
+     * Like {@link #repriceProductType(ProductType, float)} for the products having the key-value property.
+     *
+     * @return number of repriced products
+     */
+    public int repriceProductsWithProperty(String key, String value, float discount) {
+        return metered(() -> {
+            if (key == null || key.isEmpty() || value == null || value.isEmpty()) {
+                throw new InvalidParameterProvidedException("key and value shouldn't be null or empty");
+            }
+            validateDiscount(discount);
+            Map<String, Object> parameters = new HashMap<>();
+            parameters.put("key", key);
+            parameters.put("value", value);
+            return repriceProducts("p.id in (select pr.product.id from Property pr where pr.property = :key AND pr.result = :value)", parameters, discount);
+        });
+    }
+
+    public ProductFacetIndex getFacetIndex() {
+        return facetIndex;
+    }
+
+    /**
+     * Turns on maintenance of the facet index by this service. Call {@link #rebuildFacetIndex()} once to load
+     * the products that are already in the database.
+     */
+    public void setFacetIndex(ProductFacetIndex facetIndex) {
+        this.facetIndex = facetIndex;
+    }
+
+    public void rebuildFacetIndex() {
+        runMetered(() -> {
+            if (facetIndex == null) {
+                throw new IllegalStateException("facet index isn't set");
+            }
+
+            ProductFacetIndex rebuilt = new ProductFacetIndex();
+            withEntityManager(entityManager -> {
+                entityManager.createQuery("select p.id, p.productType from Product p", Object[].class)
+                        .getResultStream()
+                        .forEach(row -> rebuilt.addProduct((Long) row[0], (ProductType) row[1]));
+                entityManager.createQuery("select p.product.id, p.property, p.result from Property p", Object[].class)
+                        .getResultStream()
+                        .forEach(row -> rebuilt.addProperty((Long) row[0], (String) row[1], (String) row[2]));
+                return null;
+            });
+            facetIndex.replaceContents(rebuilt);
+        });
     }
 
+    public StripedLocks getProductLocks() {
+        return productLocks;
+    }
+
+    /**
+     * Serializes the stock changes of a product made through this service in this JVM, so threads buying the
+     * same product queue on an in-memory lock instead of each holding a pooled connection while waiting for the
+     * product's row lock. Changes of products on different stripes still run in parallel. The database stays
+     * the guard against other processes.
+     */
+    public void setProductLocks(StripedLocks productLocks) {
+        this.productLocks = productLocks;
+    }
+
+    public StockReservations getStockReservations() {
+        return stockReservations;
+    }
+
+    /**
+     * Lets the stock reservations of the shopping carts know when this service changes the stock of a product,
+     * see {@link ShoppingCartService#enableStockReservations(long)}.
+     */
+    public void setStockReservations(StockReservations stockReservations) {
+        this.stockReservations = stockReservations;
+    }
+
+    public ProductSearchIndex getSearchIndex() {
+        return searchIndex;
+    }
+
+    /**
+     * Turns on maintenance of the search index by this service. Call {@link #rebuildSearchIndex(int)} once to
+     * load the products that are already in the database.
+     */
+    public void setSearchIndex(ProductSearchIndex searchIndex) {
+        this.searchIndex = searchIndex;
+    }
+
+    /**
+     * Reloads the search index from the database, reading ranges of product ids in parallel.
+     */
+    public void rebuildSearchIndex(int threads) {
+        runMetered(() -> {
+            if (searchIndex == null) {
+                throw new IllegalStateException("search index isn't set");
+            }
+            if (threads <= 0) {
+                throw new InvalidParameterProvidedException("threads should be higher than 0");
+            }
+
+            ProductSearchIndex rebuilt = new ProductSearchIndex();
+            Object[] idRange = withEntityManager(entityManager -> entityManager
+                    .createQuery("select min(p.id), max(p.id) from Product p", Object[].class)
+                    .getSingleResult());
 
-    private void removeAllPropertiesForOneProduct(Long productId) {
-        Product productById = getProductById(productId);
+            if (idRange[0] != null) {
+                long minId = (Long) idRange[0];
+                long maxId = (Long) idRange[1];
+                long rangeSize = (maxId - minId) / threads + 1;
 
+                ExecutorService executorService = Executors.newFixedThreadPool(threads);
+                try {
+                    List<Future<?>> ranges = new ArrayList<>();
+                    for (long from = minId; from <= maxId; from += rangeSize) {
+                        long fromId = from;
+                        long toId = Math.min(maxId, from + rangeSize - 1);
+                        ranges.add(executorService.submit(() -> withEntityManager(entityManager -> {
+                            entityManager.createQuery("select p.id, p.name, p.description from Product p where p.id between ?1 AND ?2", Object[].class)
+                                    .setParameter(1, fromId)
+                                    .setParameter(2, toId)
+                                    .getResultStream()
+                                    .forEach(row -> rebuilt.index((Long) row[0], (String) row[1], (String) row[2]));
+                            return null;
+                        })));
+                    }
+                    for (Future<?> range : ranges) {
+                        range.get();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("search index rebuild was interrupted", e);
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("search index rebuild failed", e.getCause());
+                } finally {
+                    executorService.shutdownNow();
+                }
+            }
+            searchIndex.replaceContents(rebuilt);
+        });
+    }
+
+    /**
+     * Switches on the best seller leaderboards: units sold are counted in memory by every purchase and added to
+     * the stored totals every {@code persistIntervalMillis}. The stored totals are loaded first.
+     */
+    public BestSellerTracker enableBestSellers(int topK, long persistIntervalMillis) {
+        if (topK <= 0 || persistIntervalMillis <= 0) {
+            throw new InvalidParameterProvidedException("topK and persistIntervalMillis should be higher than 0");
+        }
+        BestSellerTracker tracker = new BestSellerTracker(topK, this::writeBestSellers);
+        tracker.restore(loadBestSellers());
+        tracker.start(persistIntervalMillis, TimeUnit.MILLISECONDS);
+        bestSellerTracker = tracker;
+        return tracker;
+    }
+
+    public BestSellerTracker getBestSellerTracker() {
+        return bestSellerTracker;
+    }
+
+    /**
+     * Best sellers of the product type, most units sold first, read from memory.
+     */
+    public List<BestSeller> getBestSellers(ProductType productType) {
+        return metered(() -> {
+            if (productType == null) {
+                throw new InvalidParameterProvidedException("productType shouldn't be null");
+            }
+            BestSellerTracker tracker = bestSellerTracker;
+            if (tracker == null) {
+                throw new IllegalStateException("best sellers aren't enabled");
+            }
+            return tracker.getTopSellers(productType);
+        });
+    }
+
+    @Override
+    public void closeSession() {
+        if (bestSellerTracker != null) {
+            bestSellerTracker.close();
+            bestSellerTracker = null;
+        }
+        super.closeSession();
+    }
+
+    /**
+     * Counters of the catalog's cache regions; hits, misses and puts need {@code hibernate.generate_statistics}.
+     */
+    public CatalogCacheStatistics getCatalogCacheStatistics() {
+        return new CatalogCacheStatistics(getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics());
+    }
+
+    /**
+     * A JPQL bulk update, so Hibernate evicts the product region of the second-level cache and invalidates the
+     * cached catalog queries once the transaction commits. Stock, types and properties don't change, so the
+     * stock reservations and the facet and search indexes stay as they are.
+     */
+    private int repriceProducts(String condition, Map<String, Object> parameters, float discount) {
+        return inTransaction(entityManager -> {
+            Query query = entityManager.createQuery("update Product p set p.discount = :discount, p.priceAfterDiscount = p.priceBeforeDiscount * :discount where " + condition);
+            query.setParameter("discount", discount);
+            parameters.forEach(query::setParameter);
+            return query.executeUpdate();
+        });
+    }
+
+    private static void validateDiscount(float discount) {
+        if (discount < 0 || discount > 1) {
+            throw new InvalidParameterProvidedException("discount should be between 0 and 1");
+        }
+    }
+
+    /**
+     * Sets only the given columns of the product row, with plain JDBC like the stock decrement. Loading and
+     * flushing the whole entity would write back a quantity read from the cache, or read before a concurrent
+     * purchase committed, and undo that purchase. The cached product is evicted after commit.
+     */
+    private void updateProductColumns(Long productId, String assignments, Object... values) {
+        inTransaction(entityManager -> {
+            int updatedRows = doReturningWork(entityManager, connection -> {
+                try (PreparedStatement statement = connection.prepareStatement("update product set " + assignments + " where id = ?")) {
+                    for (int i = 0; i < values.length; i++) {
+                        statement.setObject(i + 1, values[i]);
+                    }
+                    statement.setLong(values.length + 1, productId);
+                    return statement.executeUpdate();
+                }
+            });
+            if (updatedRows == 0) {
+                throw new InvalidParameterProvidedException("product with provided id doesn't exist");
+            }
+            return null;
+        });
+        evictProducts(Collections.singleton(productId));
+    }
+
+    private void indexSearchText(Long productId) {
+        if (searchIndex != null) {
+            Product product = withEntityManager(entityManager -> entityManager.find(Product.class, productId));
+            searchIndex.index(productId, product.getName(), product.getDescription());
+        }
+    }
+
+    /**
+     * Stock and single columns are updated with plain JDBC, which Hibernate doesn't see, so the cached products
+     * are evicted one by one. A JPQL bulk update would evict the whole product region on every purchase instead.
+     */
+    private void evictProducts(Collection<Long> productIds) {
+        Cache cache = getEntityManagerFactory().getCache();
+        productIds.forEach(productId -> cache.evict(Product.class, productId));
+    }
+
+    /**
+     * Type of every bought product, read in the purchase's transaction while the stock update holds the rows.
+     */
+    private Map<Long, ProductType> productTypesOf(EntityManager entityManager, Collection<Long> productIds) {
+        return doReturningWork(entityManager, connection -> {
+            Map<Long, ProductType> productTypes = new HashMap<>();
+            String placeholders = String.join(", ", Collections.nCopies(productIds.size(), "?"));
+            try (PreparedStatement statement = connection.prepareStatement("select id, productType from product where id in (" + placeholders + ")")) {
+                int parameterIndex = 1;
+                for (Long productId : productIds) {
+                    statement.setLong(parameterIndex++, productId);
+                }
+                try (ResultSet products = statement.executeQuery()) {
+                    while (products.next()) {
+                        productTypes.put(products.getLong(1), ProductType.valueOf(products.getString(2)));
+                    }
+                }
+            }
+            return productTypes;
+        });
+    }
+
+    private <T> T withProductLocks(Collection<Long> productIds, Supplier<T> action) {
+        StripedLocks locks = productLocks;
+        return locks == null ? action.get() : locks.withLocks(productIds, action);
+    }
+
+    private void stockChanged(Collection<Long> productIds) {
+        if (stockReservations != null) {
+            productIds.forEach(stockReservations::stockChanged);
+        }
+    }
+
+    /**
+     * Holds the quantities against the stock reservations, if any, so a purchase can't take stock reserved by carts.
+     *
+     * @return the reservations holding the quantities, to release once the purchase is over
+     */
+    private StockReservations holdStock(Long shoppingCartId, Map<Long, Integer> quantitiesByProductId) {
+        StockReservations reservations = stockReservations;
+        if (reservations == null) {
+            return null;
+        }
+        Map<Long, Integer> held = new HashMap<>();
+        try {
+            for (Map.Entry<Long, Integer> line : quantitiesByProductId.entrySet()) {
+                if (!reservations.holdForSale(shoppingCartId, line.getKey(), line.getValue())) {
+                    throw new InvalidParameterProvidedException("provided quantity of product " + line.getKey() + " is higher than the stock available to sell");
+                }
+                held.put(line.getKey(), line.getValue());
+            }
+        } catch (RuntimeException e) {
+            releaseHolds(reservations, held);
+            throw e;
+        }
+        return reservations;
+    }
+
+    private static void releaseHolds(StockReservations reservations, Map<Long, Integer> quantitiesByProductId) {
+        if (reservations != null) {
+            quantitiesByProductId.forEach(reservations::releaseHold);
+        }
+    }
+
+    private void recordBestSellers(Map<Long, ProductType> productTypes, Map<Long, Integer> quantitiesByProductId) {
+        BestSellerTracker tracker = bestSellerTracker;
+        if (tracker != null) {
+            productTypes.forEach((productId, productType) -> tracker.record(productId, productType, quantitiesByProductId.get(productId)));
+        }
+    }
+
+    private List<BestSeller> loadBestSellers() {
+        return withEntityManager(entityManager -> entityManager
+                .createQuery("select new com.database.services.bestseller.BestSeller(c.productId, c.productType, c.unitsSold) from BestSellerCounter c", BestSeller.class)
+                .getResultList());
+    }
+
+    private void writeBestSellers(List<BestSeller> sold) {
+        runInTransaction(entityManager -> doWork(entityManager, connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(ADD_UNITS_SOLD)) {
+                for (BestSeller bestSeller : sold) {
+                    statement.setLong(1, bestSeller.getProductId());
+                    statement.setString(2, bestSeller.getProductType().name());
+                    statement.setLong(3, bestSeller.getUnitsSold());
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+        }));
+    }
+
+    private void removeAllPropertiesForOneProduct(EntityManager entityManager, Product productById) {
         Query q1 = entityManager.createQuery("from Property p where p.product = ?1", Property.class);
         q1.setParameter(1, productById);
         List resultList = q1.getResultList();
 
-        EntityTransaction tx = entityManager.getTransaction();
-
-        tx.begin();
         resultList.stream().forEach(property -> entityManager.remove(property));
-        tx.commit();
     }
 
-    private boolean isProductCorrect(Product product) {
+    private void validateProductId(Long productId) {
+        if (productId == null || productId <= 0) {
+            throw new InvalidParameterProvidedException("productId shouldn't be null");
+        }
+    }
+
+    static boolean isProductCorrect(Product product) {
         return product != null && product.getDescription() != null && (product.getDiscount() >= 0 && product.getDiscount() <= 1) && product.getName() != null && (product.getPriceBeforeDiscount() > 0 && product.getPriceBeforeDiscount() < 10000) || product.getProductType() != null && (product.getQuantity() >= 0 && product.getQuantity() < 10000);
     }
 }
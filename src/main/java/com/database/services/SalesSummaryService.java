@@ -0,0 +1,139 @@
+package com.database.services;
+
+import com.database.models.SalesSummary;
+import com.database.models.enums.ProductType;
+import com.database.models.enums.Status;
+import com.database.services.exceptions.InvalidParameterProvidedException;
+import com.database.services.entityManager.EntityManagerFactoryProvider;
+import com.database.services.entityManager.EntityManagerService;
+
+import javax.persistence.TemporalType;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+/**
+ * Revenue and units sold per product type and day. A cart counts as sold from the moment it leaves
+ * {@link Status#UNPAID}, on the day of its purchase date and at the prices captured on its lines. The summary is
+ * kept up to date by {@link ShoppingCartService} in the checkout's transaction, so reading it is a lookup of
+ * the few stripe rows of a type and day whatever the number of orders.
+ */
+public class SalesSummaryService extends EntityManagerService {
+    private static final List<String> SOLD_STATUSES = Arrays.stream(Status.values())
+            .filter(status -> status != Status.UNPAID)
+            .map(Status::name)
+            .collect(Collectors.toList());
+    private static final String SUM_OF_STRIPES = "select new com.database.models.SalesSummary(s.productType, s.saleDate, sum(s.unitsSold), sum(s.revenue)) "
+            + "from SalesSummary s";
+    private static final String DELETE_DAY = "delete from sales_summary where saleDate = ?1";
+    private static final String INSERT_DAY_FROM_CARTS = "insert into sales_summary (productType, saleDate, stripe, unitsSold, revenue) "
+            + "select p.productType, ?1, 0, sum(l.quantity), sum(l.quantity * l.unitPrice) from cart_line l "
+            + "join shopping_cart s on s.id = l.shoppingCart_id join product p on p.id = l.product_id "
+            + "where s.status in (?2) and s.dateOfPurchase >= ?3 and s.dateOfPurchase < ?4 group by p.productType";
+
+    public SalesSummaryService() {
+    }
+
+    public SalesSummaryService(EntityManagerFactoryProvider entityManagerFactoryProvider) {
+        super(entityManagerFactoryProvider);
+    }
+
+    /**
+     * Sales of the product type on the day, null when nothing was sold.
+     */
+    public SalesSummary getSalesSummary(ProductType productType, LocalDate day) {
+        return metered(() -> {
+            if (productType == null || day == null) {
+                throw new InvalidParameterProvidedException("productType and day shouldn't be null");
+            }
+            List<SalesSummary> summaries = withReadOnlyEntityManager(entityManager -> entityManager
+                    .createQuery(SUM_OF_STRIPES + " where s.productType = ?1 AND s.saleDate = ?2 group by s.productType, s.saleDate", SalesSummary.class)
+                    .setParameter(1, productType)
+                    .setParameter(2, Date.valueOf(day), TemporalType.DATE)
+                    .getResultList());
+            return summaries.isEmpty() ? null : summaries.get(0);
+        });
+    }
+
+    /**
+     * Sales of the product type on the days from {@code from} (inclusive) to {@code to} (exclusive), oldest first.
+     * Days without sales have no row.
+     */
+    public List<SalesSummary> getSalesSummaries(ProductType productType, LocalDate from, LocalDate to) {
+        return metered(() -> {
+            validateDays(from, to);
+            if (productType == null) {
+                throw new InvalidParameterProvidedException("productType shouldn't be null");
+            }
+            return withReadOnlyEntityManager(entityManager -> entityManager
+                    .createQuery(SUM_OF_STRIPES + " where s.productType = ?1 AND s.saleDate >= ?2 AND s.saleDate < ?3 "
+                            + "group by s.productType, s.saleDate order by s.saleDate", SalesSummary.class)
+                    .setParameter(1, productType)
+                    .setParameter(2, Date.valueOf(from), TemporalType.DATE)
+                    .setParameter(3, Date.valueOf(to), TemporalType.DATE)
+                    .getResultList());
+        });
+    }
+
+    /**
+     * Replaces the summary of the days from {@code from} (inclusive) to {@code to} (exclusive) with the sales
+     * recomputed from the paid carts, every cart past {@link Status#UNPAID}, at the prices captured
+     * on their lines, which is what the checkouts add up. Every day is a partition rebuilt in its own
+     * transaction, the days run in parallel on {@code threads} threads. Meant to seed the summary from the
+     * history or to reconcile it, checkouts of a day being rebuilt may be lost.
+     *
+     * @return number of rebuilt days
+     */
+    public int rebuildSalesSummary(LocalDate from, LocalDate to, int threads) {
+        return metered(() -> {
+            validateDays(from, to);
+            if (threads <= 0) {
+                throw new InvalidParameterProvidedException("threads should be higher than 0");
+            }
+
+            ExecutorService executorService = Executors.newFixedThreadPool(threads);
+            try {
+                List<Future<?>> days = new ArrayList<>();
+                for (LocalDate day = from; day.isBefore(to); day = day.plusDays(1)) {
+                    LocalDate rebuiltDay = day;
+                    days.add(executorService.submit(() -> runInTransaction(entityManager -> {
+                        entityManager.createNativeQuery(DELETE_DAY)
+                                .setParameter(1, Date.valueOf(rebuiltDay))
+                                .executeUpdate();
+                        entityManager.createNativeQuery(INSERT_DAY_FROM_CARTS)
+                                .setParameter(1, Date.valueOf(rebuiltDay))
+                                .setParameter(2, SOLD_STATUSES)
+                                .setParameter(3, Timestamp.valueOf(rebuiltDay.atStartOfDay()))
+                                .setParameter(4, Timestamp.valueOf(rebuiltDay.plusDays(1).atStartOfDay()))
+                                .executeUpdate();
+                    })));
+                }
+                for (Future<?> day : days) {
+                    day.get();
+                }
+                return days.size();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("sales summary rebuild was interrupted", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("sales summary rebuild failed", e.getCause());
+            } finally {
+                executorService.shutdownNow();
+            }
+        });
+    }
+
+    private void validateDays(LocalDate from, LocalDate to) {
+        if (from == null || to == null || from.isAfter(to)) {
+            throw new InvalidParameterProvidedException("from and to shouldn't be null and from shouldn't be after to");
+        }
+    }
+}
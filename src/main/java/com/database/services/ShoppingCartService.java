@@ -1,102 +1,805 @@
 package com.database.services;
 
+import com.database.models.Address;
+import com.database.models.CartLine;
 import com.database.models.Customer;
 import com.database.models.Product;
+import com.database.models.SalesSummary;
 import com.database.models.ShoppingCart;
+import com.database.models.enums.ProductType;
+import com.database.models.enums.Status;
+import com.database.services.cart.BufferedCart;
+import com.database.services.cart.BufferedCartLine;
+import com.database.services.cart.FsyncPolicy;
+import com.database.services.cart.UnpaidCartStore;
+import com.database.services.dto.OrderHistoryPage;
+import com.database.services.dto.OrderSummary;
 import com.database.services.exceptions.InvalidParameterProvidedException;
+import com.database.services.reservation.StockReservations;
+import com.database.services.entityManager.EntityManagerFactoryProvider;
 import com.database.services.entityManager.EntityManagerService;
+import com.database.services.entityManager.ReplicaRouter;
+import org.hibernate.exception.ConstraintViolationException;
 
-import javax.persistence.EntityTransaction;
+import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
 import javax.persistence.Query;
+import javax.persistence.TemporalType;
+import javax.persistence.TypedQuery;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 public class ShoppingCartService extends EntityManagerService {
+    private static final String DELETE_CART_LINES = "delete from cart_line where shoppingCart_id = ?";
+    private static final String INSERT_CART_LINE = "insert into cart_line (shoppingCart_id, product_id, quantity, unitPrice) values (?, ?, ?, ?)";
+    private static final String UPDATE_TOTAL_PRICE = "update shopping_cart set totalPrice = ? where id = ?";
+    private static final String ADD_SALES = "insert into sales_summary (productType, saleDate, stripe, unitsSold, revenue) values (?, ?, ?, ?, ?) "
+            + "on duplicate key update unitsSold = unitsSold + values(unitsSold), revenue = revenue + values(revenue)";
+
+    private final AddressRegistry addressRegistry = new AddressRegistry();
+    private final OrderHistoryLoader orderHistoryLoader = new OrderHistoryLoader();
+    private volatile UnpaidCartStore unpaidCartStore;
+    private volatile StockReservations stockReservations;
+    private final Map<Long, ReplicaRouter.Caller> bufferedCartWriters = new ConcurrentHashMap<>();
+
+    private static final class DaySales {
+        private long unitsSold;
+        private double revenue;
+    }
+
+    public ShoppingCartService() {
+    }
+
+    public ShoppingCartService(EntityManagerFactoryProvider entityManagerFactoryProvider) {
+        super(entityManagerFactoryProvider);
+    }
 
     public void addShoppingCartToDatabase(ShoppingCart shoppingCart) {
-        if (shoppingCart == null) {
-            throw new InvalidParameterProvidedException("shoppingCart shouldn't be null");
-        }
-        EntityTransaction tx = entityManager.getTransaction();
-        tx.begin();
-        entityManager.persist(shoppingCart);
-        shoppingCart.getCustomer().getShoppingCarts().add(shoppingCart);
-        tx.commit();
+        runMetered(() -> {
+            if (shoppingCart == null) {
+                throw new InvalidParameterProvidedException("shoppingCart shouldn't be null");
+            }
+            Customer customer = shoppingCart.getCustomer();
+            Address address = customer.getAddress();
+
+            addressRegistry.retryOnConflict(address, () -> runInTransaction(entityManager -> {
+                if (customer.getId() == null) {
+                    customer.setAddress(addressRegistry.findOrCreate(entityManager, address));
+                } else {
+                    shoppingCart.setCustomer(entityManager.getReference(Customer.class, customer.getId()));
+                }
+                entityManager.persist(shoppingCart);
+            }));
+            customer.getShoppingCarts().add(shoppingCart);
+        });
     }
 
     public ShoppingCart getShoppingCartById(Long shoppingCartId) {
-        if (shoppingCartId == null) {
-            throw new InvalidParameterProvidedException("shoppingCartId shouldn't be null");
-        }
-        return entityManager.find(ShoppingCart.class, shoppingCartId);
+        return metered(() -> {
+            validateShoppingCartId(shoppingCartId);
+            flushBufferedCart(shoppingCartId);
+            return readCart(entityManager -> entityManager.find(ShoppingCart.class, shoppingCartId));
+        });
+    }
+
+    /**
+     * Cart with the customer, the lines and the products with their properties loaded, in two statements.
+     */
+    public ShoppingCart getShoppingCartWithLines(Long shoppingCartId) {
+        return metered(() -> {
+            validateShoppingCartId(shoppingCartId);
+            flushBufferedCart(shoppingCartId);
+            return readCart(entityManager -> orderHistoryLoader.loadShoppingCartWithLines(entityManager, shoppingCartId));
+        });
     }
 
     public void removeShoppingCartFromDatabase(Long shoppingCartId) {
-        ShoppingCart shoppingCartById = getShoppingCartById(shoppingCartId);
-        EntityTransaction tx = entityManager.getTransaction();
-        tx.begin();
-        shoppingCartById.getProducts().forEach(product -> product.getShoppingCarts().remove(shoppingCartById));
-        entityManager.remove(shoppingCartById);
-        tx.commit();
+        runMetered(() -> {
+            validateShoppingCartId(shoppingCartId);
+            if (unpaidCartStore != null) {
+                unpaidCartStore.discard(shoppingCartId);
+                bufferedCartWriters.remove(shoppingCartId);
+            }
+            runInTransaction(entityManager -> {
+                Status status = lockStatus(entityManager, shoppingCartId);
+                if (status != null && status != Status.UNPAID) {
+                    recordSales(entityManager, List.of(shoppingCartId), -1);
+                }
+                entityManager.createQuery("delete from CartLine l where l.shoppingCart.id = ?1")
+                        .setParameter(1, shoppingCartId)
+                        .executeUpdate();
+                entityManager.remove(entityManager.getReference(ShoppingCart.class, shoppingCartId));
+            });
+            if (stockReservations != null) {
+                stockReservations.releaseAll(shoppingCartId);
+            }
+        });
     }
 
     public void removeProductFromShoppingCart(Long shoppingCartId, Product product) {
-        ShoppingCart shoppingCartById = getShoppingCartById(shoppingCartId);
-        EntityTransaction tx = entityManager.getTransaction();
-        shoppingCartById.setTotalPrice(shoppingCartById.getTotalPrice() - product.getPriceAfterDiscount());
-        tx.begin();
-        shoppingCartById.getProducts().remove(product);
-        product.getShoppingCarts().remove(shoppingCartById);
-        entityManager.merge(shoppingCartById);
-        tx.commit();
+        runMetered(() -> {
+            removeProductFromShoppingCart(shoppingCartId, product, Integer.MAX_VALUE);
+        });
+    }
+
+    /**
+     * Takes the quantity of the product out of the cart, the line is deleted once nothing is left on it.
+     * Only the cart line row and the cart row are touched.
+     */
+    public void removeProductFromShoppingCart(Long shoppingCartId, Product product, int quantity) {
+        runMetered(() -> {
+            validateShoppingCartId(shoppingCartId);
+            validateProductAndQuantity(product, quantity);
+            if (stockReservations != null) {
+                stockReservations.release(shoppingCartId, product.getId(), quantity);
+            }
+            if (unpaidCartStore != null && unpaidCartStore.removeProduct(shoppingCartId, product.getId(), quantity) != null) {
+                recordBufferedWrite(shoppingCartId);
+                return;
+            }
+            runInTransaction(entityManager -> {
+                CartLine line = findLockedCartLine(entityManager, shoppingCartId, product.getId());
+                if (line == null) {
+                    return;
+                }
+                int removedQuantity = Math.min(quantity, line.getQuantity());
+                if (removedQuantity == line.getQuantity()) {
+                    entityManager.remove(line);
+                } else {
+                    line.setQuantity(line.getQuantity() - removedQuantity);
+                }
+                addToTotalPrice(entityManager, shoppingCartId, -removedQuantity * line.getUnitPrice());
+                recordLineSales(entityManager, shoppingCartId, line, -removedQuantity);
+            });
+        });
     }
 
     public void addProductToShoppingCart(Long shoppingCartId, Product product) {
-        ShoppingCart shoppingCartById = getShoppingCartById(shoppingCartId);
-        shoppingCartById.getProducts().add(product);
-        product.getShoppingCarts().add(shoppingCartById);
-        EntityTransaction tx = entityManager.getTransaction();
-        tx.begin();
-        shoppingCartById.setTotalPrice(shoppingCartById.getTotalPrice() + product.getPriceAfterDiscount());
-        tx.commit();
+        runMetered(() -> {
+            addProductToShoppingCart(shoppingCartId, product, 1);
+        });
+    }
+
+    /**
+     * Adds the quantity to the product's line in the cart, creating the line with the product's current price
+     * if there is none. Only the cart line row and the cart row are touched, the product's other carts are never loaded.
+     * With stock reservations enabled the quantity is reserved first and the cart's reservation of the product renewed.
+     */
+    public void addProductToShoppingCart(Long shoppingCartId, Product product, int quantity) {
+        runMetered(() -> {
+            validateShoppingCartId(shoppingCartId);
+            validateProductAndQuantity(product, quantity);
+            StockReservations reservations = stockReservations;
+            if (reservations == null) {
+                addCartLine(shoppingCartId, product, quantity);
+                return;
+            }
+            if (!reservations.reserve(shoppingCartId, product.getId(), quantity)) {
+                throw new InvalidParameterProvidedException("provided quantity is higher than the stock of the product available to sell");
+            }
+            try {
+                addCartLine(shoppingCartId, product, quantity);
+            } catch (RuntimeException e) {
+                reservations.release(shoppingCartId, product.getId(), quantity);
+                throw e;
+            }
+        });
+    }
+
+    /**
+     * One page of the customer's orders, newest first, as projections: the carts, lines and customer aren't
+     * loaded into the persistence context, so the page costs its rows whatever the length of the history. To
+     * read the next page pass the last item of the current one as {@code after}, or null for the first page.
+     * Carts buffered in the unpaid cart store are listed as last written to the database.
+     */
+    public OrderHistoryPage getOrderHistoryPage(Long customerId, OrderSummary after, int pageSize) {
+        return metered(() -> {
+            if (customerId == null || customerId <= 0) {
+                throw new InvalidParameterProvidedException("customerId shouldn't be null or lower than 0");
+            }
+            if (pageSize <= 0) {
+                throw new InvalidParameterProvidedException("pageSize should be higher than 0");
+            }
+
+            String jpql = "select new com.database.services.dto.OrderSummary(s.id, s.dateOfPurchase, s.status, s.totalPrice, sum(l.quantity)) "
+                    + "from ShoppingCart s left join s.lines l where s.customer.id = :customerId and s.dateOfPurchase is not null"
+                    + (after != null ? " and (s.dateOfPurchase < :lastDate or (s.dateOfPurchase = :lastDate and s.id < :lastId))" : "")
+                    + " group by s.id, s.dateOfPurchase, s.status, s.totalPrice order by s.dateOfPurchase desc, s.id desc";
+
+            List<OrderSummary> items = withReadOnlyEntityManager(entityManager -> {
+                TypedQuery<OrderSummary> query = entityManager.createQuery(jpql, OrderSummary.class)
+                        .setParameter("customerId", customerId);
+                if (after != null) {
+                    query.setParameter("lastDate", after.getDateOfPurchase(), TemporalType.TIMESTAMP)
+                            .setParameter("lastId", after.getId());
+                }
+                return query.setMaxResults(pageSize + 1).getResultList();
+            });
+
+            boolean hasNext = items.size() > pageSize;
+            return new OrderHistoryPage(hasNext ? items.subList(0, pageSize) : items, hasNext);
+        });
+    }
+
+    public List<CartLine> getCartLines(Long shoppingCartId) {
+        return metered(() -> {
+            validateShoppingCartId(shoppingCartId);
+            flushBufferedCart(shoppingCartId);
+            return readCart(entityManager -> entityManager
+                    .createQuery("select l from CartLine l join fetch l.product where l.shoppingCart.id = ?1", CartLine.class)
+                    .setParameter(1, shoppingCartId)
+                    .getResultList());
+        });
+    }
+
+    /**
+     * Moves the cart to the status. A cart buffered in the unpaid cart store is written to the database and
+     * leaves the store when it moves on from {@link Status#UNPAID}, its stock reservations end then as well.
+     * Leaving UNPAID is the checkout: the cart's lines are added to the sales summary in the same transaction,
+     * and taken out again if the cart goes back to UNPAID.
+     */
+    public void updateStatus(Long shoppingCartId, Status status) {
+        runMetered(() -> {
+            validateShoppingCartId(shoppingCartId);
+            if (status == null) {
+                throw new InvalidParameterProvidedException("status shouldn't be null");
+            }
+            if (unpaidCartStore != null && status != Status.UNPAID) {
+                unpaidCartStore.flush(shoppingCartId);
+            }
+            runInTransaction(entityManager -> {
+                Status previousStatus = lockStatus(entityManager, shoppingCartId);
+                if (previousStatus == null) {
+                    throw new InvalidParameterProvidedException("shoppingCart with id " + shoppingCartId + " doesn't exist");
+                }
+                List<Long> shoppingCartIds = List.of(shoppingCartId);
+                if (previousStatus != Status.UNPAID && status == Status.UNPAID) {
+                    recordSales(entityManager, shoppingCartIds, -1);
+                }
+                entityManager.createQuery("update ShoppingCart c set c.status = ?1 where c.id = ?2")
+                        .setParameter(1, status)
+                        .setParameter(2, shoppingCartId)
+                        .executeUpdate();
+                if (previousStatus == Status.UNPAID && status != Status.UNPAID) {
+                    recordSales(entityManager, shoppingCartIds, 1);
+                }
+            });
+            if (unpaidCartStore != null && status != Status.UNPAID) {
+                unpaidCartStore.detach(shoppingCartId);
+            }
+            if (stockReservations != null && status != Status.UNPAID) {
+                stockReservations.releaseAll(shoppingCartId);
+            }
+        });
+    }
+
+    /**
+     * Moves every cart purchased in {@code [purchasedFrom, purchasedTo)} that is in {@code from} to {@code to}
+     * with one guarded update, e.g. all of today's paid orders to {@link Status#IN_PROGRESS}. The matching rows
+     * are locked first (through the status and purchase date index) to learn their ids. The sales summary follows
+     * the carts leaving or going back to UNPAID, see {@link #updateStatus(Long, Status)}.
+     *
+     * @return ids of the moved carts
+     */
+    public List<Long> transitionStatus(Status from, Status to, Date purchasedFrom, Date purchasedTo) {
+        return metered(() -> {
+            validateTransition(from, to);
+            if (purchasedFrom == null || purchasedTo == null) {
+                throw new InvalidParameterProvidedException("purchasedFrom and purchasedTo shouldn't be null");
+            }
+            if (unpaidCartStore != null && from == Status.UNPAID && to != Status.UNPAID) {
+                unpaidCartStore.flush();
+            }
+
+            List<Long> transitioned = inTransaction(entityManager -> {
+                List<Long> lockedIds = entityManager
+                        .createQuery("select c.id from ShoppingCart c where c.status = ?1 AND c.dateOfPurchase >= ?2 AND c.dateOfPurchase < ?3", Long.class)
+                        .setParameter(1, from)
+                        .setParameter(2, purchasedFrom, TemporalType.TIMESTAMP)
+                        .setParameter(3, purchasedTo, TemporalType.TIMESTAMP)
+                        .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+                        .getResultList();
+                if (!lockedIds.isEmpty()) {
+                    recordSalesBefore(entityManager, lockedIds, from, to);
+                    entityManager.createQuery("update ShoppingCart c set c.status = ?1 where c.status = ?2 AND c.dateOfPurchase >= ?3 AND c.dateOfPurchase < ?4")
+                            .setParameter(1, to)
+                            .setParameter(2, from)
+                            .setParameter(3, purchasedFrom, TemporalType.TIMESTAMP)
+                            .setParameter(4, purchasedTo, TemporalType.TIMESTAMP)
+                            .executeUpdate();
+                    recordSalesAfter(entityManager, lockedIds, from, to);
+                }
+                return lockedIds;
+            });
+            detachFromUnpaidCartStore(transitioned, from, to);
+            releaseStockReservations(transitioned, from, to);
+            return transitioned;
+        });
+    }
+
+    /**
+     * Moves the carts that are still in {@code from} to {@code to} with one guarded update, carts in any other
+     * status are left alone.
+     *
+     * @return ids of the moved carts
+     */
+    public List<Long> transitionStatus(Collection<Long> shoppingCartIds, Status from, Status to) {
+        return metered(() -> {
+            validateTransition(from, to);
+            if (shoppingCartIds == null) {
+                throw new InvalidParameterProvidedException("shoppingCartIds shouldn't be null");
+            }
+            if (shoppingCartIds.isEmpty()) {
+                return Collections.emptyList();
+            }
+            if (unpaidCartStore != null && from == Status.UNPAID && to != Status.UNPAID) {
+                shoppingCartIds.forEach(unpaidCartStore::flush);
+            }
+
+            List<Long> transitioned = inTransaction(entityManager -> {
+                List<Long> lockedIds = entityManager
+                        .createQuery("select c.id from ShoppingCart c where c.id in ?1 AND c.status = ?2", Long.class)
+                        .setParameter(1, shoppingCartIds)
+                        .setParameter(2, from)
+                        .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+                        .getResultList();
+                if (!lockedIds.isEmpty()) {
+                    recordSalesBefore(entityManager, lockedIds, from, to);
+                    entityManager.createQuery("update ShoppingCart c set c.status = ?1 where c.id in ?2")
+                            .setParameter(1, to)
+                            .setParameter(2, lockedIds)
+                            .executeUpdate();
+                    recordSalesAfter(entityManager, lockedIds, from, to);
+                }
+                return lockedIds;
+            });
+            detachFromUnpaidCartStore(transitioned, from, to);
+            releaseStockReservations(transitioned, from, to);
+            return transitioned;
+        });
+    }
+
+    /**
+     * Ids of at most {@code limit} carts in the status with an id higher than {@code afterId}, in ascending order.
+     */
+    public List<Long> findShoppingCartIds(Status status, long afterId, int limit) {
+        return metered(() -> {
+            if (status == null || limit <= 0) {
+                throw new InvalidParameterProvidedException("status shouldn't be null and limit should be higher than 0");
+            }
+            return withEntityManager(entityManager -> entityManager
+                    .createQuery("select c.id from ShoppingCart c where c.status = ?1 AND c.id > ?2 order by c.id", Long.class)
+                    .setParameter(1, status)
+                    .setParameter(2, afterId)
+                    .setMaxResults(limit)
+                    .getResultList());
+        });
+    }
+
+    /**
+     * Id of the customer the cart belongs to, null when the cart doesn't exist or has no customer. Read from
+     * the primary, as a cart that was just added may not have reached a replica.
+     */
+    public Long getCustomerIdOfShoppingCart(Long shoppingCartId) {
+        return metered(() -> {
+            validateShoppingCartId(shoppingCartId);
+            List<Long> customerIds = withEntityManager(entityManager -> entityManager
+                    .createQuery("select c.customer.id from ShoppingCart c where c.id = ?1", Long.class)
+                    .setParameter(1, shoppingCartId)
+                    .getResultList());
+            return customerIds.isEmpty() ? null : customerIds.get(0);
+        });
+    }
+
+    public long countShoppingCarts(Status status) {
+        return metered(() -> {
+            if (status == null) {
+                throw new InvalidParameterProvidedException("status shouldn't be null");
+            }
+            return withReadOnlyEntityManager(entityManager -> entityManager
+                    .createQuery("select count(c) from ShoppingCart c where c.status = ?1", Long.class)
+                    .setParameter(1, status)
+                    .getSingleResult());
+        });
+    }
+
+    /**
+     * Switches on write-behind for unpaid carts: their lines are kept in memory, every change is appended to a
+     * journal in the directory and changed carts are written to the database every {@code flushIntervalMillis}.
+     * Carts journaled by a previous process that didn't flush them are recovered first.
+     */
+    public UnpaidCartStore enableWriteBehind(Path journalDirectory, FsyncPolicy fsyncPolicy, long flushIntervalMillis) {
+        if (journalDirectory == null || fsyncPolicy == null || flushIntervalMillis <= 0) {
+            throw new InvalidParameterProvidedException("journalDirectory and fsyncPolicy shouldn't be null and flushIntervalMillis should be higher than 0");
+        }
+        UnpaidCartStore store = new UnpaidCartStore(journalDirectory, fsyncPolicy, this::loadUnpaidCart, this::writeBufferedCarts,
+                ShoppingCartService::isConstraintViolation);
+        store.recover();
+        store.start(flushIntervalMillis, Math.min(flushIntervalMillis, 1000), TimeUnit.MILLISECONDS);
+        unpaidCartStore = store;
+        return store;
+    }
+
+    public UnpaidCartStore getUnpaidCartStore() {
+        return unpaidCartStore;
+    }
+
+    /**
+     * Switches on stock reservations: products added to an unpaid cart are reserved for {@code timeToLiveMillis}
+     * after the cart's last addition of the product and can't be added to other carts meanwhile. Pass the returned
+     * reservations to {@link ProductService#setStockReservations(StockReservations)} so they learn about stock changes.
+     */
+    public StockReservations enableStockReservations(long timeToLiveMillis) {
+        if (timeToLiveMillis <= 0) {
+            throw new InvalidParameterProvidedException("timeToLiveMillis should be higher than 0");
+        }
+        StockReservations reservations = new StockReservations(timeToLiveMillis, Math.max(1, timeToLiveMillis / 512), this::loadStockOnHand);
+        reservations.start();
+        stockReservations = reservations;
+        return reservations;
+    }
+
+    public StockReservations getStockReservations() {
+        return stockReservations;
+    }
+
+    @Override
+    public void closeSession() {
+        if (unpaidCartStore != null) {
+            unpaidCartStore.close();
+            unpaidCartStore = null;
+        }
+        if (stockReservations != null) {
+            stockReservations.close();
+            stockReservations = null;
+        }
+        super.closeSession();
     }
 
     public void updateCustomerOfShoppingCart(Long shoppingCartId, Customer customer) {
-        if (customer == null || customer.getDateOfBirth() == null || customer.getEmail() == null || customer.getName() == null || customer.getPassword() == null) {
-            throw new InvalidParameterProvidedException("customer shouldn't be null and customer parameters shouldn't be null");
-        }
-
-        ShoppingCart shoppingCartById = getShoppingCartById(shoppingCartId);
-        EntityTransaction tx = entityManager.getTransaction();
-
-        Query q = entityManager
-                .createQuery(
-                        "from Customer c where" +
-                                " c.dateOfBirth = ?1 AND c.email = ?2 " +
-                                "AND c.isAdmin = ?3 " +
-                                "AND c.name = ?4 " +
-                                "AND c.password = ?5" +
-                                "AND c.surname = ?6" +
-                                "AND c.address_id = ?7", Customer.class);
-        q.setParameter(1, customer.getDateOfBirth());
-        q.setParameter(2, customer.getEmail());
-        q.setParameter(3, customer.isAdmin());
-        q.setParameter(4, customer.getName());
-        q.setParameter(5, customer.getPassword());
-        q.setParameter(6, customer.getSurname());
-        q.setParameter(7, customer.getAddress().getId());
-
-        List resultList = q.getResultList();
-        if (resultList.size() == 1) {
-            tx.begin();
-            shoppingCartById.setCustomer(customer);
-            entityManager.merge(shoppingCartById);
-            tx.commit();
-        } else {
-            tx.begin();
-            entityManager.persist(customer);
-            shoppingCartById.setCustomer(customer);
-            entityManager.merge(shoppingCartById);
-            tx.commit();
+        runMetered(() -> {
+            if (customer == null || customer.getDateOfBirth() == null || customer.getEmail() == null || customer.getName() == null || customer.getPassword() == null) {
+                throw new InvalidParameterProvidedException("customer shouldn't be null and customer parameters shouldn't be null");
+            }
+            validateShoppingCartId(shoppingCartId);
+
+            addressRegistry.retryOnConflict(customer.getAddress(), () -> runInTransaction(entityManager -> {
+                ShoppingCart shoppingCartById = entityManager.find(ShoppingCart.class, shoppingCartId);
+
+                Query q = entityManager
+                        .createQuery(
+                                "from Customer c where" +
+                                        " c.dateOfBirth = ?1 AND c.email = ?2 " +
+                                        "AND c.isAdmin = ?3 " +
+                                        "AND c.name = ?4 " +
+                                        "AND c.password = ?5 " +
+                                        "AND c.surname = ?6 " +
+                                        "AND c.address.id = ?7", Customer.class);
+                q.setParameter(1, customer.getDateOfBirth());
+                q.setParameter(2, customer.getEmail());
+                q.setParameter(3, customer.isAdmin());
+                q.setParameter(4, customer.getName());
+                q.setParameter(5, customer.getPassword());
+                q.setParameter(6, customer.getSurname());
+                q.setParameter(7, customer.getAddress().getId());
+
+                List<Customer> resultList = q.getResultList();
+                if (resultList.size() == 1) {
+                    shoppingCartById.setCustomer(resultList.get(0));
+                } else {
+                    customer.setAddress(addressRegistry.findOrCreate(entityManager, customer.getAddress()));
+                    entityManager.persist(customer);
+                    shoppingCartById.setCustomer(customer);
+                }
+            }));
+        });
+    }
+
+    private void detachFromUnpaidCartStore(List<Long> shoppingCartIds, Status from, Status to) {
+        if (unpaidCartStore != null && from == Status.UNPAID && to != Status.UNPAID) {
+            shoppingCartIds.forEach(unpaidCartStore::detach);
+        }
+    }
+
+    private void releaseStockReservations(List<Long> shoppingCartIds, Status from, Status to) {
+        if (stockReservations != null && from == Status.UNPAID && to != Status.UNPAID) {
+            shoppingCartIds.forEach(stockReservations::releaseAll);
+        }
+    }
+
+    private Status lockStatus(EntityManager entityManager, Long shoppingCartId) {
+        List<Status> statuses = entityManager
+                .createQuery("select c.status from ShoppingCart c where c.id = ?1", Status.class)
+                .setParameter(1, shoppingCartId)
+                .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+                .getResultList();
+        return statuses.isEmpty() ? null : statuses.get(0);
+    }
+
+    private void recordSalesBefore(EntityManager entityManager, List<Long> shoppingCartIds, Status from, Status to) {
+        if (from != Status.UNPAID && to == Status.UNPAID) {
+            recordSales(entityManager, shoppingCartIds, -1);
+        }
+    }
+
+    private void recordSalesAfter(EntityManager entityManager, List<Long> shoppingCartIds, Status from, Status to) {
+        if (from == Status.UNPAID && to != Status.UNPAID) {
+            recordSales(entityManager, shoppingCartIds, 1);
+        }
+    }
+
+    /**
+     * Adds the lines of the sold carts to the sales summary, or takes them out with {@code sign} -1, in the
+     * caller's transaction: on the day of each cart's purchase date at the prices captured on the lines, the
+     * same sales SalesSummaryService#rebuildSalesSummary recomputes from the history.
+     */
+    private void recordSales(EntityManager entityManager, List<Long> shoppingCartIds, int sign) {
+        List<Object[]> rows = entityManager
+                .createQuery("select p.productType, s.dateOfPurchase, sum(l.quantity), sum(l.quantity * l.unitPrice) "
+                        + "from CartLine l join l.shoppingCart s join l.product p where s.id in ?1 AND s.dateOfPurchase is not null "
+                        + "group by p.productType, s.dateOfPurchase", Object[].class)
+                .setParameter(1, shoppingCartIds)
+                .getResultList();
+        Map<ProductType, SortedMap<LocalDate, DaySales>> sales = new EnumMap<>(ProductType.class);
+        for (Object[] row : rows) {
+            DaySales daySales = daySalesOf(sales, (ProductType) row[0], (Date) row[1]);
+            daySales.unitsSold += sign * ((Number) row[2]).longValue();
+            daySales.revenue += sign * ((Number) row[3]).doubleValue();
+        }
+        addSales(entityManager, sales);
+    }
+
+    /**
+     * Keeps the sales summary in step with a line change of a cart that is already sold.
+     */
+    private void recordLineSales(EntityManager entityManager, Long shoppingCartId, CartLine line, int quantity) {
+        List<Object[]> carts = entityManager
+                .createQuery("select c.status, c.dateOfPurchase from ShoppingCart c where c.id = ?1", Object[].class)
+                .setParameter(1, shoppingCartId)
+                .getResultList();
+        if (carts.isEmpty() || carts.get(0)[0] == Status.UNPAID || carts.get(0)[1] == null) {
+            return;
+        }
+        Map<ProductType, SortedMap<LocalDate, DaySales>> sales = new EnumMap<>(ProductType.class);
+        DaySales daySales = daySalesOf(sales, line.getProduct().getProductType(), (Date) carts.get(0)[1]);
+        daySales.unitsSold = quantity;
+        daySales.revenue = (double) quantity * line.getUnitPrice();
+        addSales(entityManager, sales);
+    }
+
+    private static DaySales daySalesOf(Map<ProductType, SortedMap<LocalDate, DaySales>> sales, ProductType productType, Date dateOfPurchase) {
+        LocalDate saleDate = new Timestamp(dateOfPurchase.getTime()).toLocalDateTime().toLocalDate();
+        return sales.computeIfAbsent(productType, type -> new TreeMap<>()).computeIfAbsent(saleDate, day -> new DaySales());
+    }
+
+    /**
+     * Upserts the sales into one randomly picked stripe of every type and day, so concurrent checkouts of a
+     * product type rarely wait for the same summary row. The rows are written in type and day order, so
+     * checkouts picking the same stripe can't deadlock.
+     */
+    private void addSales(EntityManager entityManager, Map<ProductType, SortedMap<LocalDate, DaySales>> sales) {
+        if (sales.isEmpty()) {
+            return;
+        }
+        int stripe = ThreadLocalRandom.current().nextInt(SalesSummary.STRIPES);
+        doWork(entityManager, connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(ADD_SALES)) {
+                for (Map.Entry<ProductType, SortedMap<LocalDate, DaySales>> typeSales : sales.entrySet()) {
+                    for (Map.Entry<LocalDate, DaySales> daySales : typeSales.getValue().entrySet()) {
+                        statement.setString(1, typeSales.getKey().name());
+                        statement.setDate(2, java.sql.Date.valueOf(daySales.getKey()));
+                        statement.setInt(3, stripe);
+                        statement.setLong(4, daySales.getValue().unitsSold);
+                        statement.setDouble(5, daySales.getValue().revenue);
+                        statement.addBatch();
+                    }
+                }
+                statement.executeBatch();
+            }
+        });
+    }
+
+    private void validateTransition(Status from, Status to) {
+        if (from == null || to == null) {
+            throw new InvalidParameterProvidedException("from and to statuses shouldn't be null");
+        }
+    }
+
+    /**
+     * Carts written behind by the unpaid cart store may reach a replica later than the store's flush returns,
+     * so with write-behind on they are read from the primary.
+     */
+    private <T> T readCart(Function<EntityManager, T> action) {
+        return unpaidCartStore != null ? withEntityManager(action) : withReadOnlyEntityManager(action);
+    }
+
+    private void flushBufferedCart(Long shoppingCartId) {
+        if (unpaidCartStore != null) {
+            unpaidCartStore.flush(shoppingCartId);
+        }
+    }
+
+    private void addCartLine(Long shoppingCartId, Product product, int quantity) {
+        if (unpaidCartStore != null) {
+            Product productById = withEntityManager(entityManager -> entityManager.find(Product.class, product.getId()));
+            if (productById == null) {
+                throw new InvalidParameterProvidedException("product with id " + product.getId() + " doesn't exist");
+            }
+            if (unpaidCartStore.addProduct(shoppingCartId, product.getId(), quantity, productById.getPriceAfterDiscount()) != null) {
+                recordBufferedWrite(shoppingCartId);
+                return;
+            }
+        }
+        try {
+            addCartLineInTransaction(shoppingCartId, product, quantity);
+        } catch (RuntimeException e) {
+            if (!isConstraintViolation(e)) {
+                throw e;
+            }
+            addCartLineInTransaction(shoppingCartId, product, quantity);
+        }
+    }
+
+    /**
+     * Two concurrent first adds of a product to a cart both find no line and both insert one; the later insert
+     * fails on cart_line_cart_product_uk and {@link #addCartLine} runs it again, now as an increment of the
+     * line the other add committed.
+     */
+    private void addCartLineInTransaction(Long shoppingCartId, Product product, int quantity) {
+        runInTransaction(entityManager -> {
+            CartLine line = findLockedCartLine(entityManager, shoppingCartId, product.getId());
+            if (line == null) {
+                Product productById = entityManager.find(Product.class, product.getId());
+                if (productById == null) {
+                    throw new InvalidParameterProvidedException("product with id " + product.getId() + " doesn't exist");
+                }
+                line = new CartLine(entityManager.getReference(ShoppingCart.class, shoppingCartId), productById, quantity, productById.getPriceAfterDiscount());
+                entityManager.persist(line);
+            } else {
+                line.setQuantity(line.getQuantity() + quantity);
+            }
+            addToTotalPrice(entityManager, shoppingCartId, quantity * line.getUnitPrice());
+            recordLineSales(entityManager, shoppingCartId, line, quantity);
+        });
+    }
+
+    /**
+     * Reads the quantity from the primary with a query, not through the second-level cache, which may still hold
+     * the product from before its stock changed.
+     */
+    private int loadStockOnHand(long productId) {
+        List<Integer> quantities = withEntityManager(entityManager -> entityManager
+                .createQuery("select p.quantity from Product p where p.id = ?1", Integer.class)
+                .setParameter(1, productId)
+                .getResultList());
+        if (quantities.isEmpty()) {
+            throw new InvalidParameterProvidedException("product with id " + productId + " doesn't exist");
+        }
+        return quantities.get(0);
+    }
+
+    private BufferedCart loadUnpaidCart(long shoppingCartId) {
+        return withEntityManager(entityManager -> {
+            List<Status> statuses = entityManager
+                    .createQuery("select c.status from ShoppingCart c where c.id = ?1", Status.class)
+                    .setParameter(1, shoppingCartId)
+                    .getResultList();
+            if (statuses.isEmpty() || statuses.get(0) != Status.UNPAID) {
+                return null;
+            }
+            List<BufferedCartLine> lines = entityManager
+                    .createQuery("select new com.database.services.cart.BufferedCartLine(l.product.id, l.quantity, l.unitPrice) " +
+                            "from CartLine l where l.shoppingCart.id = ?1", BufferedCartLine.class)
+                    .setParameter(1, shoppingCartId)
+                    .getResultList();
+            return new BufferedCart(shoppingCartId, lines);
+        });
+    }
+
+    /**
+     * A change buffered by the unpaid cart store is a write of the caller, whose reads should see it once it is
+     * flushed, whichever thread flushes it: the caller is kept until then, see {@link #writeBufferedCarts(List)}.
+     */
+    private void recordBufferedWrite(long shoppingCartId) {
+        ReplicaRouter router = getReplicaRouter();
+        if (router != null) {
+            router.recordWrite();
+            bufferedCartWriters.put(shoppingCartId, router.currentCaller());
+        }
+    }
+
+    /**
+     * Replaces the lines and the total price of the carts with their buffered state, in one transaction and
+     * three JDBC batches.
+     */
+    private void writeBufferedCarts(List<BufferedCart> carts) {
+        runInTransaction(entityManager -> doWork(entityManager, connection -> {
+            try (PreparedStatement deleteLines = connection.prepareStatement(DELETE_CART_LINES);
+                 PreparedStatement insertLine = connection.prepareStatement(INSERT_CART_LINE);
+                 PreparedStatement updateTotalPrice = connection.prepareStatement(UPDATE_TOTAL_PRICE)) {
+                for (BufferedCart cart : carts) {
+                    deleteLines.setLong(1, cart.getShoppingCartId());
+                    deleteLines.addBatch();
+                    for (BufferedCartLine line : cart.getLines()) {
+                        insertLine.setLong(1, cart.getShoppingCartId());
+                        insertLine.setLong(2, line.getProductId());
+                        insertLine.setInt(3, line.getQuantity());
+                        insertLine.setFloat(4, line.getUnitPrice());
+                        insertLine.addBatch();
+                    }
+                    updateTotalPrice.setFloat(1, cart.getTotalPrice());
+                    updateTotalPrice.setLong(2, cart.getShoppingCartId());
+                    updateTotalPrice.addBatch();
+                }
+                deleteLines.executeBatch();
+                insertLine.executeBatch();
+                updateTotalPrice.executeBatch();
+            }
+        }));
+        ReplicaRouter router = getReplicaRouter();
+        for (BufferedCart cart : carts) {
+            ReplicaRouter.Caller writer = bufferedCartWriters.remove(cart.getShoppingCartId());
+            if (router != null && writer != null) {
+                router.recordWrite(writer);
+            }
+        }
+    }
+
+    private CartLine findLockedCartLine(EntityManager entityManager, Long shoppingCartId, Long productId) {
+        List<CartLine> lines = entityManager
+                .createQuery("select l from CartLine l where l.shoppingCart.id = ?1 AND l.product.id = ?2", CartLine.class)
+                .setParameter(1, shoppingCartId)
+                .setParameter(2, productId)
+                .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+                .getResultList();
+        return lines.isEmpty() ? null : lines.get(0);
+    }
+
+    private void addToTotalPrice(EntityManager entityManager, Long shoppingCartId, float amount) {
+        int updated = entityManager.createQuery("update ShoppingCart c set c.totalPrice = c.totalPrice + ?1 where c.id = ?2")
+                .setParameter(1, amount)
+                .setParameter(2, shoppingCartId)
+                .executeUpdate();
+        if (updated == 0) {
+            throw new InvalidParameterProvidedException("shoppingCart with id " + shoppingCartId + " doesn't exist");
+        }
+    }
+
+    private static boolean isConstraintViolation(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConstraintViolationException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void validateShoppingCartId(Long shoppingCartId) {
+        if (shoppingCartId == null) {
+            throw new InvalidParameterProvidedException("shoppingCartId shouldn't be null");
+        }
+    }
+
+    private void validateProductAndQuantity(Product product, int quantity) {
+        if (product == null || product.getId() == null) {
+            throw new InvalidParameterProvidedException("product and its id shouldn't be null");
+        }
+        if (quantity <= 0) {
+            throw new InvalidParameterProvidedException("quantity should be positive");
         }
     }
 }
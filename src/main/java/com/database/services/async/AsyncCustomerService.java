@@ -0,0 +1,71 @@
+package com.database.services.async;
+
+import com.database.models.Address;
+import com.database.models.Customer;
+import com.database.services.CustomerService;
+import com.database.services.concurrent.BoundedServiceExecutor;
+import com.database.services.entityManager.ReplicaRouter;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * {@link CustomerService} operations run on the executor, see {@link AsyncProductService}.
+ */
+public class AsyncCustomerService {
+    private final CustomerService customerService;
+    private final BoundedServiceExecutor executor;
+
+    public AsyncCustomerService(CustomerService customerService, BoundedServiceExecutor executor) {
+        this.customerService = customerService;
+        this.executor = executor;
+    }
+
+    public CompletableFuture<Void> addCustomerToDatabase(Customer customer) {
+        return run(() -> customerService.addCustomerToDatabase(customer));
+    }
+
+    public CompletableFuture<Customer> getCustomerById(Long customerId) {
+        return supply(() -> customerService.getCustomerById(customerId));
+    }
+
+    public CompletableFuture<Customer> getCustomerWithOrderSummary(Long customerId) {
+        return supply(() -> customerService.getCustomerWithOrderSummary(customerId));
+    }
+
+    public CompletableFuture<Customer> getCustomerWithOrderHistory(Long customerId) {
+        return supply(() -> customerService.getCustomerWithOrderHistory(customerId));
+    }
+
+    public CompletableFuture<Void> removeCustomerFromDatabase(Long customerId) {
+        return run(() -> customerService.removeCustomerFromDatabase(customerId));
+    }
+
+    public CompletableFuture<Void> updateEmail(Long customerId, String email) {
+        return run(() -> customerService.updateEmail(customerId, email));
+    }
+
+    public CompletableFuture<Void> updatePassword(Long customerId, String password) {
+        return run(() -> customerService.updatePassword(customerId, password));
+    }
+
+    public CompletableFuture<Void> updateIsAdminStatus(Long customerId, boolean isAdmin) {
+        return run(() -> customerService.updateIsAdminStatus(customerId, isAdmin));
+    }
+
+    public CompletableFuture<Void> updateAddress(Long customerId, Address address) {
+        return run(() -> customerService.updateAddress(customerId, address));
+    }
+
+    private <T> CompletableFuture<T> supply(Supplier<T> operation) {
+        ReplicaRouter router = customerService.getReplicaRouter();
+        return router == null ? executor.supply(operation) : executor.supply(operation, router::bindToCaller);
+    }
+
+    private CompletableFuture<Void> run(Runnable operation) {
+        return supply(() -> {
+            operation.run();
+            return null;
+        });
+    }
+}
@@ -0,0 +1,105 @@
+package com.database.services.async;
+
+import com.database.models.Product;
+import com.database.models.enums.ProductType;
+import com.database.services.ProductService;
+import com.database.services.bestseller.BestSeller;
+import com.database.services.concurrent.BoundedServiceExecutor;
+import com.database.services.dto.CatalogPage;
+import com.database.services.dto.CatalogQuery;
+import com.database.services.entityManager.ReplicaRouter;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * {@link ProductService} operations run on the executor. A failed operation completes its future
+ * exceptionally with the exception the blocking call would have thrown, wrapped in a
+ * {@link java.util.concurrent.CompletionException}. With a replica router set on the service, an operation
+ * reads and writes for the thread that submitted it (see {@link ReplicaRouter#bindToCaller(Supplier)}), so
+ * it sees that thread's earlier writes and its own writes count for that thread's later reads. Operations
+ * submitted from stages chained on its future with the non-async methods count as submitted by the same thread.
+ */
+public class AsyncProductService {
+    private final ProductService productService;
+    private final BoundedServiceExecutor executor;
+
+    public AsyncProductService(ProductService productService, BoundedServiceExecutor executor) {
+        this.productService = productService;
+        this.executor = executor;
+    }
+
+    public CompletableFuture<Void> addProductToDatabase(Product product) {
+        return run(() -> productService.addProductToDatabase(product));
+    }
+
+    public CompletableFuture<Product> getProductById(Long productId) {
+        return supply(() -> productService.getProductById(productId));
+    }
+
+    public CompletableFuture<CatalogPage> getCatalogPage(CatalogQuery catalogQuery) {
+        return supply(() -> productService.getCatalogPage(catalogQuery));
+    }
+
+    public CompletableFuture<List<BestSeller>> getBestSellers(ProductType productType) {
+        return supply(() -> productService.getBestSellers(productType));
+    }
+
+    public CompletableFuture<Void> removeProductFromDatabase(Long productId) {
+        return run(() -> productService.removeProductFromDatabase(productId));
+    }
+
+    public CompletableFuture<Void> buyProduct(Long productId, int quantity) {
+        return run(() -> productService.buyProduct(productId, quantity));
+    }
+
+    public CompletableFuture<Void> buyProducts(Map<Long, Integer> quantitiesByProductId) {
+        return run(() -> productService.buyProducts(quantitiesByProductId));
+    }
+
+    public CompletableFuture<Void> buyProducts(Long shoppingCartId, Map<Long, Integer> quantitiesByProductId) {
+        return run(() -> productService.buyProducts(shoppingCartId, quantitiesByProductId));
+    }
+
+    public CompletableFuture<Void> addKeyValueProperty(Long productId, String key, String value) {
+        return run(() -> productService.addKeyValueProperty(productId, key, value));
+    }
+
+    public CompletableFuture<Void> removeKeyValueProperty(Long productId, String key, String value) {
+        return run(() -> productService.removeKeyValueProperty(productId, key, value));
+    }
+
+    public CompletableFuture<Void> updateName(Long productId, String name) {
+        return run(() -> productService.updateName(productId, name));
+    }
+
+    public CompletableFuture<Void> updatePrice(Long productId, float price) {
+        return run(() -> productService.updatePrice(productId, price));
+    }
+
+    public CompletableFuture<Void> updateQuantity(Long productId, int quantity) {
+        return run(() -> productService.updateQuantity(productId, quantity));
+    }
+
+    public CompletableFuture<Void> updateDescription(Long productId, String description) {
+        return run(() -> productService.updateDescription(productId, description));
+    }
+
+    public CompletableFuture<Void> updateDiscount(Long productId, float discount) {
+        return run(() -> productService.updateDiscount(productId, discount));
+    }
+
+    private <T> CompletableFuture<T> supply(Supplier<T> operation) {
+        ReplicaRouter router = productService.getReplicaRouter();
+        return router == null ? executor.supply(operation) : executor.supply(operation, router::bindToCaller);
+    }
+
+    private CompletableFuture<Void> run(Runnable operation) {
+        return supply(() -> {
+            operation.run();
+            return null;
+        });
+    }
+}
@@ -0,0 +1,96 @@
+package com.database.services.async;
+
+import com.database.models.CartLine;
+import com.database.models.Customer;
+import com.database.models.Product;
+import com.database.models.ShoppingCart;
+import com.database.models.enums.Status;
+import com.database.services.ShoppingCartService;
+import com.database.services.concurrent.BoundedServiceExecutor;
+import com.database.services.dto.OrderHistoryPage;
+import com.database.services.dto.OrderSummary;
+import com.database.services.entityManager.ReplicaRouter;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * {@link ShoppingCartService} operations run on the executor, see {@link AsyncProductService}. Operations on
+ * the same cart submitted together may run in any order; chain them when the order matters.
+ */
+public class AsyncShoppingCartService {
+    private final ShoppingCartService shoppingCartService;
+    private final BoundedServiceExecutor executor;
+
+    public AsyncShoppingCartService(ShoppingCartService shoppingCartService, BoundedServiceExecutor executor) {
+        this.shoppingCartService = shoppingCartService;
+        this.executor = executor;
+    }
+
+    public CompletableFuture<Void> addShoppingCartToDatabase(ShoppingCart shoppingCart) {
+        return run(() -> shoppingCartService.addShoppingCartToDatabase(shoppingCart));
+    }
+
+    public CompletableFuture<ShoppingCart> getShoppingCartById(Long shoppingCartId) {
+        return supply(() -> shoppingCartService.getShoppingCartById(shoppingCartId));
+    }
+
+    public CompletableFuture<ShoppingCart> getShoppingCartWithLines(Long shoppingCartId) {
+        return supply(() -> shoppingCartService.getShoppingCartWithLines(shoppingCartId));
+    }
+
+    public CompletableFuture<List<CartLine>> getCartLines(Long shoppingCartId) {
+        return supply(() -> shoppingCartService.getCartLines(shoppingCartId));
+    }
+
+    public CompletableFuture<OrderHistoryPage> getOrderHistoryPage(Long customerId, OrderSummary after, int pageSize) {
+        return supply(() -> shoppingCartService.getOrderHistoryPage(customerId, after, pageSize));
+    }
+
+    public CompletableFuture<Void> removeShoppingCartFromDatabase(Long shoppingCartId) {
+        return run(() -> shoppingCartService.removeShoppingCartFromDatabase(shoppingCartId));
+    }
+
+    public CompletableFuture<Void> addProductToShoppingCart(Long shoppingCartId, Product product, int quantity) {
+        return run(() -> shoppingCartService.addProductToShoppingCart(shoppingCartId, product, quantity));
+    }
+
+    public CompletableFuture<Void> removeProductFromShoppingCart(Long shoppingCartId, Product product, int quantity) {
+        return run(() -> shoppingCartService.removeProductFromShoppingCart(shoppingCartId, product, quantity));
+    }
+
+    public CompletableFuture<Void> updateStatus(Long shoppingCartId, Status status) {
+        return run(() -> shoppingCartService.updateStatus(shoppingCartId, status));
+    }
+
+    public CompletableFuture<List<Long>> transitionStatus(Status from, Status to, Date purchasedFrom, Date purchasedTo) {
+        return supply(() -> shoppingCartService.transitionStatus(from, to, purchasedFrom, purchasedTo));
+    }
+
+    public CompletableFuture<List<Long>> transitionStatus(Collection<Long> shoppingCartIds, Status from, Status to) {
+        return supply(() -> shoppingCartService.transitionStatus(shoppingCartIds, from, to));
+    }
+
+    public CompletableFuture<List<Long>> findShoppingCartIds(Status status, long afterId, int limit) {
+        return supply(() -> shoppingCartService.findShoppingCartIds(status, afterId, limit));
+    }
+
+    public CompletableFuture<Void> updateCustomerOfShoppingCart(Long shoppingCartId, Customer customer) {
+        return run(() -> shoppingCartService.updateCustomerOfShoppingCart(shoppingCartId, customer));
+    }
+
+    private <T> CompletableFuture<T> supply(Supplier<T> operation) {
+        ReplicaRouter router = shoppingCartService.getReplicaRouter();
+        return router == null ? executor.supply(operation) : executor.supply(operation, router::bindToCaller);
+    }
+
+    private CompletableFuture<Void> run(Runnable operation) {
+        return supply(() -> {
+            operation.run();
+            return null;
+        });
+    }
+}
@@ -0,0 +1,27 @@
+package com.database.services.bestseller;
+
+import com.database.models.enums.ProductType;
+
+public class BestSeller {
+    private final long productId;
+    private final ProductType productType;
+    private final long unitsSold;
+
+    public BestSeller(long productId, ProductType productType, long unitsSold) {
+        this.productId = productId;
+        this.productType = productType;
+        this.unitsSold = unitsSold;
+    }
+
+    public long getProductId() {
+        return productId;
+    }
+
+    public ProductType getProductType() {
+        return productType;
+    }
+
+    public long getUnitsSold() {
+        return unitsSold;
+    }
+}
@@ -0,0 +1,265 @@
+package com.database.services.bestseller;
+
+import com.database.models.enums.ProductType;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Units sold per product and the best sellers of every product type, kept in memory. A sale adds to the product's
+ * {@link LongAdder}, so concurrent purchases don't contend on one counter, and only touches the leaderboard of
+ * its type when the product's total beats the last entry. A leaderboard is an immutable sorted array replaced
+ * by compare-and-set, so {@link #getTopSellers(ProductType)} is a single volatile read. The units sold since the
+ * last write are handed to the persister by {@link #persist()}, periodically once {@link #start} was called.
+ */
+public class BestSellerTracker implements Closeable {
+    private static final Comparator<BestSeller> BY_UNITS_SOLD = Comparator.comparingLong(BestSeller::getUnitsSold).reversed()
+            .thenComparingLong(BestSeller::getProductId);
+
+    private final int topK;
+    private final Consumer<List<BestSeller>> persister;
+    private final Map<Long, Counter> counters = new ConcurrentHashMap<>();
+    private final Map<ProductType, AtomicReference<Leaderboard>> leaderboards = new EnumMap<>(ProductType.class);
+    private final ReentrantLock persistLock = new ReentrantLock();
+
+    private volatile RuntimeException lastPersistFailure;
+    private ScheduledExecutorService scheduler;
+
+    private static class Counter {
+        private final long productId;
+        private final ProductType productType;
+        private final LongAdder unitsSold = new LongAdder();
+        /**
+         * Guarded by persistLock.
+         */
+        private long persistedUnitsSold;
+
+        private Counter(long productId, ProductType productType) {
+            this.productId = productId;
+            this.productType = productType;
+        }
+    }
+
+    private static class Leaderboard {
+        private final BestSeller[] entries;
+        private final List<BestSeller> view;
+        /**
+         * Units sold a product needs to get on the board, 0 while it isn't full.
+         */
+        private final long threshold;
+
+        private Leaderboard(BestSeller[] entries, int topK) {
+            this.entries = entries;
+            this.view = Collections.unmodifiableList(Arrays.asList(entries));
+            this.threshold = entries.length < topK ? 0 : entries[entries.length - 1].getUnitsSold();
+        }
+
+        private Leaderboard with(BestSeller bestSeller, int topK) {
+            List<BestSeller> updated = new ArrayList<>(entries.length + 1);
+            for (BestSeller entry : entries) {
+                if (entry.getProductId() != bestSeller.getProductId()) {
+                    updated.add(entry);
+                } else if (entry.getUnitsSold() >= bestSeller.getUnitsSold()) {
+                    return this;
+                }
+            }
+            updated.add(bestSeller);
+            updated.sort(BY_UNITS_SOLD);
+            if (updated.size() > topK) {
+                if (updated.get(topK) == bestSeller) {
+                    return this;
+                }
+                updated = updated.subList(0, topK);
+            }
+            return new Leaderboard(updated.toArray(new BestSeller[0]), topK);
+        }
+    }
+
+    /**
+     * @param topK      length of the leaderboard of every product type
+     * @param persister adds the units sold since the previous call to the stored totals, in one transaction
+     */
+    public BestSellerTracker(int topK, Consumer<List<BestSeller>> persister) {
+        if (topK <= 0) {
+            throw new IllegalArgumentException("topK should be higher than 0");
+        }
+        this.topK = topK;
+        this.persister = persister;
+        for (ProductType productType : ProductType.values()) {
+            leaderboards.put(productType, new AtomicReference<>(new Leaderboard(new BestSeller[0], topK)));
+        }
+    }
+
+    /**
+     * Flushes the units sold to the persister every {@code persistInterval}. A failed write keeps the units for the
+     * next one and is available from {@link #getLastPersistFailure()}.
+     */
+    public synchronized void start(long persistInterval, TimeUnit unit) {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "best-seller-tracker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                persist();
+                lastPersistFailure = null;
+            } catch (RuntimeException e) {
+                lastPersistFailure = e;
+            }
+        }, persistInterval, persistInterval, unit);
+    }
+
+    /**
+     * Loads stored totals, which are not handed to the persister again.
+     */
+    public void restore(Collection<BestSeller> stored) {
+        persistLock.lock();
+        try {
+            for (BestSeller bestSeller : stored) {
+                Counter counter = counterOf(bestSeller.getProductId(), bestSeller.getProductType());
+                counter.unitsSold.add(bestSeller.getUnitsSold());
+                counter.persistedUnitsSold += bestSeller.getUnitsSold();
+            }
+        } finally {
+            persistLock.unlock();
+        }
+        leaderboards.keySet().forEach(this::rebuildLeaderboard);
+    }
+
+    public void record(long productId, ProductType productType, long quantity) {
+        if (quantity <= 0) {
+            return;
+        }
+        Counter counter = counterOf(productId, productType);
+        counter.unitsSold.add(quantity);
+
+        AtomicReference<Leaderboard> leaderboard = leaderboards.get(counter.productType);
+        Leaderboard current = leaderboard.get();
+        long unitsSold = counter.unitsSold.sum();
+        if (unitsSold <= current.threshold) {
+            return;
+        }
+        BestSeller bestSeller = new BestSeller(productId, counter.productType, unitsSold);
+        while (true) {
+            Leaderboard updated = current.with(bestSeller, topK);
+            if (updated == current || leaderboard.compareAndSet(current, updated)) {
+                return;
+            }
+            current = leaderboard.get();
+        }
+    }
+
+    /**
+     * Best sellers of the product type, most units sold first.
+     */
+    public List<BestSeller> getTopSellers(ProductType productType) {
+        return leaderboards.get(productType).get().view;
+    }
+
+    public long getUnitsSold(long productId) {
+        Counter counter = counters.get(productId);
+        return counter == null ? 0 : counter.unitsSold.sum();
+    }
+
+    /**
+     * Forgets a removed product. Its units not persisted yet are dropped and its place on the leaderboard goes
+     * to the next best seller.
+     */
+    public void remove(long productId) {
+        Counter counter = counters.remove(productId);
+        if (counter != null) {
+            rebuildLeaderboard(counter.productType);
+        }
+    }
+
+    public RuntimeException getLastPersistFailure() {
+        return lastPersistFailure;
+    }
+
+    /**
+     * Hands the units sold since the previous write to the persister.
+     *
+     * @return number of written products
+     */
+    public int persist() {
+        persistLock.lock();
+        try {
+            List<Counter> changed = new ArrayList<>();
+            List<Long> totals = new ArrayList<>();
+            List<BestSeller> sold = new ArrayList<>();
+            for (Counter counter : counters.values()) {
+                long unitsSold = counter.unitsSold.sum();
+                if (unitsSold != counter.persistedUnitsSold) {
+                    changed.add(counter);
+                    totals.add(unitsSold);
+                    sold.add(new BestSeller(counter.productId, counter.productType, unitsSold - counter.persistedUnitsSold));
+                }
+            }
+            if (sold.isEmpty()) {
+                return 0;
+            }
+            sold.sort(Comparator.comparingLong(BestSeller::getProductId));
+            persister.accept(sold);
+            for (int i = 0; i < changed.size(); i++) {
+                changed.get(i).persistedUnitsSold = totals.get(i);
+            }
+            return sold.size();
+        } finally {
+            persistLock.unlock();
+        }
+    }
+
+    /**
+     * Stops the periodic writes and persists what is left.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (scheduler != null) {
+                scheduler.shutdown();
+                try {
+                    scheduler.awaitTermination(1, TimeUnit.MINUTES);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                scheduler = null;
+            }
+        }
+        persist();
+    }
+
+    private Counter counterOf(long productId, ProductType productType) {
+        Counter counter = counters.get(productId);
+        return counter != null ? counter : counters.computeIfAbsent(productId, id -> new Counter(id, productType));
+    }
+
+    private void rebuildLeaderboard(ProductType productType) {
+        List<BestSeller> bestSellers = new ArrayList<>();
+        for (Counter counter : counters.values()) {
+            if (counter.productType == productType) {
+                bestSellers.add(new BestSeller(counter.productId, productType, counter.unitsSold.sum()));
+            }
+        }
+        bestSellers.sort(BY_UNITS_SOLD);
+        leaderboards.get(productType).set(new Leaderboard(bestSellers.subList(0, Math.min(topK, bestSellers.size())).toArray(new BestSeller[0]), topK));
+    }
+}
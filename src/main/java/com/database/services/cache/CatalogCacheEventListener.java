@@ -0,0 +1,33 @@
+package com.database.services.cache;
+
+import org.ehcache.event.CacheEvent;
+import org.ehcache.event.CacheEventListener;
+import org.ehcache.event.EventType;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts entries dropped from the catalog caches, registered for them in ehcache.xml.
+ * Hibernate's statistics only know about hits, misses and puts.
+ */
+public class CatalogCacheEventListener implements CacheEventListener<Object, Object> {
+    private static final LongAdder EVICTIONS = new LongAdder();
+    private static final LongAdder EXPIRATIONS = new LongAdder();
+
+    @Override
+    public void onEvent(CacheEvent<? extends Object, ? extends Object> event) {
+        if (event.getType() == EventType.EVICTED) {
+            EVICTIONS.increment();
+        } else if (event.getType() == EventType.EXPIRED) {
+            EXPIRATIONS.increment();
+        }
+    }
+
+    public static long getEvictionCount() {
+        return EVICTIONS.sum();
+    }
+
+    public static long getExpirationCount() {
+        return EXPIRATIONS.sum();
+    }
+}
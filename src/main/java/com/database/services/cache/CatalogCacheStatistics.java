@@ -0,0 +1,85 @@
+package com.database.services.cache;
+
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+
+/**
+ * Snapshot of the second-level cache counters of the catalog regions, used to size them in ehcache.xml.
+ * Hibernate only counts hits, misses and puts with {@code hibernate.generate_statistics} on, which it is not by
+ * default as it costs every session; without it those counters read 0, see {@link #isStatisticsEnabled()}.
+ */
+public class CatalogCacheStatistics {
+    public static final String PRODUCT_REGION = "product";
+    public static final String PRODUCT_PROPERTIES_REGION = "product-properties";
+    public static final String PROPERTY_REGION = "property";
+
+    private static final String[] REGIONS = {PRODUCT_REGION, PRODUCT_PROPERTIES_REGION, PROPERTY_REGION};
+
+    private final long hitCount;
+    private final long missCount;
+    private final long putCount;
+    private final long evictionCount;
+    private final long expirationCount;
+    private final boolean statisticsEnabled;
+
+    public CatalogCacheStatistics(Statistics statistics) {
+        long hits = 0;
+        long misses = 0;
+        long puts = 0;
+        for (String region : REGIONS) {
+            CacheRegionStatistics regionStatistics = statistics.getDomainDataRegionStatistics(region);
+            if (regionStatistics != null) {
+                hits += regionStatistics.getHitCount();
+                misses += regionStatistics.getMissCount();
+                puts += regionStatistics.getPutCount();
+            }
+        }
+        this.hitCount = hits;
+        this.missCount = misses;
+        this.putCount = puts;
+        this.evictionCount = CatalogCacheEventListener.getEvictionCount();
+        this.expirationCount = CatalogCacheEventListener.getExpirationCount();
+        this.statisticsEnabled = statistics.isStatisticsEnabled();
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    public long getPutCount() {
+        return putCount;
+    }
+
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public long getExpirationCount() {
+        return expirationCount;
+    }
+
+    /**
+     * Whether Hibernate counted the hits, misses and puts; evictions and expirations are always counted.
+     */
+    public boolean isStatisticsEnabled() {
+        return statisticsEnabled;
+    }
+
+    public double getHitRatio() {
+        long lookups = hitCount + missCount;
+        return lookups == 0 ? 0 : (double) hitCount / lookups;
+    }
+
+    @Override
+    public String toString() {
+        if (!statisticsEnabled) {
+            return "hits, misses and puts not counted, evictions=" + evictionCount + ", expirations=" + expirationCount;
+        }
+        return "hits=" + hitCount + ", misses=" + missCount + ", puts=" + putCount
+                + ", evictions=" + evictionCount + ", expirations=" + expirationCount;
+    }
+}
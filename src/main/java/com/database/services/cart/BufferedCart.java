@@ -0,0 +1,41 @@
+package com.database.services.cart;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Snapshot of the lines of one buffered cart.
+ */
+public class BufferedCart {
+    private final long shoppingCartId;
+    private final Map<Long, BufferedCartLine> lines;
+
+    public BufferedCart(long shoppingCartId, Collection<BufferedCartLine> lines) {
+        this.shoppingCartId = shoppingCartId;
+        Map<Long, BufferedCartLine> linesByProductId = new LinkedHashMap<>();
+        lines.forEach(line -> linesByProductId.put(line.getProductId(), line));
+        this.lines = Collections.unmodifiableMap(linesByProductId);
+    }
+
+    public long getShoppingCartId() {
+        return shoppingCartId;
+    }
+
+    public Collection<BufferedCartLine> getLines() {
+        return lines.values();
+    }
+
+    public BufferedCartLine getLine(long productId) {
+        return lines.get(productId);
+    }
+
+    public float getTotalPrice() {
+        float totalPrice = 0;
+        for (BufferedCartLine line : lines.values()) {
+            totalPrice += line.getQuantity() * line.getUnitPrice();
+        }
+        return totalPrice;
+    }
+}
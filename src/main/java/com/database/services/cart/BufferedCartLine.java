@@ -0,0 +1,25 @@
+package com.database.services.cart;
+
+public class BufferedCartLine {
+    private final long productId;
+    private final int quantity;
+    private final float unitPrice;
+
+    public BufferedCartLine(long productId, int quantity, float unitPrice) {
+        this.productId = productId;
+        this.quantity = quantity;
+        this.unitPrice = unitPrice;
+    }
+
+    public long getProductId() {
+        return productId;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public float getUnitPrice() {
+        return unitPrice;
+    }
+}
@@ -0,0 +1,268 @@
+package com.database.services.cart;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of cart line changes, split into numbered segment files. Every record holds the
+ * state of a line after the change (not the change itself), so replaying a record over a database that
+ * already has it is harmless. A segment can be deleted once the carts were flushed after it was closed.
+ * Every record ends with the CRC32 of the rest of it, so a record torn by a crash is recognised and dropped.
+ *
+ * <pre>
+ * L,&lt;shoppingCartId&gt;,&lt;productId&gt;,&lt;quantity&gt;,&lt;unitPrice&gt;   line state, quantity 0 removes the line
+ * C,&lt;shoppingCartId&gt;                                    cart left the store, earlier records are void
+ * </pre>
+ * Carts the database rejected are kept apart in a quarantine file, which is rewritten whole whenever they change:
+ * <pre>
+ * Q,&lt;shoppingCartId&gt;                                    quarantined cart, its L records follow
+ * </pre>
+ */
+class CartJournal implements Closeable {
+    private static final String SEGMENT_PREFIX = "cart-journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String QUARANTINE_FILE = "cart-quarantine.log";
+
+    private final Path directory;
+    private final FsyncPolicy fsyncPolicy;
+    private final List<Path> recoveredSegments;
+
+    private long segmentNumber;
+    private Path segment;
+    private FileChannel channel;
+
+    CartJournal(Path directory, FsyncPolicy fsyncPolicy) {
+        this.directory = directory;
+        this.fsyncPolicy = fsyncPolicy;
+        try {
+            Files.createDirectories(directory);
+            recoveredSegments = listSegments();
+            segmentNumber = recoveredSegments.isEmpty() ? 0 : segmentNumberOf(recoveredSegments.get(recoveredSegments.size() - 1));
+            openNextSegment();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    synchronized void appendLine(long shoppingCartId, long productId, int quantity, float unitPrice) {
+        write("L," + shoppingCartId + "," + productId + "," + quantity + "," + unitPrice);
+    }
+
+    synchronized void appendClose(long shoppingCartId) {
+        write("C," + shoppingCartId);
+    }
+
+    synchronized void sync() {
+        try {
+            channel.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Closes the current segment and starts a new one.
+     *
+     * @return every segment before the new one, they can be deleted once the carts are flushed
+     */
+    synchronized List<Path> rotate() {
+        try {
+            if (fsyncPolicy != FsyncPolicy.NEVER) {
+                channel.force(false);
+            }
+            channel.close();
+            openNextSegment();
+            List<Path> segments = listSegments();
+            segments.remove(segment);
+            return segments;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    void delete(List<Path> segments) {
+        try {
+            for (Path closedSegment : segments) {
+                Files.deleteIfExists(closedSegment);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Replaces the quarantine file with the carts, forced to disk unless the policy is {@link FsyncPolicy#NEVER}.
+     * The new content is written aside and moved over the old, so a crash leaves one or the other.
+     */
+    synchronized void writeQuarantine(Collection<BufferedCart> carts) {
+        StringBuilder content = new StringBuilder();
+        for (BufferedCart cart : carts) {
+            content.append(recordOf("Q," + cart.getShoppingCartId()));
+            for (BufferedCartLine line : cart.getLines()) {
+                content.append(recordOf("L," + cart.getShoppingCartId() + "," + line.getProductId() + "," + line.getQuantity() + "," + line.getUnitPrice()));
+            }
+        }
+        Path quarantine = directory.resolve(QUARANTINE_FILE);
+        Path written = directory.resolve(QUARANTINE_FILE + ".new");
+        try (FileChannel file = FileChannel.open(written, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.wrap(content.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                file.write(buffer);
+            }
+            if (fsyncPolicy != FsyncPolicy.NEVER) {
+                file.force(false);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        try {
+            Files.move(written, quarantine, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Carts in the quarantine file, left by this or a previous process.
+     */
+    Map<Long, BufferedCart> readQuarantine() {
+        Path quarantine = directory.resolve(QUARANTINE_FILE);
+        Map<Long, Map<Long, BufferedCartLine>> carts = new LinkedHashMap<>();
+        if (Files.exists(quarantine)) {
+            try (BufferedReader reader = Files.newBufferedReader(quarantine, StandardCharsets.UTF_8)) {
+                String record = reader.readLine();
+                while (record != null && applyRecord(carts, record)) {
+                    record = reader.readLine();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        Map<Long, BufferedCart> quarantinedCarts = new LinkedHashMap<>();
+        carts.forEach((shoppingCartId, lines) -> quarantinedCarts.put(shoppingCartId, new BufferedCart(shoppingCartId, lines.values())));
+        return quarantinedCarts;
+    }
+
+    /**
+     * Lines of the carts that were still in the store when the previous process stopped, in journal order.
+     * A torn record at the end of a segment (the process died while writing it) ends that segment.
+     */
+    Map<Long, Map<Long, BufferedCartLine>> replay() {
+        Map<Long, Map<Long, BufferedCartLine>> carts = new LinkedHashMap<>();
+        try {
+            for (Path recoveredSegment : recoveredSegments) {
+                try (BufferedReader reader = Files.newBufferedReader(recoveredSegment, StandardCharsets.UTF_8)) {
+                    String record = reader.readLine();
+                    while (record != null && applyRecord(carts, record)) {
+                        record = reader.readLine();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return carts;
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            if (fsyncPolicy != FsyncPolicy.NEVER) {
+                channel.force(false);
+            }
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private boolean applyRecord(Map<Long, Map<Long, BufferedCartLine>> carts, String record) {
+        int checksumStart = record.lastIndexOf(',');
+        if (checksumStart < 0 || !record.substring(checksumStart + 1).equals(checksumOf(record.substring(0, checksumStart)))) {
+            return false;
+        }
+        String[] fields = record.substring(0, checksumStart).split(",");
+        try {
+            if (fields.length == 5 && fields[0].equals("L")) {
+                long shoppingCartId = Long.parseLong(fields[1]);
+                long productId = Long.parseLong(fields[2]);
+                BufferedCartLine line = new BufferedCartLine(productId, Integer.parseInt(fields[3]), Float.parseFloat(fields[4]));
+                carts.computeIfAbsent(shoppingCartId, id -> new LinkedHashMap<>()).put(productId, line);
+                return true;
+            }
+            if (fields.length == 2 && fields[0].equals("C")) {
+                carts.remove(Long.parseLong(fields[1]));
+                return true;
+            }
+            if (fields.length == 2 && fields[0].equals("Q")) {
+                carts.put(Long.parseLong(fields[1]), new LinkedHashMap<>());
+                return true;
+            }
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        return false;
+    }
+
+    private void write(String payload) {
+        ByteBuffer buffer = ByteBuffer.wrap(recordOf(payload).getBytes(StandardCharsets.UTF_8));
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            if (fsyncPolicy == FsyncPolicy.ALWAYS) {
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String recordOf(String payload) {
+        return payload + "," + checksumOf(payload) + "\n";
+    }
+
+    private static String checksumOf(String payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload.getBytes(StandardCharsets.UTF_8));
+        return Long.toHexString(crc.getValue());
+    }
+
+    private void openNextSegment() throws IOException {
+        segmentNumber++;
+        segment = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, segmentNumber, SEGMENT_SUFFIX));
+        channel = FileChannel.open(segment, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    }
+
+    private List<Path> listSegments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files
+                    .filter(file -> file.getFileName().toString().startsWith(SEGMENT_PREFIX) && file.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted(Comparator.comparingLong(CartJournal::segmentNumberOf))
+                    .collect(Collectors.toCollection(ArrayList::new));
+        }
+    }
+
+    private static long segmentNumberOf(Path segment) {
+        String fileName = segment.getFileName().toString();
+        return Long.parseLong(fileName.substring(SEGMENT_PREFIX.length(), fileName.length() - SEGMENT_SUFFIX.length()));
+    }
+}
@@ -0,0 +1,20 @@
+package com.database.services.cart;
+
+/**
+ * When the cart journal is forced to disk. Whatever was written but not forced yet can be lost when the
+ * machine (not only the JVM) goes down.
+ */
+public enum FsyncPolicy {
+    /**
+     * Every journal record is forced before the cart operation returns.
+     */
+    ALWAYS,
+    /**
+     * The journal is forced on a fixed interval and whenever a segment is closed.
+     */
+    INTERVAL,
+    /**
+     * Forcing is left to the operating system.
+     */
+    NEVER
+}
@@ -0,0 +1,477 @@
+package com.database.services.cart;
+
+import java.io.Closeable;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * Write-behind store of the lines of unpaid carts. A cart is loaded once on first use, after that every
+ * change only updates memory and appends a record to the {@link CartJournal}; changed carts are written to the
+ * database in batches by {@link #flush()}, periodically once {@link #start} was called, and a cart leaves the
+ * store through {@link #detach} when it stops being unpaid. {@link #recover()} replays the journal left behind
+ * by a process that stopped before flushing. A cart the database rejects, e.g. because its product was deleted
+ * elsewhere, is quarantined (see {@link #getQuarantinedCarts()}), so it doesn't hold back the other carts or the
+ * truncation of the journal. Quarantined carts are kept in the journal directory across restarts and reported as
+ * the last flush failure until they are retried with {@link #retryQuarantined(long)} or given up with
+ * {@link #discardQuarantined(long)}.
+ */
+public class UnpaidCartStore implements Closeable {
+    public static final int DEFAULT_FLUSH_BATCH_SIZE = 200;
+
+    private final CartJournal journal;
+    private final FsyncPolicy fsyncPolicy;
+    private final LongFunction<BufferedCart> loader;
+    private final Consumer<List<BufferedCart>> flusher;
+    private final Predicate<RuntimeException> rejection;
+
+    private final Map<Long, CartState> carts = new ConcurrentHashMap<>();
+    private final Map<Long, BufferedCart> quarantinedCarts = new ConcurrentHashMap<>();
+    private final AtomicLong quarantineCount = new AtomicLong();
+    private final ReadWriteLock rotationLock = new ReentrantReadWriteLock();
+    /**
+     * Serializes database writes, so an older snapshot of a cart is never committed after a newer one.
+     */
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    private volatile int flushBatchSize = DEFAULT_FLUSH_BATCH_SIZE;
+    private volatile RuntimeException lastFlushFailure;
+    private ScheduledExecutorService scheduler;
+
+    private static class CartState {
+        private final long shoppingCartId;
+        private final Map<Long, BufferedCartLine> lines = new HashMap<>();
+        private boolean dirty;
+        private boolean detached;
+
+        private CartState(BufferedCart cart) {
+            shoppingCartId = cart.getShoppingCartId();
+            cart.getLines().forEach(line -> lines.put(line.getProductId(), line));
+        }
+
+        private BufferedCart snapshot() {
+            return new BufferedCart(shoppingCartId, lines.values());
+        }
+    }
+
+    /**
+     * @param loader  current lines of an unpaid cart from the database, or null when the cart doesn't exist or isn't unpaid
+     * @param flusher writes the lines and total price of the carts to the database in one transaction
+     */
+    public UnpaidCartStore(Path journalDirectory, FsyncPolicy fsyncPolicy, LongFunction<BufferedCart> loader, Consumer<List<BufferedCart>> flusher) {
+        this(journalDirectory, fsyncPolicy, loader, flusher, failure -> false);
+    }
+
+    /**
+     * @param rejection tells a flush failure caused by the cart itself, which no retry will fix, from one of the
+     *                  database, e.g. a lost connection, after which the carts are written again by the next flush
+     */
+    public UnpaidCartStore(Path journalDirectory, FsyncPolicy fsyncPolicy, LongFunction<BufferedCart> loader, Consumer<List<BufferedCart>> flusher,
+                           Predicate<RuntimeException> rejection) {
+        this.journal = new CartJournal(journalDirectory, fsyncPolicy);
+        this.fsyncPolicy = fsyncPolicy;
+        this.loader = loader;
+        this.flusher = flusher;
+        this.rejection = rejection;
+        quarantinedCarts.putAll(journal.readQuarantine());
+    }
+
+    public void setFlushBatchSize(int flushBatchSize) {
+        if (flushBatchSize <= 0) {
+            throw new IllegalArgumentException("flushBatchSize should be higher than 0");
+        }
+        this.flushBatchSize = flushBatchSize;
+    }
+
+    /**
+     * Flushes every {@code flushInterval} and, with {@link FsyncPolicy#INTERVAL}, forces the journal every {@code fsyncInterval}.
+     * A failed flush keeps the carts dirty for the next one and is available from {@link #getLastFlushFailure()},
+     * as is a cart quarantined by a flush until a flush quarantines nothing.
+     */
+    public synchronized void start(long flushInterval, long fsyncInterval, TimeUnit unit) {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "unpaid-cart-store");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                long quarantinedBefore = quarantineCount.get();
+                flush();
+                if (quarantineCount.get() == quarantinedBefore) {
+                    lastFlushFailure = null;
+                }
+            } catch (RuntimeException e) {
+                lastFlushFailure = e;
+            }
+        }, flushInterval, flushInterval, unit);
+        if (fsyncPolicy == FsyncPolicy.INTERVAL) {
+            scheduler.scheduleWithFixedDelay(journal::sync, fsyncInterval, fsyncInterval, unit);
+        }
+    }
+
+    /**
+     * @return the cart after the change, or null when the cart isn't unpaid and has to be changed in the database directly
+     */
+    public BufferedCart addProduct(long shoppingCartId, long productId, int quantity, float unitPrice) {
+        return changeLine(shoppingCartId, productId, line -> line == null
+                ? new BufferedCartLine(productId, quantity, unitPrice)
+                : new BufferedCartLine(productId, line.getQuantity() + quantity, line.getUnitPrice()));
+    }
+
+    /**
+     * @return the cart after the change, or null when the cart isn't unpaid and has to be changed in the database directly
+     */
+    public BufferedCart removeProduct(long shoppingCartId, long productId, int quantity) {
+        return changeLine(shoppingCartId, productId, line -> line == null
+                ? null
+                : new BufferedCartLine(productId, Math.max(0, line.getQuantity() - quantity), line.getUnitPrice()));
+    }
+
+    public boolean contains(long shoppingCartId) {
+        return carts.containsKey(shoppingCartId);
+    }
+
+    public int size() {
+        return carts.size();
+    }
+
+    public RuntimeException getLastFlushFailure() {
+        return lastFlushFailure;
+    }
+
+    /**
+     * Last state of the carts the database rejected. They left the store, their changes since they were last
+     * written are kept in the quarantine file of the journal directory until they are retried or discarded.
+     */
+    public List<BufferedCart> getQuarantinedCarts() {
+        return new ArrayList<>(quarantinedCarts.values());
+    }
+
+    /**
+     * Carts quarantined since the store was created.
+     */
+    public long getQuarantineCount() {
+        return quarantineCount.get();
+    }
+
+    /**
+     * Writes the quarantined state of the cart to the database, e.g. once the product it was rejected for exists
+     * again, and ends its quarantine. A cart changed in the store since it was quarantined was reloaded from the
+     * database without the quarantined changes, and the next flush writes that newer state over them.
+     *
+     * @return false when the cart isn't quarantined
+     * @throws RuntimeException the failure of the write, the cart stays quarantined then
+     */
+    public boolean retryQuarantined(long shoppingCartId) {
+        flushLock.lock();
+        try {
+            BufferedCart cart = quarantinedCarts.get(shoppingCartId);
+            if (cart == null) {
+                return false;
+            }
+            flusher.accept(List.of(cart));
+            quarantinedCarts.remove(shoppingCartId);
+            journal.writeQuarantine(quarantinedCarts.values());
+            return true;
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Gives up the quarantined changes of the cart, the database keeps the state it had before them.
+     *
+     * @return the given up state, or null when the cart isn't quarantined
+     */
+    public BufferedCart discardQuarantined(long shoppingCartId) {
+        flushLock.lock();
+        try {
+            BufferedCart cart = quarantinedCarts.remove(shoppingCartId);
+            if (cart != null) {
+                journal.writeQuarantine(quarantinedCarts.values());
+            }
+            return cart;
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Writes every changed cart to the database and deletes the journal segments that are no longer needed.
+     *
+     * @return number of written carts
+     */
+    public int flush() {
+        flushLock.lock();
+        try {
+            List<Path> flushedSegments;
+            List<BufferedCart> dirtyCarts = new ArrayList<>();
+            rotationLock.writeLock().lock();
+            try {
+                flushedSegments = journal.rotate();
+                for (CartState state : carts.values()) {
+                    synchronized (state) {
+                        if (state.dirty) {
+                            dirtyCarts.add(state.snapshot());
+                            state.dirty = false;
+                        }
+                    }
+                }
+            } finally {
+                rotationLock.writeLock().unlock();
+            }
+
+            int written = writeToDatabase(dirtyCarts);
+            journal.delete(flushedSegments);
+            return written;
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Writes the cart to the database now if it has unflushed changes, e.g. before it is read from there.
+     */
+    public void flush(long shoppingCartId) {
+        CartState state = carts.get(shoppingCartId);
+        if (state == null) {
+            return;
+        }
+        flushLock.lock();
+        try {
+            BufferedCart snapshot;
+            synchronized (state) {
+                if (!state.dirty) {
+                    return;
+                }
+                snapshot = state.snapshot();
+                state.dirty = false;
+            }
+            writeToDatabase(List.of(snapshot));
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Writes the cart to the database and takes it out of the store, so later changes go to the database directly.
+     * Called when the cart moves on from unpaid.
+     */
+    public void detach(long shoppingCartId) {
+        removeFromStore(shoppingCartId, true);
+    }
+
+    /**
+     * Takes the cart out of the store without writing it, for carts that are being deleted.
+     */
+    public void discard(long shoppingCartId) {
+        removeFromStore(shoppingCartId, false);
+    }
+
+    /**
+     * Reloads the carts found in the journal, applies the journaled lines on top and flushes them.
+     *
+     * @return number of recovered carts
+     */
+    public int recover() {
+        journal.replay().forEach((shoppingCartId, lines) -> {
+            CartState state = stateOf(shoppingCartId);
+            if (state == null) {
+                return;
+            }
+            synchronized (state) {
+                lines.values().forEach(line -> putLine(state, line));
+                state.dirty = true;
+            }
+        });
+        return flush();
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (scheduler != null) {
+                scheduler.shutdown();
+                try {
+                    scheduler.awaitTermination(1, TimeUnit.MINUTES);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                scheduler = null;
+            }
+        }
+        try {
+            flush();
+        } finally {
+            journal.close();
+        }
+    }
+
+    private BufferedCart changeLine(long shoppingCartId, long productId, UnaryOperator<BufferedCartLine> change) {
+        while (true) {
+            CartState state = stateOf(shoppingCartId);
+            if (state == null) {
+                return null;
+            }
+            rotationLock.readLock().lock();
+            try {
+                synchronized (state) {
+                    if (state.detached) {
+                        continue;
+                    }
+                    BufferedCartLine line = state.lines.get(productId);
+                    BufferedCartLine changedLine = change.apply(line);
+                    if (changedLine != null) {
+                        journal.appendLine(shoppingCartId, productId, changedLine.getQuantity(), changedLine.getUnitPrice());
+                        putLine(state, changedLine);
+                        state.dirty = true;
+                    }
+                    return state.snapshot();
+                }
+            } finally {
+                rotationLock.readLock().unlock();
+            }
+        }
+    }
+
+    private CartState stateOf(long shoppingCartId) {
+        CartState state = carts.get(shoppingCartId);
+        if (state != null) {
+            return state;
+        }
+        BufferedCart cart = loader.apply(shoppingCartId);
+        if (cart == null) {
+            return null;
+        }
+        return carts.computeIfAbsent(shoppingCartId, id -> new CartState(cart));
+    }
+
+    private void removeFromStore(long shoppingCartId, boolean write) {
+        CartState state = carts.get(shoppingCartId);
+        if (state == null) {
+            return;
+        }
+        flushLock.lock();
+        try {
+            BufferedCart snapshot;
+            boolean dirty;
+            synchronized (state) {
+                if (state.detached) {
+                    return;
+                }
+                state.detached = true;
+                carts.remove(shoppingCartId);
+                snapshot = state.snapshot();
+                dirty = state.dirty;
+            }
+            if (write && dirty) {
+                try {
+                    flusher.accept(List.of(snapshot));
+                } catch (RuntimeException e) {
+                    synchronized (state) {
+                        state.detached = false;
+                        carts.putIfAbsent(shoppingCartId, state);
+                    }
+                    throw e;
+                }
+            }
+            journal.appendClose(shoppingCartId);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Writes the carts in batches. The carts of a batch failing on a rejection are written one by one, the
+     * rejected ones are quarantined. Any other failure stops the write and the carts not written yet are dirty again.
+     *
+     * @return number of written carts
+     */
+    private int writeToDatabase(List<BufferedCart> dirtyCarts) {
+        int written = 0;
+        for (int from = 0; from < dirtyCarts.size(); from += flushBatchSize) {
+            List<BufferedCart> batch = dirtyCarts.subList(from, Math.min(dirtyCarts.size(), from + flushBatchSize));
+            try {
+                flusher.accept(batch);
+                written += batch.size();
+                continue;
+            } catch (RuntimeException e) {
+                if (!rejection.test(e)) {
+                    markDirty(dirtyCarts.subList(from, dirtyCarts.size()));
+                    throw e;
+                }
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                BufferedCart cart = batch.get(i);
+                try {
+                    flusher.accept(List.of(cart));
+                    written++;
+                } catch (RuntimeException e) {
+                    if (!rejection.test(e)) {
+                        markDirty(dirtyCarts.subList(from + i, dirtyCarts.size()));
+                        throw e;
+                    }
+                    quarantine(cart.getShoppingCartId(), e);
+                }
+            }
+        }
+        return written;
+    }
+
+    private void markDirty(List<BufferedCart> unwrittenCarts) {
+        unwrittenCarts.forEach(cart -> {
+            CartState state = carts.get(cart.getShoppingCartId());
+            if (state != null) {
+                synchronized (state) {
+                    state.dirty = true;
+                }
+            }
+        });
+    }
+
+    /**
+     * Takes the cart out of the store with its current state, changes made since the failed snapshot included.
+     * The state is in the quarantine file before the cart's journal records are closed, so a crash loses neither.
+     */
+    private void quarantine(long shoppingCartId, RuntimeException rejection) {
+        CartState state = carts.get(shoppingCartId);
+        if (state == null) {
+            return;
+        }
+        synchronized (state) {
+            state.detached = true;
+            carts.remove(shoppingCartId);
+            quarantinedCarts.put(shoppingCartId, state.snapshot());
+        }
+        journal.writeQuarantine(quarantinedCarts.values());
+        journal.appendClose(shoppingCartId);
+        quarantineCount.incrementAndGet();
+        lastFlushFailure = new IllegalStateException("shopping cart " + shoppingCartId + " was rejected by the database and quarantined", rejection);
+    }
+
+    private static void putLine(CartState state, BufferedCartLine line) {
+        if (line.getQuantity() == 0) {
+            state.lines.remove(line.getProductId());
+        } else {
+            state.lines.put(line.getProductId(), line);
+        }
+    }
+}
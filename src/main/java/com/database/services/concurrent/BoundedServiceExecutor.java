@@ -0,0 +1,120 @@
+package com.database.services.concurrent;
+
+import com.database.services.entityManager.EntityManagerFactoryProvider;
+
+import java.io.Closeable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Runs blocking service operations on their own thread each (a virtual thread where the JVM has them, otherwise
+ * one of at most {@code maxConcurrency} platform threads, see {@link ServiceExecutors#newBoundedExecutor(String, int)})
+ * and hands back a {@link CompletableFuture}. At most {@code maxConcurrency} operations run at once, the others
+ * wait for a permit or for a pool thread, so a burst of calls queues here rather than in the connection pool where
+ * waiting callers time out. Every operation opens its own EntityManager like any service call.
+ */
+public class BoundedServiceExecutor implements Closeable {
+    private final ExecutorService executorService;
+    private final Semaphore permits;
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final int maxConcurrency;
+
+    public BoundedServiceExecutor(String threadNamePrefix, int maxConcurrency) {
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("maxConcurrency should be higher than 0");
+        }
+        this.executorService = ServiceExecutors.newBoundedExecutor(threadNamePrefix, maxConcurrency);
+        this.permits = new Semaphore(maxConcurrency);
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    /**
+     * Executor allowing as many operations at once as the provider's pool has connections.
+     */
+    public static BoundedServiceExecutor forConnectionPool(EntityManagerFactoryProvider entityManagerFactoryProvider) {
+        return new BoundedServiceExecutor("service-async", entityManagerFactoryProvider.getMaximumPoolSize());
+    }
+
+    public <T> CompletableFuture<T> supply(Supplier<T> operation) {
+        return supply(operation, task -> task);
+    }
+
+    /**
+     * Like {@link #supply(Supplier)} with the task run inside the binding, e.g. one carrying state of the
+     * submitting thread such as {@code ReplicaRouter::bindToCaller}, which is applied on the submitting thread.
+     * The future is completed inside the binding too, so the stages it triggers on completion are bound as well.
+     */
+    public <T> CompletableFuture<T> supply(Supplier<T> operation, UnaryOperator<Supplier<Void>> binding) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Supplier<Void> task = binding.apply(() -> {
+            try {
+                result.complete(withPermit(operation));
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+            return null;
+        });
+        waiting.incrementAndGet();
+        try {
+            executorService.execute(task::get);
+        } catch (RejectedExecutionException e) {
+            waiting.decrementAndGet();
+            throw e;
+        }
+        return result;
+    }
+
+    public CompletableFuture<Void> run(Runnable operation) {
+        return supply(() -> {
+            operation.run();
+            return null;
+        });
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * Operations running right now.
+     */
+    public int getRunning() {
+        return maxConcurrency - permits.availablePermits();
+    }
+
+    /**
+     * Operations submitted that haven't started yet.
+     */
+    public int getWaiting() {
+        return waiting.get();
+    }
+
+    private <T> T withPermit(Supplier<T> operation) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for a permit", e);
+        } finally {
+            waiting.decrementAndGet();
+        }
+        try {
+            return operation.get();
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Stops accepting operations, the ones already submitted still complete.
+     */
+    @Override
+    public void close() {
+        executorService.shutdown();
+    }
+}
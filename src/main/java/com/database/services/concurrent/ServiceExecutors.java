@@ -0,0 +1,52 @@
+package com.database.services.concurrent;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public final class ServiceExecutors {
+
+    private ServiceExecutors() {
+    }
+
+    /**
+     * Executor starting a new virtual thread for every task when the JVM has them (Java 21+). The project still
+     * compiles for older releases, so on those it falls back to a cached pool of daemon platform threads.
+     */
+    public static ExecutorService newPerTaskExecutor(String threadNamePrefix) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(daemonThreads(threadNamePrefix));
+        }
+    }
+
+    /**
+     * Like {@link #newPerTaskExecutor(String)} for tasks of which at most {@code maxThreads} run at once anyway.
+     * Without virtual threads it falls back to a pool of at most that many daemon platform threads, idle ones
+     * stop after a minute, so a burst of tasks queues instead of starting a platform thread each.
+     */
+    public static ExecutorService newBoundedExecutor(String threadNamePrefix, int maxThreads) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(maxThreads, maxThreads, 1, TimeUnit.MINUTES,
+                    new LinkedBlockingQueue<>(), daemonThreads(threadNamePrefix));
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String threadNamePrefix) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, threadNamePrefix + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,144 @@
+package com.database.services.concurrent;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Fixed set of locks keyed by a long id, e.g. a product id: every id maps to one of the stripes, so work on the
+ * same id is serialized in this JVM while work on ids of different stripes runs in parallel. Two ids may share
+ * a stripe, more stripes make that rarer at the price of memory. Several ids are always locked in ascending
+ * stripe order, so callers locking overlapping sets can't deadlock.
+ * <p>
+ * How long callers waited for a stripe is recorded in nanoseconds with three significant digits.
+ */
+public class StripedLocks {
+    public static final int DEFAULT_STRIPES = 256;
+
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    private final ReentrantLock[] locks;
+    private final int mask;
+
+    private final LongAdder acquisitions = new LongAdder();
+    private final LongAdder contendedAcquisitions = new LongAdder();
+    private final Histogram lockWait = new ConcurrentHistogram(3);
+
+    public StripedLocks() {
+        this(DEFAULT_STRIPES);
+    }
+
+    /**
+     * @param stripes rounded up to a power of two
+     */
+    public StripedLocks(int stripes) {
+        if (stripes <= 0 || stripes > 1 << 30) {
+            throw new IllegalArgumentException("stripes should be between 1 and 2^30");
+        }
+        int stripeCount = Integer.highestOneBit(stripes) == stripes ? stripes : Integer.highestOneBit(stripes) << 1;
+        locks = new ReentrantLock[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        mask = stripeCount - 1;
+    }
+
+    public <T> T withLock(long id, Supplier<T> action) {
+        ReentrantLock lock = locks[stripeOf(id)];
+        acquire(lock);
+        try {
+            return action.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void runWithLock(long id, Runnable action) {
+        withLock(id, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    /**
+     * Runs the action holding the stripes of all the ids.
+     */
+    public <T> T withLocks(Collection<Long> ids, Supplier<T> action) {
+        int[] stripes = ids.stream().mapToInt(this::stripeOf).sorted().distinct().toArray();
+        int locked = 0;
+        try {
+            for (int stripe : stripes) {
+                acquire(locks[stripe]);
+                locked++;
+            }
+            return action.get();
+        } finally {
+            for (int i = locked - 1; i >= 0; i--) {
+                locks[stripes[i]].unlock();
+            }
+        }
+    }
+
+    public int getStripeCount() {
+        return locks.length;
+    }
+
+    public long getAcquisitions() {
+        return acquisitions.sum();
+    }
+
+    /**
+     * Acquisitions that found the stripe held by another thread and had to wait.
+     */
+    public long getContendedAcquisitions() {
+        return contendedAcquisitions.sum();
+    }
+
+    public double getLockWaitP50Millis() {
+        return lockWait.getValueAtPercentile(50) / NANOS_PER_MILLI;
+    }
+
+    public double getLockWaitP99Millis() {
+        return lockWait.getValueAtPercentile(99) / NANOS_PER_MILLI;
+    }
+
+    public double getLockWaitMaxMillis() {
+        return lockWait.getMaxValue() / NANOS_PER_MILLI;
+    }
+
+    /**
+     * Threads waiting for a stripe right now.
+     */
+    public int getQueuedThreads() {
+        return Arrays.stream(locks).mapToInt(ReentrantLock::getQueueLength).sum();
+    }
+
+    int stripeOf(long id) {
+        // spreads ids that differ only in their high bits, sequential ids land on consecutive stripes
+        long hash = id ^ (id >>> 32);
+        return (int) (hash ^ (hash >>> 16)) & mask;
+    }
+
+    private void acquire(ReentrantLock lock) {
+        acquisitions.increment();
+        if (lock.tryLock()) {
+            lockWait.recordValue(0);
+            return;
+        }
+        contendedAcquisitions.increment();
+        long start = System.nanoTime();
+        try {
+            lock.lockInterruptibly();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for a lock", e);
+        } finally {
+            lockWait.recordValue(System.nanoTime() - start);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.database.services.dto;
+
+import java.util.Collections;
+import java.util.List;
+
+public class CatalogPage {
+    private final List<ProductSummary> items;
+    private final boolean hasNext;
+
+    public CatalogPage(List<ProductSummary> items, boolean hasNext) {
+        this.items = Collections.unmodifiableList(items);
+        this.hasNext = hasNext;
+    }
+
+    public List<ProductSummary> getItems() {
+        return items;
+    }
+
+    public boolean hasNext() {
+        return hasNext;
+    }
+
+    /**
+     * Item to pass to {@link CatalogQuery#setAfter(ProductSummary)} to read the next page.
+     */
+    public ProductSummary getLastItem() {
+        return items.isEmpty() ? null : items.get(items.size() - 1);
+    }
+}
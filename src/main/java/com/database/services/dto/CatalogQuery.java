@@ -0,0 +1,87 @@
+package com.database.services.dto;
+
+import com.database.models.enums.ProductType;
+
+/**
+ * Filter, sort order and position of one catalog page. To read the next page pass the last item of the
+ * current one to {@link #setAfter(ProductSummary)}; pages are located by that item, not by an offset.
+ */
+public class CatalogQuery {
+    public enum Sort {
+        PRICE_ASC,
+        PRICE_DESC,
+        NAME_ASC
+    }
+
+    private ProductType productType;
+    private Float minPrice;
+    private Float maxPrice;
+    private boolean inStockOnly;
+    private Sort sort = Sort.PRICE_ASC;
+    private int pageSize = 20;
+    private ProductSummary after;
+
+    public CatalogQuery() {
+    }
+
+    public CatalogQuery(Sort sort, int pageSize) {
+        this.sort = sort;
+        this.pageSize = pageSize;
+    }
+
+    public ProductType getProductType() {
+        return productType;
+    }
+
+    public void setProductType(ProductType productType) {
+        this.productType = productType;
+    }
+
+    public Float getMinPrice() {
+        return minPrice;
+    }
+
+    public void setMinPrice(Float minPrice) {
+        this.minPrice = minPrice;
+    }
+
+    public Float getMaxPrice() {
+        return maxPrice;
+    }
+
+    public void setMaxPrice(Float maxPrice) {
+        this.maxPrice = maxPrice;
+    }
+
+    public boolean isInStockOnly() {
+        return inStockOnly;
+    }
+
+    public void setInStockOnly(boolean inStockOnly) {
+        this.inStockOnly = inStockOnly;
+    }
+
+    public Sort getSort() {
+        return sort;
+    }
+
+    public void setSort(Sort sort) {
+        this.sort = sort;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public void setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    public ProductSummary getAfter() {
+        return after;
+    }
+
+    public void setAfter(ProductSummary after) {
+        this.after = after;
+    }
+}
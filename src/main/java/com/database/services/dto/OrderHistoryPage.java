@@ -0,0 +1,29 @@
+package com.database.services.dto;
+
+import java.util.Collections;
+import java.util.List;
+
+public class OrderHistoryPage {
+    private final List<OrderSummary> items;
+    private final boolean hasNext;
+
+    public OrderHistoryPage(List<OrderSummary> items, boolean hasNext) {
+        this.items = Collections.unmodifiableList(items);
+        this.hasNext = hasNext;
+    }
+
+    public List<OrderSummary> getItems() {
+        return items;
+    }
+
+    public boolean hasNext() {
+        return hasNext;
+    }
+
+    /**
+     * Item to pass as {@code after} to read the next page.
+     */
+    public OrderSummary getLastItem() {
+        return items.isEmpty() ? null : items.get(items.size() - 1);
+    }
+}
@@ -0,0 +1,45 @@
+package com.database.services.dto;
+
+import com.database.models.enums.Status;
+
+import java.util.Date;
+
+/**
+ * Read-only projection of a shopping cart for the order history, selected straight from SQL without loading the
+ * cart, its lines or its customer. The item count is the sum of the line quantities.
+ */
+public final class OrderSummary {
+    private final Long id;
+    private final Date dateOfPurchase;
+    private final Status status;
+    private final float totalPrice;
+    private final long itemCount;
+
+    public OrderSummary(Long id, Date dateOfPurchase, Status status, float totalPrice, Number itemCount) {
+        this.id = id;
+        this.dateOfPurchase = new Date(dateOfPurchase.getTime());
+        this.status = status;
+        this.totalPrice = totalPrice;
+        this.itemCount = itemCount == null ? 0 : itemCount.longValue();
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Date getDateOfPurchase() {
+        return new Date(dateOfPurchase.getTime());
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public float getTotalPrice() {
+        return totalPrice;
+    }
+
+    public long getItemCount() {
+        return itemCount;
+    }
+}
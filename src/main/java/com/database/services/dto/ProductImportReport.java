@@ -0,0 +1,64 @@
+package com.database.services.dto;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class ProductImportReport {
+    private static final int MAX_STORED_REJECTIONS = 1000;
+
+    private long importedRows;
+    private long importedProperties;
+    private long rejectedRows;
+    private long elapsedMillis;
+    private final List<String> rejections = new ArrayList<>();
+
+    public void addImportedRows(long rows, long properties) {
+        importedRows += rows;
+        importedProperties += properties;
+    }
+
+    public void addRejectedRow(long lineNumber, String reason) {
+        rejectedRows++;
+        if (rejections.size() < MAX_STORED_REJECTIONS) {
+            rejections.add("line " + lineNumber + ": " + reason);
+        }
+    }
+
+    public long getImportedRows() {
+        return importedRows;
+    }
+
+    public long getImportedProperties() {
+        return importedProperties;
+    }
+
+    public long getRejectedRows() {
+        return rejectedRows;
+    }
+
+    /**
+     * Reasons of the first rejected rows, at most {@value #MAX_STORED_REJECTIONS} of them.
+     */
+    public List<String> getRejections() {
+        return Collections.unmodifiableList(rejections);
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public void setElapsedMillis(long elapsedMillis) {
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public double getRowsPerSecond() {
+        return elapsedMillis == 0 ? importedRows : importedRows * 1000.0 / elapsedMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "imported " + importedRows + " products with " + importedProperties + " properties, rejected " + rejectedRows
+                + " rows in " + elapsedMillis + " ms (" + Math.round(getRowsPerSecond()) + " rows/s)";
+    }
+}
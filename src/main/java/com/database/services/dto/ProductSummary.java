@@ -0,0 +1,42 @@
+package com.database.services.dto;
+
+import com.database.models.enums.ProductType;
+
+/**
+ * Read-only projection of a product for catalog listings, selected straight from SQL without loading the entity.
+ */
+public class ProductSummary {
+    private final Long id;
+    private final String name;
+    private final float priceAfterDiscount;
+    private final int quantity;
+    private final ProductType productType;
+
+    public ProductSummary(Long id, String name, float priceAfterDiscount, int quantity, ProductType productType) {
+        this.id = id;
+        this.name = name;
+        this.priceAfterDiscount = priceAfterDiscount;
+        this.quantity = quantity;
+        this.productType = productType;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public float getPriceAfterDiscount() {
+        return priceAfterDiscount;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public ProductType getProductType() {
+        return productType;
+    }
+}
@@ -0,0 +1,82 @@
+package com.database.services.entityManager;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Owns one {@link EntityManagerFactory} (and therefore one connection pool) per persistence unit.
+ * The factory is created lazily on first use and is shared by every service bound to this provider.
+ * Settings starting with {@code hibernate.} or {@code javax.persistence.} given as system properties
+ * override the ones from persistence.xml, e.g. {@code -Dhibernate.hikari.maximumPoolSize=50}.
+ */
+public class EntityManagerFactoryProvider {
+    public static final String PERSISTENCE_UNIT_NAME = "shop-database";
+
+    private static final String CACHE_CONFIGURATION = "ehcache.xml";
+    private static final String CACHE_URI_PROPERTY = "hibernate.javax.cache.uri";
+    private static final String MAXIMUM_POOL_SIZE_PROPERTY = "hibernate.hikari.maximumPoolSize";
+    private static final int DEFAULT_MAXIMUM_POOL_SIZE = 10;
+
+    private static final EntityManagerFactoryProvider DEFAULT = new EntityManagerFactoryProvider(PERSISTENCE_UNIT_NAME, Collections.emptyMap());
+
+    private final String persistenceUnitName;
+    private final Map<String, Object> properties;
+    private volatile EntityManagerFactory entityManagerFactory;
+
+    public EntityManagerFactoryProvider(String persistenceUnitName, Map<String, ?> properties) {
+        this.persistenceUnitName = persistenceUnitName;
+        this.properties = new HashMap<>(properties);
+    }
+
+    public static EntityManagerFactoryProvider getDefault() {
+        return DEFAULT;
+    }
+
+    public EntityManagerFactory getEntityManagerFactory() {
+        EntityManagerFactory factory = entityManagerFactory;
+        if (factory == null) {
+            synchronized (this) {
+                factory = entityManagerFactory;
+                if (factory == null) {
+                    factory = Persistence.createEntityManagerFactory(persistenceUnitName, resolveProperties());
+                    entityManagerFactory = factory;
+                }
+            }
+        }
+        return factory;
+    }
+
+    /**
+     * Size the connection pool grows to, as configured for the factory, or HikariCP's default.
+     */
+    public int getMaximumPoolSize() {
+        Object maximumPoolSize = getEntityManagerFactory().getProperties().get(MAXIMUM_POOL_SIZE_PROPERTY);
+        return maximumPoolSize == null ? DEFAULT_MAXIMUM_POOL_SIZE : Integer.parseInt(maximumPoolSize.toString().trim());
+    }
+
+    public synchronized void close() {
+        if (entityManagerFactory != null) {
+            entityManagerFactory.close();
+            entityManagerFactory = null;
+        }
+    }
+
+    private Map<String, Object> resolveProperties() {
+        Map<String, Object> resolved = new HashMap<>(properties);
+        URL cacheConfiguration = getClass().getClassLoader().getResource(CACHE_CONFIGURATION);
+        if (cacheConfiguration != null) {
+            resolved.putIfAbsent(CACHE_URI_PROPERTY, cacheConfiguration.toExternalForm());
+        }
+        System.getProperties().forEach((key, value) -> {
+            String name = key.toString();
+            if (name.startsWith("hibernate.") || name.startsWith("javax.persistence.")) {
+                resolved.put(name, value);
+            }
+        });
+        return resolved;
+    }
+}
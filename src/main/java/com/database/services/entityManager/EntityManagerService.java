@@ -1,15 +1,154 @@
 package com.database.services.entityManager;
 
+import com.database.services.metrics.ServiceMetrics;
+import com.database.services.metrics.StatementCounter;
+import org.hibernate.Session;
+import org.hibernate.jdbc.ReturningWork;
+import org.hibernate.jdbc.Work;
+
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
-import javax.persistence.Persistence;
+import javax.persistence.EntityTransaction;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
+/**
+ * Base class of the services. Every operation gets its own short-lived {@link EntityManager}
+ * from the shared factory, so a service instance can be used from many threads at once.
+ * Public operations are wrapped in {@link #metered} / {@link #runMetered}, which record them
+ * in the {@link ServiceMetrics} under the service's class name. Lookups may be sent to read replicas, see
+ * {@link #setReplicaRouter(ReplicaRouter)}.
+ */
 public class EntityManagerService {
-    private EntityManagerFactory entityManagerFactory = Persistence.createEntityManagerFactory("shop-database");
-    protected EntityManager entityManager = entityManagerFactory.createEntityManager();
+    private static final StackWalker STACK_WALKER = StackWalker.getInstance();
+    private static final Map<Class<?>, String> METHOD_NAMES = new ConcurrentHashMap<>();
+
+    private final EntityManagerFactoryProvider entityManagerFactoryProvider;
+    private final ServiceMetrics serviceMetrics = ServiceMetrics.getDefault();
+    private final String serviceName = getClass().getSimpleName();
+    private volatile ReplicaRouter replicaRouter;
+
+    public EntityManagerService() {
+        this(EntityManagerFactoryProvider.getDefault());
+    }
+
+    public EntityManagerService(EntityManagerFactoryProvider entityManagerFactoryProvider) {
+        this.entityManagerFactoryProvider = entityManagerFactoryProvider;
+    }
+
+    protected EntityManagerFactory getEntityManagerFactory() {
+        return entityManagerFactoryProvider.getEntityManagerFactory();
+    }
+
+    protected <T> T withEntityManager(Function<EntityManager, T> action) {
+        EntityManager entityManager = getEntityManagerFactory().createEntityManager();
+        try {
+            return action.apply(entityManager);
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    /**
+     * Like {@link #withEntityManager(Function)} for an action that only reads, which may run on a read replica.
+     */
+    protected <T> T withReadOnlyEntityManager(Function<EntityManager, T> action) {
+        ReplicaRouter router = replicaRouter;
+        if (router == null) {
+            return withEntityManager(action);
+        }
+        return router.read(action, () -> withEntityManager(action));
+    }
+
+    protected <T> T inTransaction(Function<EntityManager, T> action) {
+        EntityManager entityManager = getEntityManagerFactory().createEntityManager();
+        EntityTransaction tx = entityManager.getTransaction();
+        long start = System.nanoTime();
+        try {
+            tx.begin();
+            T result = action.apply(entityManager);
+            tx.commit();
+            ReplicaRouter router = replicaRouter;
+            if (router != null) {
+                router.recordWrite();
+            }
+            return result;
+        } catch (RuntimeException e) {
+            if (tx.isActive()) {
+                tx.rollback();
+            }
+            throw e;
+        } finally {
+            ServiceMetrics.recordTransaction(System.nanoTime() - start);
+            entityManager.close();
+        }
+    }
+
+    protected void runInTransaction(Consumer<EntityManager> action) {
+        inTransaction(entityManager -> {
+            action.accept(entityManager);
+            return null;
+        });
+    }
+
+    /**
+     * Runs plain JDBC work on the connection of the EntityManager, counting its statements for the metrics
+     * like the ones Hibernate prepares.
+     */
+    protected void doWork(EntityManager entityManager, Work work) {
+        entityManager.unwrap(Session.class).doWork(connection -> work.execute(StatementCounter.counting(connection)));
+    }
+
+    protected <T> T doReturningWork(EntityManager entityManager, ReturningWork<T> work) {
+        return entityManager.unwrap(Session.class).doReturningWork(connection -> work.execute(StatementCounter.counting(connection)));
+    }
+
+    /**
+     * Records the operation under the name of the service method calling this one.
+     */
+    protected <T> T metered(Supplier<T> operation) {
+        return serviceMetrics.record(serviceName, methodNameOf(operation), operation);
+    }
+
+    protected void runMetered(Runnable operation) {
+        serviceMetrics.record(serviceName, methodNameOf(operation), () -> {
+            operation.run();
+            return null;
+        });
+    }
+
+    /**
+     * Every lambda expression has its own class, so the stack is only walked on the first call from a method.
+     */
+    private static String methodNameOf(Object operation) {
+        String methodName = METHOD_NAMES.get(operation.getClass());
+        if (methodName == null) {
+            methodName = STACK_WALKER.walk(frames -> frames.skip(2).findFirst()).orElseThrow().getMethodName();
+            METHOD_NAMES.put(operation.getClass(), methodName);
+        }
+        return methodName;
+    }
+
+    public ReplicaRouter getReplicaRouter() {
+        return replicaRouter;
+    }
+
+    /**
+     * Sends the lookups of this service to the router's replicas. The router isn't closed with the session,
+     * as other services may share it.
+     */
+    public void setReplicaRouter(ReplicaRouter replicaRouter) {
+        this.replicaRouter = replicaRouter;
+    }
 
-    public void closeSession(){
-        entityManager.close();
-        entityManagerFactory.close();
+    /**
+     * Releases what the service itself holds. The provider isn't closed, as other services share it: the
+     * default one is shut down with {@code EntityManagerFactoryProvider.getDefault().close()} and any other
+     * by whoever created it.
+     */
+    public void closeSession() {
     }
 }
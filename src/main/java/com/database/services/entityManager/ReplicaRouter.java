@@ -0,0 +1,282 @@
+package com.database.services.entityManager;
+
+import org.hibernate.Session;
+
+import javax.persistence.EntityManager;
+import javax.persistence.NoResultException;
+import javax.persistence.NonUniqueResultException;
+import javax.persistence.PersistenceException;
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Sends the read-only operations of the services it is set on (see
+ * {@link EntityManagerService#setReplicaRouter(ReplicaRouter)}) to read replicas of the primary database. Each
+ * replica is an {@link EntityManagerFactoryProvider} with its own connection pool. A read goes to the primary
+ * instead when
+ * <ul>
+ *     <li>the caller committed a write less than {@code readYourWritesMillis} ago, so it sees its own
+ *     writes whatever the replication lag, or runs inside {@link #onPrimary(Supplier)};</li>
+ *     <li>no replica is available: a replica that failed a read is skipped for {@code retryAfterMillis} and the
+ *     failed read is repeated on the primary.</li>
+ * </ul>
+ * The caller is the calling thread, unless the thread runs an operation on behalf of another one: the
+ * {@link Caller} of a thread is carried to the thread doing its work with {@link #bindToCaller(Supplier)}, as the
+ * async services do. A write made on a thread that isn't bound to the caller, e.g. a write-behind flush, only
+ * counts for the caller if it is recorded with {@link #recordWrite(Caller)}.
+ * One router can be shared by several services, a write through any of them counts for reads through all.
+ */
+public class ReplicaRouter implements Closeable {
+    public static final long DEFAULT_READ_YOUR_WRITES_MILLIS = 1000;
+    public static final long DEFAULT_RETRY_AFTER_MILLIS = 5000;
+
+    private static final AtomicInteger REPLICA_POOLS = new AtomicInteger();
+
+    private final List<Replica> replicas = new ArrayList<>();
+    private final Selection selection;
+    private final long readYourWritesNanos;
+    private final long retryAfterNanos;
+
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    private final ThreadLocal<Caller> callers = ThreadLocal.withInitial(Caller::new);
+
+    private final LongAdder replicaReads = new LongAdder();
+    private final LongAdder primaryReads = new LongAdder();
+    private final LongAdder failovers = new LongAdder();
+
+    public enum Selection {
+        /**
+         * Replicas take turns.
+         */
+        ROUND_ROBIN,
+        /**
+         * The replica with the fewest reads running from this router, turns break ties.
+         */
+        LEAST_LOADED
+    }
+
+    private static class Replica {
+        private final EntityManagerFactoryProvider provider;
+        private final AtomicInteger running = new AtomicInteger();
+        private volatile long unavailableUntilNanos;
+        private volatile boolean unavailable;
+
+        private Replica(EntityManagerFactoryProvider provider) {
+            this.provider = provider;
+        }
+    }
+
+    /**
+     * Whose writes a read has to see: by default each thread is a caller of its own.
+     */
+    public static final class Caller {
+        private volatile boolean wrote;
+        private volatile long lastWriteNanos;
+        private final AtomicInteger primaryOnlyDepth = new AtomicInteger();
+
+        private Caller() {
+        }
+    }
+
+    public ReplicaRouter(List<EntityManagerFactoryProvider> replicas, Selection selection) {
+        this(replicas, selection, DEFAULT_READ_YOUR_WRITES_MILLIS, DEFAULT_RETRY_AFTER_MILLIS);
+    }
+
+    public ReplicaRouter(List<EntityManagerFactoryProvider> replicas, Selection selection, long readYourWritesMillis, long retryAfterMillis) {
+        if (replicas == null || replicas.isEmpty() || selection == null) {
+            throw new IllegalArgumentException("replicas shouldn't be null or empty and selection shouldn't be null");
+        }
+        if (readYourWritesMillis < 0 || retryAfterMillis < 0) {
+            throw new IllegalArgumentException("readYourWritesMillis and retryAfterMillis shouldn't be lower than 0");
+        }
+        replicas.forEach(provider -> this.replicas.add(new Replica(provider)));
+        this.selection = selection;
+        this.readYourWritesNanos = TimeUnit.MILLISECONDS.toNanos(readYourWritesMillis);
+        this.retryAfterNanos = TimeUnit.MILLISECONDS.toNanos(retryAfterMillis);
+    }
+
+    /**
+     * Provider of a replica of the shop database: same persistence unit, no schema generation and no
+     * second-level cache, which would be shared with the primary's and serve the primary's state anyway.
+     */
+    public static EntityManagerFactoryProvider replicaProvider(String jdbcUrl, String user, String password) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("javax.persistence.jdbc.url", jdbcUrl);
+        properties.put("javax.persistence.jdbc.user", user);
+        properties.put("javax.persistence.jdbc.password", password);
+        return replicaProvider(properties);
+    }
+
+    /**
+     * Like {@link #replicaProvider(String, String, String)}, the given properties win over the replica defaults.
+     */
+    public static EntityManagerFactoryProvider replicaProvider(Map<String, ?> properties) {
+        Map<String, Object> replicaProperties = new HashMap<>();
+        replicaProperties.put("javax.persistence.schema-generation.database.action", "none");
+        replicaProperties.put("javax.persistence.sharedCache.mode", "NONE");
+        replicaProperties.put("hibernate.cache.use_second_level_cache", "false");
+        replicaProperties.put("hibernate.cache.use_query_cache", "false");
+        replicaProperties.put("hibernate.hikari.poolName", "shop-database-replica-" + REPLICA_POOLS.incrementAndGet());
+        replicaProperties.putAll(properties);
+        return new EntityManagerFactoryProvider(EntityManagerFactoryProvider.PERSISTENCE_UNIT_NAME, replicaProperties);
+    }
+
+    /**
+     * Runs the read on a replica with a read-only EntityManager, or on the primary through {@code onPrimary}.
+     */
+    public <T> T read(Function<EntityManager, T> action, Supplier<T> onPrimary) {
+        if (isPrimaryRequired()) {
+            primaryReads.increment();
+            return onPrimary.get();
+        }
+        Replica replica = selectReplica();
+        if (replica == null) {
+            primaryReads.increment();
+            return onPrimary.get();
+        }
+
+        replica.running.incrementAndGet();
+        try {
+            T result = readFrom(replica, action);
+            replicaReads.increment();
+            return result;
+        } catch (NoResultException | NonUniqueResultException e) {
+            throw e;
+        } catch (PersistenceException | IllegalStateException e) {
+            replica.unavailableUntilNanos = System.nanoTime() + retryAfterNanos;
+            replica.unavailable = true;
+            failovers.increment();
+            primaryReads.increment();
+            return onPrimary.get();
+        } finally {
+            replica.running.decrementAndGet();
+        }
+    }
+
+    /**
+     * Called by the services after the calling thread committed a transaction on the primary.
+     */
+    public void recordWrite() {
+        recordWrite(callers.get());
+    }
+
+    /**
+     * Records a write committed on the caller's behalf by a thread that isn't bound to it.
+     */
+    public void recordWrite(Caller caller) {
+        caller.lastWriteNanos = System.nanoTime();
+        caller.wrote = true;
+    }
+
+    /**
+     * The caller the calling thread reads and writes for.
+     */
+    public Caller currentCaller() {
+        return callers.get();
+    }
+
+    /**
+     * Wraps the operation so it reads and writes for the current caller on whichever thread it runs: its
+     * writes count for the caller's later reads and it sees the caller's earlier writes.
+     */
+    public <T> Supplier<T> bindToCaller(Supplier<T> operation) {
+        Caller caller = callers.get();
+        return () -> {
+            Caller previous = callers.get();
+            callers.set(caller);
+            try {
+                return operation.get();
+            } finally {
+                callers.set(previous);
+            }
+        };
+    }
+
+    /**
+     * Runs the operation with every read of the caller on the primary, e.g. a read that has to see
+     * a write made by another thread or process.
+     */
+    public <T> T onPrimary(Supplier<T> operation) {
+        Caller caller = callers.get();
+        caller.primaryOnlyDepth.incrementAndGet();
+        try {
+            return operation.get();
+        } finally {
+            caller.primaryOnlyDepth.decrementAndGet();
+        }
+    }
+
+    public boolean isPrimaryRequired() {
+        Caller caller = callers.get();
+        return caller.primaryOnlyDepth.get() > 0 || (caller.wrote && System.nanoTime() - caller.lastWriteNanos < readYourWritesNanos);
+    }
+
+    public long getReplicaReads() {
+        return replicaReads.sum();
+    }
+
+    public long getPrimaryReads() {
+        return primaryReads.sum();
+    }
+
+    /**
+     * Reads that failed on a replica and were repeated on the primary.
+     */
+    public long getFailovers() {
+        return failovers.sum();
+    }
+
+    public int getAvailableReplicas() {
+        long now = System.nanoTime();
+        return (int) replicas.stream().filter(replica -> isAvailable(replica, now)).count();
+    }
+
+    /**
+     * Closes the connection pools of the replicas.
+     */
+    @Override
+    public void close() {
+        replicas.forEach(replica -> replica.provider.close());
+    }
+
+    private <T> T readFrom(Replica replica, Function<EntityManager, T> action) {
+        EntityManager entityManager = replica.provider.getEntityManagerFactory().createEntityManager();
+        try {
+            entityManager.unwrap(Session.class).setDefaultReadOnly(true);
+            return action.apply(entityManager);
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    private Replica selectReplica() {
+        long now = System.nanoTime();
+        int start = Math.floorMod(nextReplica.getAndIncrement(), replicas.size());
+        Replica selected = null;
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get((start + i) % replicas.size());
+            if (!isAvailable(replica, now)) {
+                continue;
+            }
+            if (selection == Selection.ROUND_ROBIN) {
+                return replica;
+            }
+            if (selected == null || replica.running.get() < selected.running.get()) {
+                selected = replica;
+            }
+        }
+        return selected;
+    }
+
+    private static boolean isAvailable(Replica replica, long now) {
+        return !replica.unavailable || now - replica.unavailableUntilNanos >= 0;
+    }
+}
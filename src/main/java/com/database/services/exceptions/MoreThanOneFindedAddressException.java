@@ -1,7 +0,0 @@
-package com.database.services.exceptions;
-
-public class MoreThanOneFindedAddressException extends RuntimeException {
-    public MoreThanOneFindedAddressException(String errorMessage) {
-        super(errorMessage);
-    }
-}
\ No newline at end of file
@@ -0,0 +1,21 @@
+package com.database.services.fulfilment;
+
+import com.database.models.enums.Status;
+
+/**
+ * Database access of the {@link FulfilmentPipeline}.
+ */
+public interface CartStatusRepository {
+
+    /**
+     * Ids of at most {@code limit} carts in the status with an id higher than {@code afterId}, in ascending order.
+     */
+    long[] findCartIds(Status status, long afterId, int limit);
+
+    /**
+     * Moves the carts that are still in {@code from} to {@code to} in one transaction.
+     *
+     * @return ids of the moved carts
+     */
+    long[] transition(long[] shoppingCartIds, Status from, Status to);
+}
@@ -0,0 +1,237 @@
+package com.database.services.fulfilment;
+
+import com.database.models.enums.Status;
+import com.database.services.concurrent.ServiceExecutors;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.LongConsumer;
+
+/**
+ * Moves carts through consecutive {@link Status} stages. The first stage is fed with batches of carts found
+ * in its status, every stage runs its work for the carts of a batch concurrently, moves the carts whose work
+ * succeeded to its target status with one bulk transition and hands them on to the next stage. Stages are
+ * connected by bounded queues, so a slow stage holds back the ones in front of it instead of piling up batches.
+ * Carts whose work failed stay in their status and are picked up again by the next run. A stage submits at most
+ * its concurrency of carts at a time, so a run needs no more threads than a coordinator and that many workers per
+ * stage, which is all the pool has where the JVM has no virtual threads.
+ */
+public class FulfilmentPipeline {
+    public static final int DEFAULT_BATCH_SIZE = 500;
+    public static final int DEFAULT_QUEUE_CAPACITY = 4;
+    public static final int DEFAULT_STAGE_CONCURRENCY = 64;
+
+    private static final long[] END_OF_RUN = new long[0];
+
+    private final CartStatusRepository repository;
+    private final List<Stage> stages = new ArrayList<>();
+
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+    private int stageConcurrency = DEFAULT_STAGE_CONCURRENCY;
+    private volatile List<FulfilmentStageMetrics> stageMetrics = Collections.emptyList();
+
+    private static class Stage {
+        private final Status from;
+        private final Status to;
+        private final LongConsumer work;
+
+        private Stage(Status from, Status to, LongConsumer work) {
+            this.from = from;
+            this.to = to;
+            this.work = work;
+        }
+    }
+
+    public FulfilmentPipeline(CartStatusRepository repository) {
+        this.repository = repository;
+    }
+
+    /**
+     * Appends a stage running the work for every cart in {@code from} and moving it to {@code to}. Every stage
+     * has to start from the status the previous one moves carts to.
+     */
+    public FulfilmentPipeline addStage(Status from, Status to, LongConsumer work) {
+        if (from == null || to == null || work == null) {
+            throw new IllegalArgumentException("from, to and work shouldn't be null");
+        }
+        if (!stages.isEmpty() && stages.get(stages.size() - 1).to != from) {
+            throw new IllegalArgumentException("stage should start from " + stages.get(stages.size() - 1).to + " but starts from " + from);
+        }
+        stages.add(new Stage(from, to, work));
+        return this;
+    }
+
+    public FulfilmentPipeline setBatchSize(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize should be higher than 0");
+        }
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * Number of batches that can wait in front of a stage.
+     */
+    public FulfilmentPipeline setQueueCapacity(int queueCapacity) {
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("queueCapacity should be higher than 0");
+        }
+        this.queueCapacity = queueCapacity;
+        return this;
+    }
+
+    /**
+     * Number of carts a stage works on at the same time.
+     */
+    public FulfilmentPipeline setStageConcurrency(int stageConcurrency) {
+        if (stageConcurrency <= 0) {
+            throw new IllegalArgumentException("stageConcurrency should be higher than 0");
+        }
+        this.stageConcurrency = stageConcurrency;
+        return this;
+    }
+
+    /**
+     * Metrics of the current run, or of the last one when nothing is running.
+     */
+    public List<FulfilmentStageMetrics> getStageMetrics() {
+        return stageMetrics;
+    }
+
+    /**
+     * Processes every cart that is in the status of the first stage when its batch is read and returns once
+     * all of them went through every stage or failed.
+     */
+    public synchronized List<FulfilmentStageMetrics> drain() {
+        if (stages.isEmpty()) {
+            throw new IllegalStateException("pipeline has no stages");
+        }
+
+        List<FulfilmentStageMetrics> metrics = new ArrayList<>();
+        List<BlockingQueue<long[]>> queues = new ArrayList<>();
+        for (Stage stage : stages) {
+            metrics.add(new FulfilmentStageMetrics(stage.from, stage.to));
+            queues.add(new ArrayBlockingQueue<>(queueCapacity));
+        }
+        stageMetrics = Collections.unmodifiableList(metrics);
+
+        ExecutorService executorService = ServiceExecutors.newBoundedExecutor("fulfilment", stages.size() * (1 + stageConcurrency));
+        try {
+            List<Future<?>> coordinators = new ArrayList<>();
+            for (int i = 0; i < stages.size(); i++) {
+                int stageIndex = i;
+                coordinators.add(executorService.submit(() -> runStage(stageIndex, queues, metrics, executorService)));
+            }
+
+            feed(queues.get(0), metrics.get(0));
+
+            for (Future<?> coordinator : coordinators) {
+                coordinator.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("fulfilment run was interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("fulfilment run failed", e.getCause());
+        } finally {
+            executorService.shutdownNow();
+        }
+        return stageMetrics;
+    }
+
+    private void feed(BlockingQueue<long[]> firstQueue, FulfilmentStageMetrics firstMetrics) throws InterruptedException {
+        Status status = stages.get(0).from;
+        long afterId = 0;
+        try {
+            while (true) {
+                long[] batch = repository.findCartIds(status, afterId, batchSize);
+                if (batch.length == 0) {
+                    return;
+                }
+                firstMetrics.queued(batch.length);
+                firstQueue.put(batch);
+                afterId = batch[batch.length - 1];
+                if (batch.length < batchSize) {
+                    return;
+                }
+            }
+        } finally {
+            firstQueue.put(END_OF_RUN);
+        }
+    }
+
+    private Void runStage(int stageIndex, List<BlockingQueue<long[]>> queues, List<FulfilmentStageMetrics> metrics,
+                          ExecutorService executorService) throws InterruptedException {
+        Stage stage = stages.get(stageIndex);
+        FulfilmentStageMetrics stageMetrics = metrics.get(stageIndex);
+        BlockingQueue<long[]> nextQueue = stageIndex + 1 < queues.size() ? queues.get(stageIndex + 1) : null;
+
+        while (true) {
+            long[] batch = queues.get(stageIndex).take();
+            if (batch == END_OF_RUN) {
+                if (nextQueue != null) {
+                    nextQueue.put(END_OF_RUN);
+                }
+                return null;
+            }
+            stageMetrics.dequeued(batch.length);
+
+            long[] transitioned;
+            try {
+                transitioned = repository.transition(work(stage, batch, executorService), stage.from, stage.to);
+            } catch (RuntimeException e) {
+                transitioned = new long[0];
+            }
+            stageMetrics.batchCompleted(transitioned.length, batch.length - transitioned.length);
+
+            if (nextQueue != null && transitioned.length > 0) {
+                metrics.get(stageIndex + 1).queued(transitioned.length);
+                nextQueue.put(transitioned);
+            }
+        }
+    }
+
+    /**
+     * Runs the work for the carts of the batch, at most the stage concurrency of them at a time.
+     *
+     * @return ids of the carts whose work succeeded, in ascending order
+     */
+    private long[] work(Stage stage, long[] batch, ExecutorService executorService) throws InterruptedException {
+        CompletionService<Long> completions = new ExecutorCompletionService<>(executorService);
+        long[] succeeded = new long[batch.length];
+        int count = 0;
+        int submitted = 0;
+        int running = 0;
+        while (submitted < batch.length || running > 0) {
+            while (running < stageConcurrency && submitted < batch.length) {
+                long shoppingCartId = batch[submitted++];
+                completions.submit(() -> {
+                    stage.work.accept(shoppingCartId);
+                    return shoppingCartId;
+                });
+                running++;
+            }
+            Future<Long> result = completions.take();
+            running--;
+            try {
+                long shoppingCartId = result.get();
+                succeeded[count++] = shoppingCartId;
+            } catch (ExecutionException e) {
+                // the cart stays in its status for the next run
+            }
+        }
+        long[] succeededIds = Arrays.copyOf(succeeded, count);
+        Arrays.sort(succeededIds);
+        return succeededIds;
+    }
+}
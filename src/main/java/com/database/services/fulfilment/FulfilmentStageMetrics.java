@@ -0,0 +1,86 @@
+package com.database.services.fulfilment;
+
+import com.database.models.enums.Status;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live counters of one stage during a {@link FulfilmentPipeline#drain()} run.
+ */
+public class FulfilmentStageMetrics {
+    private final Status from;
+    private final Status to;
+    private final long startNanos = System.nanoTime();
+
+    private final LongAdder processed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final AtomicLong queueDepth = new AtomicLong();
+
+    FulfilmentStageMetrics(Status from, Status to) {
+        this.from = from;
+        this.to = to;
+    }
+
+    public Status getFrom() {
+        return from;
+    }
+
+    public Status getTo() {
+        return to;
+    }
+
+    /**
+     * Carts moved on to {@link #getTo()} by this stage.
+     */
+    public long getProcessed() {
+        return processed.sum();
+    }
+
+    /**
+     * Carts whose work failed, they stay in {@link #getFrom()}.
+     */
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    /**
+     * Carts waiting in the queue in front of this stage.
+     */
+    public long getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    /**
+     * Processed carts per second since the run started.
+     */
+    public double getThroughput() {
+        double elapsedSeconds = (System.nanoTime() - startNanos) / 1_000_000_000.0;
+        return elapsedSeconds == 0 ? 0 : getProcessed() / elapsedSeconds;
+    }
+
+    void queued(int carts) {
+        queueDepth.addAndGet(carts);
+    }
+
+    void dequeued(int carts) {
+        queueDepth.addAndGet(-carts);
+    }
+
+    void batchCompleted(int processedCarts, int failedCarts) {
+        batches.increment();
+        processed.add(processedCarts);
+        failed.add(failedCarts);
+    }
+
+    @Override
+    public String toString() {
+        return from + " -> " + to + ": processed=" + getProcessed() + ", failed=" + getFailed()
+                + ", queueDepth=" + getQueueDepth() + ", throughput=" + String.format("%.1f/s", getThroughput());
+    }
+}
@@ -0,0 +1,42 @@
+package com.database.services.index;
+
+import com.database.models.enums.ProductType;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Facet filter of the catalog. Values given for the same property key (or several product types) are OR-ed,
+ * different keys and the product type filter are AND-ed: {@code type in (BAG) AND colour in (black, brown)}.
+ */
+public class FacetQuery {
+    private final Set<ProductType> productTypes = EnumSet.noneOf(ProductType.class);
+    private final Map<String, Set<String>> propertyValues = new LinkedHashMap<>();
+
+    public FacetQuery withProductTypes(ProductType... productTypes) {
+        this.productTypes.addAll(Arrays.asList(productTypes));
+        return this;
+    }
+
+    public FacetQuery withAnyOf(String key, String... values) {
+        propertyValues.computeIfAbsent(key, k -> new LinkedHashSet<>()).addAll(Arrays.asList(values));
+        return this;
+    }
+
+    public Set<ProductType> getProductTypes() {
+        return Collections.unmodifiableSet(productTypes);
+    }
+
+    public Map<String, Set<String>> getPropertyValues() {
+        return Collections.unmodifiableMap(propertyValues);
+    }
+
+    public boolean isEmpty() {
+        return productTypes.isEmpty() && propertyValues.isEmpty();
+    }
+}
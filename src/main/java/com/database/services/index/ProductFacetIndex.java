@@ -0,0 +1,230 @@
+package com.database.services.index;
+
+import com.database.models.enums.ProductType;
+import org.roaringbitmap.FastAggregation;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory inverted index of the catalog facets: every product type and every property key/value pair
+ * maps to a compressed bitmap of product ids, so facet filters are bitmap ANDs/ORs instead of self-joins
+ * on the property table. Product ids have to fit in an int.
+ */
+public class ProductFacetIndex {
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private RoaringBitmap allProducts = new RoaringBitmap();
+    private Map<ProductType, RoaringBitmap> productTypes = new EnumMap<>(ProductType.class);
+    private Map<String, Map<String, RoaringBitmap>> properties = new HashMap<>();
+
+    public void addProduct(long productId, ProductType productType) {
+        int id = Math.toIntExact(productId);
+        lock.writeLock().lock();
+        try {
+            allProducts.add(id);
+            if (productType != null) {
+                productTypes.computeIfAbsent(productType, type -> new RoaringBitmap()).add(id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void addProperty(long productId, String key, String value) {
+        int id = Math.toIntExact(productId);
+        lock.writeLock().lock();
+        try {
+            properties.computeIfAbsent(key, k -> new HashMap<>())
+                    .computeIfAbsent(value, v -> new RoaringBitmap())
+                    .add(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeProperty(long productId, String key, String value) {
+        int id = Math.toIntExact(productId);
+        lock.writeLock().lock();
+        try {
+            Map<String, RoaringBitmap> values = properties.get(key);
+            if (values == null) {
+                return;
+            }
+            RoaringBitmap bitmap = values.get(value);
+            if (bitmap != null) {
+                bitmap.remove(id);
+                if (bitmap.isEmpty()) {
+                    values.remove(value);
+                }
+            }
+            if (values.isEmpty()) {
+                properties.remove(key);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeProduct(long productId) {
+        int id = Math.toIntExact(productId);
+        lock.writeLock().lock();
+        try {
+            allProducts.remove(id);
+            productTypes.values().forEach(bitmap -> bitmap.remove(id));
+            Iterator<Map<String, RoaringBitmap>> keys = properties.values().iterator();
+            while (keys.hasNext()) {
+                Map<String, RoaringBitmap> values = keys.next();
+                values.values().removeIf(bitmap -> bitmap.checkedRemove(id) && bitmap.isEmpty());
+                if (values.isEmpty()) {
+                    keys.remove();
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public long[] findProductIds(FacetQuery query) {
+        lock.readLock().lock();
+        try {
+            int[] ids = match(query, null, false).toArray();
+            long[] productIds = new long[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                productIds[i] = ids[i];
+            }
+            return productIds;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int count(FacetQuery query) {
+        lock.readLock().lock();
+        try {
+            return match(query, null, false).getCardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Number of matching products for every value of the key. The query's own filter on that key is ignored,
+     * so the counts tell how many products each value would give when selected.
+     */
+    public Map<String, Integer> countValues(FacetQuery query, String key) {
+        lock.readLock().lock();
+        try {
+            RoaringBitmap matching = match(query, key, false);
+            Map<String, Integer> counts = new LinkedHashMap<>();
+            properties.getOrDefault(key, Map.of()).forEach((value, bitmap) -> {
+                int count = RoaringBitmap.andCardinality(matching, bitmap);
+                if (count > 0) {
+                    counts.put(value, count);
+                }
+            });
+            return counts;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Map<ProductType, Integer> countProductTypes(FacetQuery query) {
+        lock.readLock().lock();
+        try {
+            RoaringBitmap matching = match(query, null, true);
+            Map<ProductType, Integer> counts = new EnumMap<>(ProductType.class);
+            productTypes.forEach((productType, bitmap) -> {
+                int count = RoaringBitmap.andCardinality(matching, bitmap);
+                if (count > 0) {
+                    counts.put(productType, count);
+                }
+            });
+            return counts;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Swaps in the contents of a freshly built index, so readers never see a half loaded one.
+     */
+    public void replaceContents(ProductFacetIndex rebuilt) {
+        rebuilt.allProducts.runOptimize();
+        rebuilt.productTypes.values().forEach(RoaringBitmap::runOptimize);
+        rebuilt.properties.values().forEach(values -> values.values().forEach(RoaringBitmap::runOptimize));
+
+        lock.writeLock().lock();
+        try {
+            allProducts = rebuilt.allProducts;
+            productTypes = rebuilt.productTypes;
+            properties = rebuilt.properties;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Must be called with the read lock held, the result may be one of the index's own bitmaps.
+     */
+    private RoaringBitmap match(FacetQuery query, String skippedKey, boolean skipProductTypes) {
+        List<RoaringBitmap> groups = new ArrayList<>();
+
+        if (!skipProductTypes && !query.getProductTypes().isEmpty()) {
+            List<RoaringBitmap> bitmaps = new ArrayList<>();
+            query.getProductTypes().forEach(productType -> {
+                RoaringBitmap bitmap = productTypes.get(productType);
+                if (bitmap != null) {
+                    bitmaps.add(bitmap);
+                }
+            });
+            groups.add(union(bitmaps));
+        }
+
+        for (Map.Entry<String, Set<String>> group : query.getPropertyValues().entrySet()) {
+            if (group.getKey().equals(skippedKey)) {
+                continue;
+            }
+            Map<String, RoaringBitmap> values = properties.getOrDefault(group.getKey(), Map.of());
+            List<RoaringBitmap> bitmaps = new ArrayList<>();
+            group.getValue().forEach(value -> {
+                RoaringBitmap bitmap = values.get(value);
+                if (bitmap != null) {
+                    bitmaps.add(bitmap);
+                }
+            });
+            groups.add(union(bitmaps));
+        }
+
+        if (groups.isEmpty()) {
+            return allProducts;
+        }
+
+        groups.sort(Comparator.comparingLong(RoaringBitmap::getLongCardinality));
+        RoaringBitmap result = groups.get(0);
+        for (int i = 1; i < groups.size() && !result.isEmpty(); i++) {
+            result = RoaringBitmap.and(result, groups.get(i));
+        }
+        return result;
+    }
+
+    private RoaringBitmap union(List<RoaringBitmap> bitmaps) {
+        if (bitmaps.isEmpty()) {
+            return new RoaringBitmap();
+        }
+        if (bitmaps.size() == 1) {
+            return bitmaps.get(0);
+        }
+        return FastAggregation.or(bitmaps.iterator());
+    }
+}
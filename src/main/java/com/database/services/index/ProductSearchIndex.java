@@ -0,0 +1,209 @@
+package com.database.services.index;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Pattern;
+
+/**
+ * In-process inverted index over product names and descriptions. Terms are lower-cased and stripped of
+ * diacritics, every query term matches whole terms and (with a lower score) terms it is a prefix of, all
+ * query terms have to match and hits are ranked by tf-idf with name terms weighted above description terms.
+ */
+public class ProductSearchIndex {
+    private static final float NAME_WEIGHT = 3f;
+    private static final float DESCRIPTION_WEIGHT = 1f;
+    private static final float PREFIX_MATCH_FACTOR = 0.5f;
+    private static final int MAX_PREFIX_EXPANSIONS = 64;
+
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private volatile Contents contents = new Contents();
+
+    private static class Contents {
+        private final ConcurrentSkipListMap<String, Map<Long, Float>> postings = new ConcurrentSkipListMap<>();
+        private final ConcurrentHashMap<Long, Map<String, Float>> termsByProduct = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Adds the product or replaces what was indexed for it before.
+     */
+    public void index(long productId, String name, String description) {
+        Map<String, Float> weights = new HashMap<>();
+        addTerms(weights, name, NAME_WEIGHT);
+        addTerms(weights, description, DESCRIPTION_WEIGHT);
+
+        Contents current = contents;
+        current.termsByProduct.compute(productId, (id, previousWeights) -> {
+            if (previousWeights != null) {
+                previousWeights.keySet().stream()
+                        .filter(term -> !weights.containsKey(term))
+                        .forEach(term -> removePosting(current, term, id));
+            }
+            weights.forEach((term, weight) -> current.postings.computeIfAbsent(term, t -> new ConcurrentHashMap<>()).put(id, weight));
+            return weights;
+        });
+    }
+
+    public void remove(long productId) {
+        Contents current = contents;
+        current.termsByProduct.computeIfPresent(productId, (id, previousWeights) -> {
+            previousWeights.keySet().forEach(term -> removePosting(current, term, id));
+            return null;
+        });
+    }
+
+    public List<SearchHit> search(String text, int limit) {
+        Set<String> queryTerms = new LinkedHashSet<>(tokenize(text));
+        if (queryTerms.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+
+        Contents current = contents;
+        int documents = Math.max(1, current.termsByProduct.size());
+
+        List<TermMatch> matches = new ArrayList<>();
+        for (String term : queryTerms) {
+            TermMatch match = new TermMatch(current, term, documents);
+            if (match.estimatedSize == 0) {
+                return Collections.emptyList();
+            }
+            matches.add(match);
+        }
+        matches.sort(Comparator.comparingLong(match -> match.estimatedSize));
+
+        Map<Long, Double> scores = matches.get(0).scoreAll();
+        for (int i = 1; i < matches.size() && !scores.isEmpty(); i++) {
+            TermMatch match = matches.get(i);
+            Iterator<Map.Entry<Long, Double>> candidates = scores.entrySet().iterator();
+            while (candidates.hasNext()) {
+                Map.Entry<Long, Double> candidate = candidates.next();
+                double score = match.score(candidate.getKey());
+                if (score == 0) {
+                    candidates.remove();
+                } else {
+                    candidate.setValue(candidate.getValue() + score);
+                }
+            }
+        }
+
+        PriorityQueue<SearchHit> topHits = new PriorityQueue<>(Comparator.comparingDouble(SearchHit::getScore));
+        scores.forEach((productId, score) -> {
+            if (topHits.size() < limit) {
+                topHits.add(new SearchHit(productId, score));
+            } else if (topHits.peek().getScore() < score) {
+                topHits.poll();
+                topHits.add(new SearchHit(productId, score));
+            }
+        });
+
+        List<SearchHit> hits = new ArrayList<>(topHits);
+        hits.sort(Comparator.comparingDouble(SearchHit::getScore).reversed());
+        return hits;
+    }
+
+    public int size() {
+        return contents.termsByProduct.size();
+    }
+
+    /**
+     * Swaps in the contents of a freshly built index. Updates made to this index while the other one was
+     * being built are lost, so rebuild before the index starts receiving updates.
+     */
+    public void replaceContents(ProductSearchIndex rebuilt) {
+        contents = rebuilt.contents;
+    }
+
+    static List<String> tokenize(String text) {
+        if (text == null || text.isEmpty()) {
+            return Collections.emptyList();
+        }
+        String normalized = Normalizer.normalize(text.toLowerCase(Locale.ROOT).replace('\u0142', 'l'), Normalizer.Form.NFD);
+        normalized = DIACRITICS.matcher(normalized).replaceAll("");
+
+        List<String> terms = new ArrayList<>();
+        for (String term : SEPARATORS.split(normalized)) {
+            if (!term.isEmpty()) {
+                terms.add(term);
+            }
+        }
+        return terms;
+    }
+
+    private static void addTerms(Map<String, Float> weights, String text, float weight) {
+        tokenize(text).forEach(term -> weights.merge(term, weight, Float::sum));
+    }
+
+    /**
+     * Empty posting maps are left in place: removing them could race with a concurrent insert into the same
+     * map. They are skipped by searches and dropped by a rebuild.
+     */
+    private static void removePosting(Contents contents, String term, Long productId) {
+        Map<Long, Float> products = contents.postings.get(term);
+        if (products != null) {
+            products.remove(productId);
+        }
+    }
+
+    /**
+     * Posting lists matched by one query term: the exact term and up to {@value #MAX_PREFIX_EXPANSIONS} longer terms.
+     */
+    private static class TermMatch {
+        private final List<Map<Long, Float>> postings = new ArrayList<>();
+        private final List<Double> factors = new ArrayList<>();
+        private long estimatedSize;
+
+        private TermMatch(Contents contents, String term, int documents) {
+            add(contents.postings.get(term), 1, documents);
+            int expansions = 0;
+            for (Map<Long, Float> products : contents.postings.subMap(term, false, term + Character.MAX_VALUE, true).values()) {
+                if (++expansions > MAX_PREFIX_EXPANSIONS) {
+                    break;
+                }
+                add(products, PREFIX_MATCH_FACTOR, documents);
+            }
+        }
+
+        private void add(Map<Long, Float> products, float factor, int documents) {
+            if (products == null || products.isEmpty()) {
+                return;
+            }
+            double idf = Math.log(1 + (double) documents / products.size());
+            postings.add(products);
+            factors.add(idf * factor);
+            estimatedSize += products.size();
+        }
+
+        private Map<Long, Double> scoreAll() {
+            Map<Long, Double> scores = new HashMap<>();
+            for (int i = 0; i < postings.size(); i++) {
+                double factor = factors.get(i);
+                postings.get(i).forEach((productId, weight) -> scores.merge(productId, weight * factor, Math::max));
+            }
+            return scores;
+        }
+
+        private double score(Long productId) {
+            double best = 0;
+            for (int i = 0; i < postings.size(); i++) {
+                Float weight = postings.get(i).get(productId);
+                if (weight != null) {
+                    best = Math.max(best, weight * factors.get(i));
+                }
+            }
+            return best;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.database.services.index;
+
+public class SearchHit {
+    private final long productId;
+    private final double score;
+
+    public SearchHit(long productId, double score) {
+        this.productId = productId;
+        this.score = score;
+    }
+
+    public long getProductId() {
+        return productId;
+    }
+
+    public double getScore() {
+        return score;
+    }
+}
@@ -0,0 +1,118 @@
+package com.database.services.metrics;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms of one service method, since the application started. Latencies are
+ * recorded in nanoseconds with three significant digits.
+ */
+public class MethodMetrics implements MethodMetricsMBean {
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    private final String service;
+    private final String method;
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder statements = new LongAdder();
+    private final Histogram latency = new ConcurrentHistogram(3);
+    private final Histogram transactionDuration = new ConcurrentHistogram(3);
+
+    MethodMetrics(String service, String method) {
+        this.service = service;
+        this.method = method;
+    }
+
+    public String getService() {
+        return service;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    @Override
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    public long getStatements() {
+        return statements.sum();
+    }
+
+    @Override
+    public double getStatementsPerCall() {
+        long callCount = getCalls();
+        return callCount == 0 ? 0 : (double) getStatements() / callCount;
+    }
+
+    @Override
+    public double getLatencyP50Millis() {
+        return latency.getValueAtPercentile(50) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getLatencyP99Millis() {
+        return latency.getValueAtPercentile(99) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getLatencyP999Millis() {
+        return latency.getValueAtPercentile(99.9) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getLatencyMaxMillis() {
+        return latency.getMaxValue() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public long getTransactions() {
+        return transactionDuration.getTotalCount();
+    }
+
+    @Override
+    public double getTransactionP50Millis() {
+        return transactionDuration.getValueAtPercentile(50) / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getTransactionP99Millis() {
+        return transactionDuration.getValueAtPercentile(99) / NANOS_PER_MILLI;
+    }
+
+    /**
+     * Copy of the latency histogram in nanoseconds.
+     */
+    public Histogram getLatencyHistogram() {
+        return latency.copy();
+    }
+
+    /**
+     * Copy of the transaction duration histogram in nanoseconds.
+     */
+    public Histogram getTransactionHistogram() {
+        return transactionDuration.copy();
+    }
+
+    void recordCall(long latencyNanos, long statementCount, boolean failed) {
+        calls.increment();
+        if (failed) {
+            errors.increment();
+        }
+        statements.add(statementCount);
+        latency.recordValue(Math.max(0, latencyNanos));
+    }
+
+    void recordTransaction(long durationNanos) {
+        transactionDuration.recordValue(Math.max(0, durationNanos));
+    }
+}
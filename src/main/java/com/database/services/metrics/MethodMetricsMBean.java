@@ -0,0 +1,24 @@
+package com.database.services.metrics;
+
+public interface MethodMetricsMBean {
+
+    long getCalls();
+
+    long getErrors();
+
+    double getLatencyP50Millis();
+
+    double getLatencyP99Millis();
+
+    double getLatencyP999Millis();
+
+    double getLatencyMaxMillis();
+
+    double getStatementsPerCall();
+
+    long getTransactions();
+
+    double getTransactionP50Millis();
+
+    double getTransactionP99Millis();
+}
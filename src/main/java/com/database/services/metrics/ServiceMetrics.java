@@ -0,0 +1,174 @@
+package com.database.services.metrics;
+
+import org.HdrHistogram.Histogram;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Registry of the {@link MethodMetrics} of the service methods. A call records its latency, whether it threw,
+ * how many SQL statements it issued (see {@link StatementCounter}) and the duration of every
+ * transaction it ran. Calls nested in another recorded call on the same thread (an overload delegating to
+ * another one) are part of the outer call only. The registry can be read through JMX and
+ * {@link #writePrometheusText(Appendable)}.
+ */
+public class ServiceMetrics {
+    public static final String JMX_DOMAIN = "com.database.services";
+
+    private static final ServiceMetrics DEFAULT = new ServiceMetrics(true);
+    private static final ThreadLocal<MethodMetrics> CURRENT_CALL = new ThreadLocal<>();
+
+    private final boolean registerMBeans;
+    private final Map<String, Map<String, MethodMetrics>> metricsByService = new ConcurrentHashMap<>();
+
+    /**
+     * @param registerMBeans whether every method gets an MBean in the platform MBean server
+     */
+    public ServiceMetrics(boolean registerMBeans) {
+        this.registerMBeans = registerMBeans;
+    }
+
+    /**
+     * Registry used by the services, registered in JMX.
+     */
+    public static ServiceMetrics getDefault() {
+        return DEFAULT;
+    }
+
+    public <T> T record(String service, String method, Supplier<T> call) {
+        if (CURRENT_CALL.get() != null) {
+            return call.get();
+        }
+
+        MethodMetrics metrics = metricsOf(service, method);
+        long statementsBefore = StatementCounter.current();
+        long start = System.nanoTime();
+        boolean failed = true;
+        CURRENT_CALL.set(metrics);
+        try {
+            T result = call.get();
+            failed = false;
+            return result;
+        } finally {
+            CURRENT_CALL.remove();
+            metrics.recordCall(System.nanoTime() - start, StatementCounter.current() - statementsBefore, failed);
+        }
+    }
+
+    /**
+     * Adds a transaction duration to the call running on the current thread, if any.
+     */
+    public static void recordTransaction(long durationNanos) {
+        MethodMetrics metrics = CURRENT_CALL.get();
+        if (metrics != null) {
+            metrics.recordTransaction(durationNanos);
+        }
+    }
+
+    public MethodMetrics getMethodMetrics(String service, String method) {
+        return metricsByService.getOrDefault(service, Map.of()).get(method);
+    }
+
+    public List<MethodMetrics> getAllMethodMetrics() {
+        List<MethodMetrics> all = new ArrayList<>();
+        metricsByService.values().forEach(methods -> all.addAll(methods.values()));
+        all.sort(Comparator.comparing(MethodMetrics::getService).thenComparing(MethodMetrics::getMethod));
+        return all;
+    }
+
+    /**
+     * Writes every method's metrics in the Prometheus text exposition format, latencies in seconds.
+     */
+    public void writePrometheusText(Appendable out) {
+        Collection<MethodMetrics> all = getAllMethodMetrics();
+        try {
+            out.append("# TYPE service_calls_total counter\n");
+            for (MethodMetrics metrics : all) {
+                appendSample(out, "service_calls_total", metrics, null, metrics.getCalls());
+            }
+            out.append("# TYPE service_errors_total counter\n");
+            for (MethodMetrics metrics : all) {
+                appendSample(out, "service_errors_total", metrics, null, metrics.getErrors());
+            }
+            out.append("# TYPE service_statements_total counter\n");
+            for (MethodMetrics metrics : all) {
+                appendSample(out, "service_statements_total", metrics, null, metrics.getStatements());
+            }
+            out.append("# TYPE service_latency_seconds summary\n");
+            for (MethodMetrics metrics : all) {
+                appendSummary(out, "service_latency_seconds", metrics, metrics.getLatencyHistogram());
+            }
+            out.append("# TYPE service_transaction_seconds summary\n");
+            for (MethodMetrics metrics : all) {
+                appendSummary(out, "service_transaction_seconds", metrics, metrics.getTransactionHistogram());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public String toPrometheusText() {
+        StringBuilder text = new StringBuilder();
+        writePrometheusText(text);
+        return text.toString();
+    }
+
+    private MethodMetrics metricsOf(String service, String method) {
+        Map<String, MethodMetrics> methods = metricsByService.get(service);
+        if (methods == null) {
+            methods = metricsByService.computeIfAbsent(service, s -> new ConcurrentHashMap<>());
+        }
+        MethodMetrics metrics = methods.get(method);
+        if (metrics == null) {
+            metrics = methods.computeIfAbsent(method, m -> createMethodMetrics(service, m));
+        }
+        return metrics;
+    }
+
+    private MethodMetrics createMethodMetrics(String service, String method) {
+        MethodMetrics metrics = new MethodMetrics(service, method);
+        if (registerMBeans) {
+            try {
+                MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                ObjectName name = new ObjectName(JMX_DOMAIN + ":type=ServiceMetrics,service=" + service + ",method=" + method);
+                if (!server.isRegistered(name)) {
+                    server.registerMBean(metrics, name);
+                }
+            } catch (JMException e) {
+                // another registry got the name first, the metrics are still recorded and exported as text
+            }
+        }
+        return metrics;
+    }
+
+    private static void appendSummary(Appendable out, String name, MethodMetrics metrics, Histogram histogram) throws IOException {
+        appendSample(out, name, metrics, "0.5", histogram.getValueAtPercentile(50) / 1e9);
+        appendSample(out, name, metrics, "0.99", histogram.getValueAtPercentile(99) / 1e9);
+        appendSample(out, name, metrics, "0.999", histogram.getValueAtPercentile(99.9) / 1e9);
+        appendSample(out, name + "_count", metrics, null, histogram.getTotalCount());
+        appendSample(out, name + "_sum", metrics, null, histogram.getMean() * histogram.getTotalCount() / 1e9);
+    }
+
+    private static void appendSample(Appendable out, String name, MethodMetrics metrics, String quantile, double value) throws IOException {
+        out.append(name)
+                .append("{service=\"").append(metrics.getService())
+                .append("\",method=\"").append(metrics.getMethod());
+        if (quantile != null) {
+            out.append("\",quantile=\"").append(quantile);
+        }
+        out.append("\"} ").append(value == Math.rint(value) && Math.abs(value) < 1e15 ? Long.toString((long) value) : String.format(Locale.ROOT, "%.9f", value))
+                .append('\n');
+    }
+}
@@ -0,0 +1,65 @@
+package com.database.services.metrics;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+
+/**
+ * Counts the SQL statements of the current thread. Statements Hibernate prepares are seen through
+ * {@code hibernate.session_factory.statement_inspector} in persistence.xml, statements issued with plain JDBC
+ * inside {@code Session.doWork} through the connection returned by {@link #counting(Connection)}.
+ */
+public class StatementCounter implements StatementInspector {
+    private static final ThreadLocal<long[]> STATEMENTS = ThreadLocal.withInitial(() -> new long[1]);
+
+    @Override
+    public String inspect(String sql) {
+        STATEMENTS.get()[0]++;
+        return sql;
+    }
+
+    /**
+     * Statements prepared by the current thread so far, the difference of two readings is the number of
+     * statements issued in between.
+     */
+    public static long current() {
+        return STATEMENTS.get()[0];
+    }
+
+    /**
+     * The connection, with every statement created from it counting its executions: one per execute call,
+     * a batch included, as each is one round trip to the database.
+     */
+    public static Connection counting(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(StatementCounter.class.getClassLoader(), new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+            Object result = invoke(connection, method, args);
+            return result instanceof Statement ? counting((Statement) result) : result;
+        });
+    }
+
+    private static Statement counting(Statement statement) {
+        Class<?> type = statement instanceof CallableStatement ? CallableStatement.class
+                : statement instanceof PreparedStatement ? PreparedStatement.class
+                : Statement.class;
+        return (Statement) Proxy.newProxyInstance(StatementCounter.class.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            if (method.getName().startsWith("execute")) {
+                STATEMENTS.get()[0]++;
+            }
+            return invoke(statement, method, args);
+        });
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,350 @@
+package com.database.services.reservation;
+
+import java.io.Closeable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.LongToIntFunction;
+
+/**
+ * Time-limited reservations of product stock by shopping carts, kept in memory. A product's stock on hand is
+ * loaded once and its reserved quantity is a counter, so the stock available to sell is known in O(1) and a cart
+ * can only reserve what other carts haven't. A reservation lives for the time to live after the cart's last
+ * reservation of the product; expired reservations are released by {@link #expire()}, periodically once
+ * {@link #start()} was called, from a {@link TimerWheel} rather than from a scheduled task per reservation.
+ * Sales that don't go through a reservation hold their quantity with {@link #holdForSale(Long, long, int)} while
+ * they take it from the database, so they can't sell what carts reserved.
+ * <p>
+ * Every {@link #stockChanged(long)} bumps the product's version. A stock on hand loaded while the version changed
+ * may predate the change and is thrown away instead of installed.
+ * <p>
+ * Locks are taken per cart, then per product, never the other way round.
+ */
+public class StockReservations implements Closeable {
+    public static final int DEFAULT_WHEEL_SIZE = 1024;
+
+    private static final int UNKNOWN = -1;
+
+    private final long timeToLiveMillis;
+    private final long tickMillis;
+    private final LongToIntFunction stockLoader;
+    private final LongSupplier clock;
+    private final TimerWheel timerWheel;
+
+    private final Map<Long, ProductStock> stocks = new ConcurrentHashMap<>();
+    private final Map<Long, Map<Long, Reservation>> reservationsByCart = new ConcurrentHashMap<>();
+    private final AtomicLong reservationCount = new AtomicLong();
+
+    private ScheduledExecutorService scheduler;
+
+    private static class ProductStock {
+        private int onHand = UNKNOWN;
+        private int reserved;
+        private long version;
+    }
+
+    private static class Reservation extends TimerWheel.Timeout {
+        private final long shoppingCartId;
+        private final long productId;
+        private int quantity;
+        private long expiresAtMillis;
+
+        private Reservation(long shoppingCartId, long productId) {
+            this.shoppingCartId = shoppingCartId;
+            this.productId = productId;
+        }
+    }
+
+    /**
+     * @param stockLoader stock on hand of a product in the database
+     */
+    public StockReservations(long timeToLiveMillis, long tickMillis, LongToIntFunction stockLoader) {
+        this(timeToLiveMillis, tickMillis, stockLoader, System::currentTimeMillis);
+    }
+
+    StockReservations(long timeToLiveMillis, long tickMillis, LongToIntFunction stockLoader, LongSupplier clock) {
+        if (timeToLiveMillis <= 0 || tickMillis <= 0) {
+            throw new IllegalArgumentException("timeToLiveMillis and tickMillis should be higher than 0");
+        }
+        this.timeToLiveMillis = timeToLiveMillis;
+        this.tickMillis = tickMillis;
+        this.stockLoader = stockLoader;
+        this.clock = clock;
+        this.timerWheel = new TimerWheel(tickMillis, DEFAULT_WHEEL_SIZE, clock.getAsLong());
+    }
+
+    /**
+     * Releases the expired reservations every tick.
+     */
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "stock-reservations");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(this::expire, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Reserves more of the product for the cart and renews the cart's reservation of the product.
+     *
+     * @return false when less than the quantity is available to sell, nothing is reserved then
+     */
+    public boolean reserve(long shoppingCartId, long productId, int quantity) {
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("quantity should be higher than 0");
+        }
+        ProductStock stock = loadedStockOf(productId);
+        while (true) {
+            Map<Long, Reservation> reservations = reservationsByCart.computeIfAbsent(shoppingCartId, id -> new HashMap<>());
+            synchronized (reservations) {
+                if (reservationsByCart.get(shoppingCartId) != reservations) {
+                    continue;
+                }
+                Boolean reserved = reserveStock(stock, quantity, 0);
+                if (reserved == Boolean.TRUE) {
+                    Reservation reservation = reservations.get(productId);
+                    if (reservation == null) {
+                        reservation = new Reservation(shoppingCartId, productId);
+                        reservations.put(productId, reservation);
+                        reservationCount.incrementAndGet();
+                    } else {
+                        timerWheel.cancel(reservation);
+                    }
+                    reservation.quantity += quantity;
+                    reservation.expiresAtMillis = clock.getAsLong() + timeToLiveMillis;
+                    timerWheel.schedule(reservation, reservation.expiresAtMillis);
+                    return true;
+                }
+                if (reserved == Boolean.FALSE) {
+                    removeIfEmpty(shoppingCartId, reservations);
+                    return false;
+                }
+            }
+            // the stock on hand was invalidated after it was loaded
+            stock = loadedStockOf(productId);
+        }
+    }
+
+    /**
+     * Holds the quantity of the product for a sale taken straight from the database, counting it as reserved until
+     * {@link #releaseHold(long, int)}. Call {@link #stockChanged(long)} once the sale is committed and only then
+     * release the hold, so the product never looks to have more available than it has.
+     *
+     * @param shoppingCartId cart of the buyer, whose own reservation of the product counts as available to it,
+     *                       or null for a buyer without a cart
+     * @return false when less than the quantity is available to the buyer, nothing is held then
+     */
+    public boolean holdForSale(Long shoppingCartId, long productId, int quantity) {
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("quantity should be higher than 0");
+        }
+        while (true) {
+            ProductStock stock = loadedStockOf(productId);
+            Map<Long, Reservation> reservations = shoppingCartId == null ? null : reservationsByCart.get(shoppingCartId);
+            Boolean held;
+            if (reservations == null) {
+                held = reserveStock(stock, quantity, 0);
+            } else {
+                synchronized (reservations) {
+                    Reservation reservation = reservations.get(productId);
+                    held = reserveStock(stock, quantity, reservation == null ? 0 : reservation.quantity);
+                }
+            }
+            if (held != null) {
+                return held;
+            }
+        }
+    }
+
+    public void releaseHold(long productId, int quantity) {
+        releaseStock(productId, quantity);
+    }
+
+    /**
+     * Gives back up to the quantity reserved by the cart, the reservation ends when nothing is left on it.
+     */
+    public void release(long shoppingCartId, long productId, int quantity) {
+        Map<Long, Reservation> reservations = reservationsByCart.get(shoppingCartId);
+        if (reservations == null) {
+            return;
+        }
+        synchronized (reservations) {
+            Reservation reservation = reservations.get(productId);
+            if (reservation == null) {
+                return;
+            }
+            int released = Math.min(quantity, reservation.quantity);
+            reservation.quantity -= released;
+            if (reservation.quantity == 0) {
+                end(reservations, reservation);
+            }
+            releaseStock(productId, released);
+            removeIfEmpty(shoppingCartId, reservations);
+        }
+    }
+
+    /**
+     * Ends every reservation of the cart, when it is bought or removed.
+     */
+    public void releaseAll(long shoppingCartId) {
+        Map<Long, Reservation> reservations = reservationsByCart.get(shoppingCartId);
+        if (reservations == null) {
+            return;
+        }
+        synchronized (reservations) {
+            for (Reservation reservation : reservations.values().toArray(new Reservation[0])) {
+                releaseStock(reservation.productId, reservation.quantity);
+                end(reservations, reservation);
+            }
+            removeIfEmpty(shoppingCartId, reservations);
+        }
+    }
+
+    /**
+     * Stock on hand minus the live reservations.
+     */
+    public int getAvailableStock(long productId) {
+        while (true) {
+            ProductStock stock = loadedStockOf(productId);
+            synchronized (stock) {
+                if (stock.onHand != UNKNOWN) {
+                    return Math.max(0, stock.onHand - stock.reserved);
+                }
+            }
+        }
+    }
+
+    public int getReservedQuantity(long shoppingCartId, long productId) {
+        Map<Long, Reservation> reservations = reservationsByCart.get(shoppingCartId);
+        if (reservations == null) {
+            return 0;
+        }
+        synchronized (reservations) {
+            Reservation reservation = reservations.get(productId);
+            return reservation == null ? 0 : reservation.quantity;
+        }
+    }
+
+    public long getReservationCount() {
+        return reservationCount.get();
+    }
+
+    /**
+     * Forgets the stock on hand of the product after it changed in the database, it is loaded again on next use.
+     * A load that is running meanwhile is discarded.
+     */
+    public void stockChanged(long productId) {
+        ProductStock stock = stocks.get(productId);
+        if (stock != null) {
+            synchronized (stock) {
+                stock.onHand = UNKNOWN;
+                stock.version++;
+            }
+        }
+    }
+
+    /**
+     * Releases the reservations that are past their time to live.
+     *
+     * @return number of released reservations
+     */
+    public int expire() {
+        long now = clock.getAsLong();
+        int released = 0;
+        for (TimerWheel.Timeout timeout : timerWheel.advance(now)) {
+            Reservation reservation = (Reservation) timeout;
+            Map<Long, Reservation> reservations = reservationsByCart.get(reservation.shoppingCartId);
+            if (reservations == null) {
+                continue;
+            }
+            synchronized (reservations) {
+                // a reservation renewed after the wheel let go of it is scheduled again and stays
+                if (reservations.get(reservation.productId) == reservation && reservation.expiresAtMillis <= now) {
+                    releaseStock(reservation.productId, reservation.quantity);
+                    end(reservations, reservation);
+                    removeIfEmpty(reservation.shoppingCartId, reservations);
+                    released++;
+                }
+            }
+        }
+        return released;
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (scheduler != null) {
+                scheduler.shutdownNow();
+                scheduler = null;
+            }
+        }
+    }
+
+    private ProductStock loadedStockOf(long productId) {
+        ProductStock stock = stocks.get(productId);
+        if (stock == null) {
+            stock = stocks.computeIfAbsent(productId, id -> new ProductStock());
+        }
+        boolean unknown;
+        long version;
+        synchronized (stock) {
+            unknown = stock.onHand == UNKNOWN;
+            version = stock.version;
+        }
+        if (unknown) {
+            int onHand = stockLoader.applyAsInt(productId);
+            synchronized (stock) {
+                // the stock changed while it was read, what was read may be from before the change
+                if (stock.onHand == UNKNOWN && stock.version == version) {
+                    stock.onHand = onHand;
+                }
+            }
+        }
+        return stock;
+    }
+
+    /**
+     * @param ownReserved quantity already reserved by the one reserving, which is available to it
+     * @return null when the stock on hand isn't known
+     */
+    private static Boolean reserveStock(ProductStock stock, int quantity, int ownReserved) {
+        synchronized (stock) {
+            if (stock.onHand == UNKNOWN) {
+                return null;
+            }
+            if (stock.onHand - stock.reserved + ownReserved < quantity) {
+                return false;
+            }
+            stock.reserved += quantity;
+            return true;
+        }
+    }
+
+    private void releaseStock(long productId, int quantity) {
+        ProductStock stock = stocks.get(productId);
+        synchronized (stock) {
+            stock.reserved -= quantity;
+        }
+    }
+
+    private void end(Map<Long, Reservation> reservations, Reservation reservation) {
+        timerWheel.cancel(reservation);
+        reservations.remove(reservation.productId);
+        reservationCount.decrementAndGet();
+    }
+
+    private void removeIfEmpty(long shoppingCartId, Map<Long, Reservation> reservations) {
+        if (reservations.isEmpty()) {
+            reservationsByCart.remove(shoppingCartId, reservations);
+        }
+    }
+}
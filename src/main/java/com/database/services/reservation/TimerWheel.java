@@ -0,0 +1,129 @@
+package com.database.services.reservation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hashed timer wheel: timeouts are linked into the bucket of their deadline tick, so scheduling and cancelling
+ * are O(1) and {@link #advance(long)} only visits the buckets of the ticks that passed. A timeout expires at the
+ * end of its tick, at most one tick after its deadline. Deadlines further away than one rotation stay in their
+ * bucket until the rotation they belong to comes round.
+ */
+class TimerWheel {
+
+    static class Timeout {
+        private long deadlineTick;
+        private volatile Bucket bucket;
+        private Timeout previous;
+        private Timeout next;
+    }
+
+    private static final class Bucket {
+        private Timeout head;
+    }
+
+    private final long tickMillis;
+    private final long startMillis;
+    private final Bucket[] buckets;
+    private final int mask;
+    /**
+     * Every tick up to this one was processed, or is covered by a bucket processed later in the same advance.
+     * Written while holding the lock of the processed bucket.
+     */
+    private volatile long processedTick;
+
+    /**
+     * @param wheelSize number of buckets, rounded up to a power of two
+     */
+    TimerWheel(long tickMillis, int wheelSize, long startMillis) {
+        if (tickMillis <= 0 || wheelSize <= 0) {
+            throw new IllegalArgumentException("tickMillis and wheelSize should be higher than 0");
+        }
+        int size = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+        this.tickMillis = tickMillis;
+        this.startMillis = startMillis;
+        this.buckets = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            buckets[i] = new Bucket();
+        }
+        this.mask = size - 1;
+    }
+
+    void schedule(Timeout timeout, long deadlineMillis) {
+        long deadlineTick = Math.floorDiv(deadlineMillis - startMillis + tickMillis - 1, tickMillis);
+        while (true) {
+            long tick = Math.max(deadlineTick, processedTick + 1);
+            Bucket bucket = buckets[(int) (tick & mask)];
+            synchronized (bucket) {
+                if (tick > processedTick) {
+                    timeout.deadlineTick = tick;
+                    timeout.previous = null;
+                    timeout.next = bucket.head;
+                    if (bucket.head != null) {
+                        bucket.head.previous = timeout;
+                    }
+                    bucket.head = timeout;
+                    timeout.bucket = bucket;
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return whether the timeout was still scheduled
+     */
+    boolean cancel(Timeout timeout) {
+        while (true) {
+            Bucket bucket = timeout.bucket;
+            if (bucket == null) {
+                return false;
+            }
+            synchronized (bucket) {
+                if (timeout.bucket == bucket) {
+                    unlink(bucket, timeout);
+                    return true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Processes the ticks up to the time and unlinks the timeouts that are due.
+     */
+    synchronized List<Timeout> advance(long nowMillis) {
+        long nowTick = Math.floorDiv(nowMillis - startMillis, tickMillis);
+        List<Timeout> expired = new ArrayList<>();
+        long fromTick = Math.max(processedTick + 1, nowTick - mask);
+        for (long tick = fromTick; tick <= nowTick; tick++) {
+            Bucket bucket = buckets[(int) (tick & mask)];
+            synchronized (bucket) {
+                Timeout timeout = bucket.head;
+                while (timeout != null) {
+                    Timeout next = timeout.next;
+                    if (timeout.deadlineTick <= tick) {
+                        unlink(bucket, timeout);
+                        expired.add(timeout);
+                    }
+                    timeout = next;
+                }
+                processedTick = tick;
+            }
+        }
+        return expired;
+    }
+
+    private static void unlink(Bucket bucket, Timeout timeout) {
+        if (timeout.previous != null) {
+            timeout.previous.next = timeout.next;
+        } else {
+            bucket.head = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.previous = timeout.previous;
+        }
+        timeout.previous = null;
+        timeout.next = null;
+        timeout.bucket = null;
+    }
+}
@@ -0,0 +1,95 @@
+package com.database.services.sharding;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Immutable consistent hashing ring mapping long keys to shards. Every shard owns {@code virtualNodes} points
+ * of the ring and a key belongs to the shard of the first point at or after the key's hash, so adding or
+ * removing a shard only moves the keys of the ring segments it gains or loses, about 1/N of them.
+ *
+ * @param <S> shard
+ */
+public class ConsistentHashRing<S> {
+    public static final int DEFAULT_VIRTUAL_NODES = 160;
+
+    private final Map<String, S> shards;
+    private final int virtualNodes;
+    private final NavigableMap<Long, String> ring = new TreeMap<>();
+
+    /**
+     * @param shards shards by a name that stays the same across restarts, the points are placed by the names
+     */
+    public ConsistentHashRing(Map<String, S> shards, int virtualNodes) {
+        if (shards == null || shards.isEmpty() || virtualNodes <= 0) {
+            throw new IllegalArgumentException("shards shouldn't be null or empty and virtualNodes should be higher than 0");
+        }
+        this.shards = Collections.unmodifiableMap(new LinkedHashMap<>(shards));
+        this.virtualNodes = virtualNodes;
+        for (String name : shards.keySet()) {
+            for (int i = 0; i < virtualNodes; i++) {
+                // on the rare collision of two points the shard named first keeps it
+                ring.putIfAbsent(hash(name + "#" + i), name);
+            }
+        }
+    }
+
+    public S shardFor(long key) {
+        return shards.get(shardNameFor(key));
+    }
+
+    public String shardNameFor(long key) {
+        Map.Entry<Long, String> point = ring.ceilingEntry(mix(key));
+        return point != null ? point.getValue() : ring.firstEntry().getValue();
+    }
+
+    public Map<String, S> getShards() {
+        return shards;
+    }
+
+    /**
+     * Ring with the shard added, the keys it takes over have to be moved to it.
+     */
+    public ConsistentHashRing<S> withShard(String name, S shard) {
+        Map<String, S> grown = new LinkedHashMap<>(shards);
+        grown.put(name, shard);
+        return new ConsistentHashRing<>(grown, virtualNodes);
+    }
+
+    /**
+     * Ring without the shard, its keys have to be moved to the shards that take over its segments.
+     */
+    public ConsistentHashRing<S> withoutShard(String name) {
+        Map<String, S> shrunk = new LinkedHashMap<>(shards);
+        shrunk.remove(name);
+        return new ConsistentHashRing<>(shrunk, virtualNodes);
+    }
+
+    /**
+     * 64-bit FNV-1a of the UTF-8 bytes, finished like a key.
+     */
+    private static long hash(String point) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : point.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    /**
+     * Finalizer of MurmurHash3, spreads sequential keys over the whole ring.
+     */
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+}
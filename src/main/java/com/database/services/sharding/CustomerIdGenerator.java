@@ -0,0 +1,45 @@
+package com.database.services.sharding;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Customer ids unique across the application instances without asking any database, so a new customer's
+ * shard is known before the customer is written: 41 bits of milliseconds since 2020-01-01, 10 bits of
+ * instance number and 12 bits of sequence within the millisecond. Ids grow with time on every instance.
+ */
+public class CustomerIdGenerator implements LongSupplier {
+    private static final long EPOCH_MILLIS = 1577836800000L;
+    private static final int INSTANCE_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private final long instance;
+    private long lastMillis = -1;
+    private long sequence;
+
+    /**
+     * @param instance number of this application instance, unique among the instances sharing the shards
+     */
+    public CustomerIdGenerator(int instance) {
+        if (instance < 0 || instance >= 1 << INSTANCE_BITS) {
+            throw new IllegalArgumentException("instance should be between 0 and " + ((1 << INSTANCE_BITS) - 1));
+        }
+        this.instance = instance;
+    }
+
+    @Override
+    public synchronized long getAsLong() {
+        long millis = Math.max(System.currentTimeMillis(), lastMillis);
+        if (millis == lastMillis) {
+            sequence = (sequence + 1) & SEQUENCE_MASK;
+            if (sequence == 0) {
+                // sequence of this millisecond used up, the id moves on to the next one
+                millis = ++lastMillis;
+            }
+        } else {
+            sequence = 0;
+        }
+        lastMillis = millis;
+        return (millis - EPOCH_MILLIS) << (INSTANCE_BITS + SEQUENCE_BITS) | instance << SEQUENCE_BITS | sequence;
+    }
+}
@@ -0,0 +1,84 @@
+package com.database.services.sharding;
+
+import com.database.services.concurrent.ServiceExecutors;
+import com.database.services.entityManager.EntityManagerFactoryProvider;
+import com.database.services.exceptions.InvalidParameterProvidedException;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * The shards of the customers, placed on a {@link ConsistentHashRing} by customer id. A customer's shopping
+ * carts live on the customer's shard, so everything about one customer is read and written on one database.
+ */
+public class CustomerShards implements Closeable {
+    private final ConsistentHashRing<Shard> ring;
+    private final ExecutorService executorService = ServiceExecutors.newPerTaskExecutor("shard-query");
+
+    /**
+     * @param providers shards by a name that stays the same across restarts
+     */
+    public CustomerShards(Map<String, EntityManagerFactoryProvider> providers, int virtualNodes) {
+        Map<String, Shard> shards = new LinkedHashMap<>();
+        providers.forEach((name, provider) -> shards.put(name, new Shard(name, provider)));
+        this.ring = new ConsistentHashRing<>(shards, virtualNodes);
+    }
+
+    public Shard shardFor(Long customerId) {
+        if (customerId == null || customerId <= 0) {
+            throw new InvalidParameterProvidedException("customerId shouldn't be null or lower than 0");
+        }
+        return ring.shardFor(customerId);
+    }
+
+    public Map<String, Shard> getShards() {
+        return ring.getShards();
+    }
+
+    /**
+     * Runs the query on every shard in parallel and gathers the results by shard name. Fails when a shard
+     * fails, after every shard finished.
+     */
+    public <T> Map<String, T> scatterGather(Function<Shard, T> query) {
+        List<Future<T>> results = new ArrayList<>();
+        for (Shard shard : ring.getShards().values()) {
+            results.add(executorService.submit(() -> query.apply(shard)));
+        }
+
+        Map<String, T> gathered = new LinkedHashMap<>();
+        RuntimeException failure = null;
+        int i = 0;
+        for (Shard shard : ring.getShards().values()) {
+            try {
+                gathered.put(shard.getName(), results.get(i++).get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("query of the shards was interrupted", e);
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = new IllegalStateException("query of shard " + shard.getName() + " failed", e.getCause());
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return gathered;
+    }
+
+    /**
+     * Closes the services and connection pools of every shard.
+     */
+    @Override
+    public void close() {
+        executorService.shutdownNow();
+        ring.getShards().values().forEach(Shard::close);
+    }
+}
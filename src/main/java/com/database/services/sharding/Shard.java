@@ -0,0 +1,48 @@
+package com.database.services.sharding;
+
+import com.database.services.CustomerService;
+import com.database.services.ShoppingCartService;
+import com.database.services.entityManager.EntityManagerFactoryProvider;
+
+/**
+ * One database holding a share of the customers with their addresses and shopping carts. Products are
+ * reference data every shard needs a copy of, as cart lines refer to them. The services of a shard are left to
+ * {@link ShardedCustomerService} and {@link ShardedShoppingCartService}: a customer added to a shard directly,
+ * by itself or with a cart, would get an id from the shard's identity column, which neither places it on that
+ * shard nor keeps clear of the ids of the id generator.
+ */
+public final class Shard {
+    private final String name;
+    private final EntityManagerFactoryProvider entityManagerFactoryProvider;
+    private final CustomerService customerService;
+    private final ShoppingCartService shoppingCartService;
+
+    public Shard(String name, EntityManagerFactoryProvider entityManagerFactoryProvider) {
+        this.name = name;
+        this.entityManagerFactoryProvider = entityManagerFactoryProvider;
+        this.customerService = new CustomerService(entityManagerFactoryProvider);
+        this.shoppingCartService = new ShoppingCartService(entityManagerFactoryProvider);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public EntityManagerFactoryProvider getEntityManagerFactoryProvider() {
+        return entityManagerFactoryProvider;
+    }
+
+    CustomerService getCustomerService() {
+        return customerService;
+    }
+
+    ShoppingCartService getShoppingCartService() {
+        return shoppingCartService;
+    }
+
+    void close() {
+        shoppingCartService.closeSession();
+        customerService.closeSession();
+        entityManagerFactoryProvider.close();
+    }
+}
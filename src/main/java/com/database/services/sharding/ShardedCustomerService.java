@@ -0,0 +1,61 @@
+package com.database.services.sharding;
+
+import com.database.models.Address;
+import com.database.models.Customer;
+import com.database.services.exceptions.InvalidParameterProvidedException;
+
+import java.util.function.LongSupplier;
+
+/**
+ * {@link com.database.services.CustomerService} over the customer shards. A new customer gets an id from the
+ * id generator first, the id places it on its shard and locates it there afterwards.
+ */
+public class ShardedCustomerService {
+    private final CustomerShards shards;
+    private final LongSupplier customerIds;
+
+    public ShardedCustomerService(CustomerShards shards, LongSupplier customerIds) {
+        this.shards = shards;
+        this.customerIds = customerIds;
+    }
+
+    public void addCustomerToDatabase(Customer customer) {
+        if (customer == null) {
+            throw new InvalidParameterProvidedException("customer shouldn't be null");
+        }
+        long customerId = customerIds.getAsLong();
+        shards.shardFor(customerId).getCustomerService().addCustomerToDatabase(customer, customerId);
+    }
+
+    public Customer getCustomerById(Long customerId) {
+        return shards.shardFor(customerId).getCustomerService().getCustomerById(customerId);
+    }
+
+    public Customer getCustomerWithOrderSummary(Long customerId) {
+        return shards.shardFor(customerId).getCustomerService().getCustomerWithOrderSummary(customerId);
+    }
+
+    public Customer getCustomerWithOrderHistory(Long customerId) {
+        return shards.shardFor(customerId).getCustomerService().getCustomerWithOrderHistory(customerId);
+    }
+
+    public void removeCustomerFromDatabase(Long customerId) {
+        shards.shardFor(customerId).getCustomerService().removeCustomerFromDatabase(customerId);
+    }
+
+    public void updateEmail(Long customerId, String email) {
+        shards.shardFor(customerId).getCustomerService().updateEmail(customerId, email);
+    }
+
+    public void updatePassword(Long customerId, String password) {
+        shards.shardFor(customerId).getCustomerService().updatePassword(customerId, password);
+    }
+
+    public void updateIsAdminStatus(Long customerId, boolean isAdmin) {
+        shards.shardFor(customerId).getCustomerService().updateIsAdminStatus(customerId, isAdmin);
+    }
+
+    public void updateAddress(Long customerId, Address address) {
+        shards.shardFor(customerId).getCustomerService().updateAddress(customerId, address);
+    }
+}
@@ -0,0 +1,112 @@
+package com.database.services.sharding;
+
+import com.database.models.CartLine;
+import com.database.models.Product;
+import com.database.models.ShoppingCart;
+import com.database.models.enums.Status;
+import com.database.services.ShoppingCartService;
+import com.database.services.dto.OrderHistoryPage;
+import com.database.services.dto.OrderSummary;
+import com.database.services.exceptions.InvalidParameterProvidedException;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link com.database.services.ShoppingCartService} over the customer shards. Cart ids are generated by the
+ * cart's shard and are unique within it only, so a cart is addressed by its customer's id and its own id.
+ * Every operation on a cart first checks that the cart belongs to the customer and is rejected otherwise, so one
+ * customer can't reach another customer's cart on the same shard by its id. Operations spanning every customer
+ * run on all shards in parallel.
+ */
+public class ShardedShoppingCartService {
+    private final CustomerShards shards;
+
+    public ShardedShoppingCartService(CustomerShards shards) {
+        this.shards = shards;
+    }
+
+    /**
+     * Adds the cart to the shard of its customer, who has to be added through
+     * {@link ShardedCustomerService#addCustomerToDatabase(com.database.models.Customer)} before. A cart of any
+     * other customer is rejected, as the shard would add its customer along with it under an id of its own.
+     */
+    public void addShoppingCartToDatabase(ShoppingCart shoppingCart) {
+        if (shoppingCart == null || shoppingCart.getCustomer() == null) {
+            throw new InvalidParameterProvidedException("shoppingCart and its customer shouldn't be null");
+        }
+        Long customerId = shoppingCart.getCustomer().getId();
+        if (customerId == null) {
+            throw new InvalidParameterProvidedException("customer of the shoppingCart should be added through ShardedCustomerService before");
+        }
+        Shard shard = shards.shardFor(customerId);
+        if (shard.getCustomerService().getCustomerById(customerId) == null) {
+            throw new InvalidParameterProvidedException("customer with provided id doesn't exist");
+        }
+        shard.getShoppingCartService().addShoppingCartToDatabase(shoppingCart);
+    }
+
+    public ShoppingCart getShoppingCartById(Long customerId, Long shoppingCartId) {
+        return shoppingCartServiceOf(customerId, shoppingCartId).getShoppingCartById(shoppingCartId);
+    }
+
+    public ShoppingCart getShoppingCartWithLines(Long customerId, Long shoppingCartId) {
+        return shoppingCartServiceOf(customerId, shoppingCartId).getShoppingCartWithLines(shoppingCartId);
+    }
+
+    public List<CartLine> getCartLines(Long customerId, Long shoppingCartId) {
+        return shoppingCartServiceOf(customerId, shoppingCartId).getCartLines(shoppingCartId);
+    }
+
+    public OrderHistoryPage getOrderHistoryPage(Long customerId, OrderSummary after, int pageSize) {
+        return shards.shardFor(customerId).getShoppingCartService().getOrderHistoryPage(customerId, after, pageSize);
+    }
+
+    public void removeShoppingCartFromDatabase(Long customerId, Long shoppingCartId) {
+        shoppingCartServiceOf(customerId, shoppingCartId).removeShoppingCartFromDatabase(shoppingCartId);
+    }
+
+    public void addProductToShoppingCart(Long customerId, Long shoppingCartId, Product product, int quantity) {
+        shoppingCartServiceOf(customerId, shoppingCartId).addProductToShoppingCart(shoppingCartId, product, quantity);
+    }
+
+    public void removeProductFromShoppingCart(Long customerId, Long shoppingCartId, Product product, int quantity) {
+        shoppingCartServiceOf(customerId, shoppingCartId).removeProductFromShoppingCart(shoppingCartId, product, quantity);
+    }
+
+    public void updateStatus(Long customerId, Long shoppingCartId, Status status) {
+        shoppingCartServiceOf(customerId, shoppingCartId).updateStatus(shoppingCartId, status);
+    }
+
+    /**
+     * Number of carts in the status on all shards.
+     */
+    public long countShoppingCarts(Status status) {
+        return shards.scatterGather(shard -> shard.getShoppingCartService().countShoppingCarts(status))
+                .values().stream()
+                .mapToLong(Long::longValue)
+                .sum();
+    }
+
+    /**
+     * {@link com.database.services.ShoppingCartService#transitionStatus(Status, Status, Date, Date)} on all
+     * shards, every shard in its own transaction.
+     *
+     * @return ids of the moved carts by shard name
+     */
+    public Map<String, List<Long>> transitionStatus(Status from, Status to, Date purchasedFrom, Date purchasedTo) {
+        return shards.scatterGather(shard -> shard.getShoppingCartService().transitionStatus(from, to, purchasedFrom, purchasedTo));
+    }
+
+    /**
+     * Service of the customer's shard, once the cart is known to be one of the customer's.
+     */
+    private ShoppingCartService shoppingCartServiceOf(Long customerId, Long shoppingCartId) {
+        ShoppingCartService shoppingCartService = shards.shardFor(customerId).getShoppingCartService();
+        if (!customerId.equals(shoppingCartService.getCustomerIdOfShoppingCart(shoppingCartId))) {
+            throw new InvalidParameterProvidedException("shopping cart with provided id doesn't exist for the customer");
+        }
+        return shoppingCartService;
+    }
+}
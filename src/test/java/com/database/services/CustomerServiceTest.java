@@ -2,6 +2,10 @@ package com.database.services;
 
 import com.database.models.Address;
 import com.database.models.Customer;
+import com.database.models.Product;
+import com.database.models.ShoppingCart;
+import com.database.models.enums.ProductType;
+import com.database.models.enums.Status;
 import org.testng.annotations.AfterSuite;
 import org.testng.annotations.Test;
 
@@ -9,11 +13,14 @@ import javax.persistence.*;
 import java.util.Date;
 import java.util.List;
 
+import static com.database.services.metrics.StatementCountAssertions.assertStatementCount;
 import static org.testng.AssertJUnit.assertEquals;
 import static org.testng.AssertJUnit.assertNull;
 
 public class CustomerServiceTest {
     private CustomerService customerService = new CustomerService();
+    private ProductService productService = new ProductService();
+    private ShoppingCartService shoppingCartService = new ShoppingCartService();
     private EntityManagerFactory entityManagerFactory = Persistence.createEntityManagerFactory("shop-database");
     private EntityManager entityManager = entityManagerFactory.createEntityManager();
 
@@ -58,6 +65,29 @@ public class CustomerServiceTest {
         assertEquals(1, address.getCustomers().size());
     }
 
+    @Test
+    public void method_addCustomerToDatabase_desc_CustomerServiceShouldReuseAddressWrittenWithDifferentCaseAndSpacing() {
+        Address address = new Address("Poland", "30-091", "Cracow", "Long street", 4);
+        Address sameAddress = new Address(" poland", "30-091", "CRACOW ", "long  street", 4);
+
+        Customer customer = new Customer("Adam", "Smith", "xyz@test.com", new Date(11111999L), "password", false, address);
+        Customer secondCustomer = new Customer("Anna", "Smith", "xyz@test.com", new Date(11111999L), "password", false, sameAddress);
+        customerService.addCustomerToDatabase(customer);
+        customerService.addCustomerToDatabase(secondCustomer);
+
+        List<Address> addresses = entityManager
+                .createQuery("from Address a where a.fingerprint = ?1", Address.class)
+                .setParameter(1, Address.fingerprintOf(address))
+                .getResultList();
+
+        deleteCustomerFromDatabase(customer.getId());
+        deleteCustomerFromDatabase(secondCustomer.getId());
+        deleteAddressFromDatabase(addresses.get(0).getId());
+
+        assertEquals(1, addresses.size());
+        assertEquals(addresses.get(0).getId(), secondCustomer.getAddress().getId());
+    }
+
     @Test
     public void method_removeCustomerFromDatabase_CustomerServiceShouldRemoveCustomerFromDatabaseAndUpdateAddressSetOfCustomers(){
         Address address = new Address("Poland", "30-091", "Cracow", "street", 3);
@@ -68,7 +98,52 @@ public class CustomerServiceTest {
         customerService.removeCustomerFromDatabase(customer.getId());
 
         assertNull(entityManager.find(Customer.class,customer.getId()));
-        assertEquals(0,address.getCustomers().size());
+        assertEquals(0,entityManager.find(Address.class,address.getId()).getCustomers().size());
+    }
+
+    @Test
+    public void method_getCustomerWithOrderHistory_desc_CustomerServiceShouldLoadCartsLinesAndProductsWithoutQueryPerCart() {
+        Address address = new Address("Poland", "30-091", "Cracow", "street", 5);
+        Customer customer = new Customer("Oliver", "Smith", "xyz@test.com", new Date(11111999L), "password", false, address);
+        customerService.addCustomerToDatabase(customer);
+
+        Product product = new Product("history1", 0, 100, 10, "testHistory1", 1, ProductType.BAG);
+        Product secondProduct = new Product("history2", 0, 50, 10, "testHistory2", 1, ProductType.BAG);
+        productService.addProductToDatabase(product);
+        productService.addProductToDatabase(secondProduct);
+        productService.addKeyValueProperty(product.getId(), "colour", "black");
+
+        List<ShoppingCart> shoppingCarts = List.of(
+                new ShoppingCart(new Date(11112020), 0, Status.COLLECTED, customer),
+                new ShoppingCart(new Date(11112021), 0, Status.SHIPPED, customer),
+                new ShoppingCart(new Date(11112022), 0, Status.IN_PROGRESS, customer));
+        for (ShoppingCart shoppingCart : shoppingCarts) {
+            shoppingCartService.addShoppingCartToDatabase(shoppingCart);
+            shoppingCartService.addProductToShoppingCart(shoppingCart.getId(), product);
+            shoppingCartService.addProductToShoppingCart(shoppingCart.getId(), secondProduct);
+        }
+
+        Customer summary = assertStatementCount(1, () -> customerService.getCustomerWithOrderSummary(customer.getId()));
+        Customer history = assertStatementCount(2, () -> customerService.getCustomerWithOrderHistory(customer.getId()));
+
+        int cartsInSummary = summary.getShoppingCarts().size();
+        int linesInHistory = history.getShoppingCarts().stream().mapToInt(shoppingCart -> shoppingCart.getLines().size()).sum();
+        int propertiesInHistory = history.getShoppingCarts().stream()
+                .flatMap(shoppingCart -> shoppingCart.getLines().stream())
+                .mapToInt(line -> line.getProduct().getProperties().size())
+                .sum();
+
+        for (ShoppingCart shoppingCart : shoppingCarts) {
+            shoppingCartService.removeShoppingCartFromDatabase(shoppingCart.getId());
+        }
+        customerService.removeCustomerFromDatabase(customer.getId());
+        deleteAddressFromDatabase(customer.getAddress().getId());
+        productService.removeProductFromDatabase(product.getId());
+        productService.removeProductFromDatabase(secondProduct.getId());
+
+        assertEquals(3, cartsInSummary);
+        assertEquals(6, linesInHistory);
+        assertEquals(3, propertiesInHistory);
     }
 
     private List<Customer> findCustomers(Customer customer) {
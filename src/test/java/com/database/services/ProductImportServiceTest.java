@@ -0,0 +1,65 @@
+package com.database.services;
+
+import com.database.models.Product;
+import com.database.models.Property;
+import com.database.services.dto.ProductImportReport;
+import org.testng.annotations.AfterSuite;
+import org.testng.annotations.Test;
+
+import javax.persistence.*;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.testng.AssertJUnit.assertEquals;
+
+public class ProductImportServiceTest {
+    private ProductImportService productImportService = new ProductImportService();
+    private EntityManagerFactory entityManagerFactory = Persistence.createEntityManagerFactory("shop-database");
+    private EntityManager entityManager = entityManagerFactory.createEntityManager();
+
+    @Test
+    public void method_importProducts_desc_productImportServiceShouldImportCorrectRowsWithPropertiesAndRejectInvalidRows() throws IOException {
+        Path csvFile = Files.createTempFile("products", ".csv");
+        Files.write(csvFile, Arrays.asList(
+                "name,priceBeforeDiscount,priceAfterDiscount,quantity,description,discount,productType,properties",
+                "import1,100,90,5,\"black, leather\",0.9,BAG,colour=black|length=110cm",
+                "import2,50,50,3,belt,1,BELT,",
+                "import3,notANumber,50,3,belt,1,BELT,",
+                "import4,50,50,3,wallet,1,WALLET,colour="
+        ), StandardCharsets.UTF_8);
+
+        ProductImportReport report = productImportService.importProducts(csvFile, 1);
+
+        List<Product> products = entityManager
+                .createQuery("from Product p where p.name in ('import1', 'import2', 'import3', 'import4')", Product.class)
+                .getResultList();
+        List<Property> properties = entityManager
+                .createQuery("from Property p where p.product in ?1", Property.class)
+                .setParameter(1, products)
+                .getResultList();
+
+        EntityTransaction tx = entityManager.getTransaction();
+        tx.begin();
+        properties.forEach(property -> entityManager.remove(property));
+        products.forEach(product -> entityManager.remove(product));
+        tx.commit();
+        Files.delete(csvFile);
+
+        assertEquals(2, report.getImportedRows());
+        assertEquals(2, report.getImportedProperties());
+        assertEquals(2, report.getRejectedRows());
+        assertEquals(2, products.size());
+        assertEquals(2, properties.size());
+    }
+
+    @AfterSuite
+    private void closeConnection() {
+        productImportService.closeSession();
+        entityManager.close();
+        entityManagerFactory.close();
+    }
+}
@@ -3,15 +3,28 @@ package com.database.services;
 import com.database.models.Product;
 import com.database.models.Property;
 import com.database.models.enums.ProductType;
+import com.database.services.cache.CatalogCacheStatistics;
+import com.database.services.dto.CatalogPage;
+import com.database.services.dto.CatalogQuery;
 import com.database.services.exceptions.InvalidParameterProvidedException;
+import com.database.services.reservation.StockReservations;
 import org.testng.annotations.AfterSuite;
 import org.testng.annotations.Test;
 
 import javax.persistence.*;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertTrue;
 import static org.testng.AssertJUnit.fail;
 
 public class ProductServiceTest {
@@ -50,6 +63,42 @@ public class ProductServiceTest {
         assertEquals(product.getQuantity(), productById.getQuantity());
     }
 
+    @Test
+    public void method_getCatalogPage_desc_productServiceShouldPageFilteredCatalogByPriceUsingLastItemOfPreviousPage() {
+        Product cheapest = new Product("test14", 9001, 9001, 1, "test", 1, ProductType.WALLET);
+        Product middle = new Product("test15", 9002, 9002, 1, "test", 1, ProductType.WALLET);
+        Product mostExpensive = new Product("test16", 9003, 9003, 1, "test", 1, ProductType.WALLET);
+        Product outOfStock = new Product("test17", 9002, 9002, 0, "test", 1, ProductType.WALLET);
+
+        productService.addProductToDatabase(mostExpensive);
+        productService.addProductToDatabase(cheapest);
+        productService.addProductToDatabase(outOfStock);
+        productService.addProductToDatabase(middle);
+
+        CatalogQuery catalogQuery = new CatalogQuery(CatalogQuery.Sort.PRICE_ASC, 2);
+        catalogQuery.setProductType(ProductType.WALLET);
+        catalogQuery.setMinPrice(9000f);
+        catalogQuery.setMaxPrice(9100f);
+        catalogQuery.setInStockOnly(true);
+
+        CatalogPage firstPage = productService.getCatalogPage(catalogQuery);
+        catalogQuery.setAfter(firstPage.getLastItem());
+        CatalogPage secondPage = productService.getCatalogPage(catalogQuery);
+
+        deleteInputedProductFromDatabase(cheapest.getId());
+        deleteInputedProductFromDatabase(middle.getId());
+        deleteInputedProductFromDatabase(mostExpensive.getId());
+        deleteInputedProductFromDatabase(outOfStock.getId());
+
+        assertEquals(2, firstPage.getItems().size());
+        assertEquals(cheapest.getId(), firstPage.getItems().get(0).getId());
+        assertEquals(middle.getId(), firstPage.getItems().get(1).getId());
+        assertTrue(firstPage.hasNext());
+        assertEquals(1, secondPage.getItems().size());
+        assertEquals(mostExpensive.getId(), secondPage.getItems().get(0).getId());
+        assertFalse(secondPage.hasNext());
+    }
+
     @Test
     public void method_removeProductFromDatabase_desc_productServiceShouldRemoveNewProductEntityFromDatabaseAndShouldRemoveAllConectedProperties() {
         Product product = new Product("test3", 0, 0, 1, "test", 1, ProductType.BAG);
@@ -71,6 +120,94 @@ public class ProductServiceTest {
         assertEquals(0, properties.size());
     }
 
+    @Test
+    public void method_getProductById_desc_productServiceShouldServeRepeatedLookupsFromCacheAndSeeUpdates() {
+        Product product = new Product("test13", 0, 0, 5, "test", 1, ProductType.WALLET);
+
+        productService.addProductToDatabase(product);
+        productService.getProductById(product.getId());
+        CatalogCacheStatistics before = productService.getCatalogCacheStatistics();
+        productService.getProductById(product.getId());
+        CatalogCacheStatistics after = productService.getCatalogCacheStatistics();
+
+        productService.updateName(product.getId(), "test13 renamed");
+        productService.buyProduct(product.getId(), 2);
+        Product productById = productService.getProductById(product.getId());
+
+        deleteInputedProductFromDatabase(product.getId());
+
+        assertTrue(after.isStatisticsEnabled());
+        assertEquals(before.getHitCount() + 1, after.getHitCount());
+        assertEquals("test13 renamed", productById.getName());
+        assertEquals(3, productById.getQuantity());
+    }
+
+    @Test
+    public void method_repriceProductsWithProperty_desc_productServiceShouldRepriceMatchingProductsAndEvictThemFromCache() {
+        Product first = new Product("test18", 100, 100, 1, "test", 1, ProductType.BAG);
+        Product second = new Product("test19", 200, 200, 1, "test", 1, ProductType.WALLET);
+        Product other = new Product("test20", 300, 300, 1, "test", 1, ProductType.BAG);
+
+        productService.addProductToDatabase(first);
+        productService.addProductToDatabase(second);
+        productService.addProductToDatabase(other);
+        productService.addKeyValueProperty(first.getId(), "campaign", "test-sale");
+        productService.addKeyValueProperty(second.getId(), "campaign", "test-sale");
+        productService.getProductById(first.getId());
+        productService.getProductById(second.getId());
+
+        int repriced = productService.repriceProductsWithProperty("campaign", "test-sale", 0.75f);
+        Product firstById = productService.getProductById(first.getId());
+        Product secondById = productService.getProductById(second.getId());
+        Product otherById = productService.getProductById(other.getId());
+
+        productService.removeProductFromDatabase(first.getId());
+        productService.removeProductFromDatabase(second.getId());
+        productService.removeProductFromDatabase(other.getId());
+
+        assertEquals(2, repriced);
+        assertEquals(0.75f, firstById.getDiscount());
+        assertEquals(75f, firstById.getPriceAfterDiscount());
+        assertEquals(150f, secondById.getPriceAfterDiscount());
+        assertEquals(1f, otherById.getDiscount());
+        assertEquals(300f, otherById.getPriceAfterDiscount());
+    }
+
+    @Test
+    public void method_repriceProductType_desc_productServiceShouldReturnInvalidParameterProvidedExceptionForDiscountHigherThanOne() {
+        try {
+            productService.repriceProductType(ProductType.BAG, 1.5f);
+            fail();
+        } catch (InvalidParameterProvidedException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Test
+    public void method_updateName_desc_productServiceShouldNotWriteBackQuantityOfCachedProduct() {
+        Product product = new Product("test21", 10, 10, 5, "test", 1, ProductType.BAG);
+
+        productService.addProductToDatabase(product);
+        productService.getProductById(product.getId());
+        EntityTransaction tx = entityManager.getTransaction();
+        tx.begin();
+        entityManager.createQuery("update Product p set p.quantity = 3 where p.id = ?1").setParameter(1, product.getId()).executeUpdate();
+        tx.commit();
+        productService.updateName(product.getId(), "test21 renamed");
+        productService.updatePrice(product.getId(), 20);
+        Integer quantity = entityManager.createQuery("select p.quantity from Product p where p.id = ?1", Integer.class)
+                .setParameter(1, product.getId())
+                .getSingleResult();
+        Product productById = productService.getProductById(product.getId());
+
+        productService.removeProductFromDatabase(product.getId());
+
+        assertEquals(3, quantity.intValue());
+        assertEquals("test21 renamed", productById.getName());
+        assertEquals(20f, productById.getPriceAfterDiscount());
+        assertEquals(3, productById.getQuantity());
+    }
+
     @Test
     public void method_buyProduct_desc_productServiceShouldBuyNewProductFromDatabse() {
         Product product = new Product("test4", 0, 0, 1, "test", 1, ProductType.BAG);
@@ -120,6 +257,125 @@ public class ProductServiceTest {
         }
     }
 
+    @Test
+    public void method_buyProduct_desc_productServiceShouldNotSellStockReservedByShoppingCart() {
+        Product product = new Product("test30", 0, 0, 5, "test", 1, ProductType.BAG);
+        productService.addProductToDatabase(product);
+        StockReservations reservations = new StockReservations(60_000, 100, productId -> productService.getProductById(productId).getQuantity());
+        productService.setStockReservations(reservations);
+        try {
+            reservations.reserve(1, product.getId(), 3);
+
+            try {
+                productService.buyProduct(product.getId(), 3);
+                fail();
+            } catch (InvalidParameterProvidedException e) {
+                e.printStackTrace();
+            }
+            productService.buyProduct(product.getId(), 2);
+            productService.buyProducts(1L, Map.of(product.getId(), 3));
+
+            assertEquals(0, productService.getProductById(product.getId()).getQuantity());
+        } finally {
+            productService.setStockReservations(null);
+            deleteInputedProductFromDatabase(product.getId());
+        }
+    }
+
+    @Test
+    public void method_buyProduct_desc_productServiceShouldNotOversellProductBoughtConcurrently() throws InterruptedException {
+        int threads = 32;
+        int purchasesPerThread = 10;
+        int stock = 200;
+        Product product = new Product("test8", 0, 0, stock, "test", 1, ProductType.BAG);
+
+        productService.addProductToDatabase(product);
+
+        AtomicInteger successfulPurchases = new AtomicInteger();
+        AtomicInteger rejectedPurchases = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executorService = Executors.newFixedThreadPool(threads);
+
+        for (int i = 0; i < threads; i++) {
+            executorService.submit(() -> {
+                start.await();
+                for (int j = 0; j < purchasesPerThread; j++) {
+                    try {
+                        productService.buyProduct(product.getId(), 1);
+                        successfulPurchases.incrementAndGet();
+                    } catch (InvalidParameterProvidedException e) {
+                        rejectedPurchases.incrementAndGet();
+                    }
+                }
+                return null;
+            });
+        }
+
+        start.countDown();
+        executorService.shutdown();
+        boolean finished = executorService.awaitTermination(60, TimeUnit.SECONDS);
+
+        Product productById = productService.getProductById(product.getId());
+
+        deleteInputedProductFromDatabase(product.getId());
+
+        assertTrue(finished);
+        assertEquals(0, productById.getQuantity());
+        assertEquals(stock, successfulPurchases.get());
+        assertEquals(threads * purchasesPerThread - stock, rejectedPurchases.get());
+    }
+
+    @Test
+    public void method_buyProducts_desc_productServiceShouldBuyEveryLineOfCart() {
+        Product firstProduct = new Product("test9", 0, 0, 3, "test", 1, ProductType.BAG);
+        Product secondProduct = new Product("test10", 0, 0, 5, "test", 1, ProductType.BELT);
+
+        productService.addProductToDatabase(firstProduct);
+        productService.addProductToDatabase(secondProduct);
+
+        Map<Long, Integer> cart = new HashMap<>();
+        cart.put(firstProduct.getId(), 1);
+        cart.put(secondProduct.getId(), 5);
+        productService.buyProducts(cart);
+
+        Product firstProductById = productService.getProductById(firstProduct.getId());
+        Product secondProductById = productService.getProductById(secondProduct.getId());
+
+        deleteInputedProductFromDatabase(firstProduct.getId());
+        deleteInputedProductFromDatabase(secondProduct.getId());
+
+        assertEquals(2, firstProductById.getQuantity());
+        assertEquals(0, secondProductById.getQuantity());
+    }
+
+    @Test
+    public void method_buyProducts_desc_productServiceShouldBuyNothingWhenOneLineHasNotEnoughQuantity() {
+        Product firstProduct = new Product("test11", 0, 0, 3, "test", 1, ProductType.BAG);
+        Product secondProduct = new Product("test12", 0, 0, 1, "test", 1, ProductType.BELT);
+
+        productService.addProductToDatabase(firstProduct);
+        productService.addProductToDatabase(secondProduct);
+
+        Map<Long, Integer> cart = new HashMap<>();
+        cart.put(firstProduct.getId(), 1);
+        cart.put(secondProduct.getId(), 2);
+        try {
+            productService.buyProducts(cart);
+            fail();
+        } catch (InvalidParameterProvidedException e) {
+            e.printStackTrace();
+        }
+
+        Product firstProductById = productService.getProductById(firstProduct.getId());
+        Product secondProductById = productService.getProductById(secondProduct.getId());
+
+        deleteInputedProductFromDatabase(firstProduct.getId());
+        deleteInputedProductFromDatabase(secondProduct.getId());
+
+        assertEquals(3, firstProductById.getQuantity());
+        assertEquals(1, secondProductById.getQuantity());
+    }
+
     @Test
     public void method_addKeyValueProperty_desc_productServiceShouldAddPropertyToTable() {
         Product product = new Product("test6", 0, 0, 1, "test", 1, ProductType.BAG);
@@ -132,6 +388,7 @@ public class ProductServiceTest {
         query.setParameter(2, "M");
 
         List resultList = query.getResultList();
+        int propertiesOfProduct = entityManager.find(Product.class, product.getId()).getProperties().size();
         EntityTransaction tx = entityManager.getTransaction();
 
         tx.begin();
@@ -141,7 +398,7 @@ public class ProductServiceTest {
         deleteInputedProductFromDatabase(product.getId());
 
         assertEquals(1, resultList.size());
-        assertEquals(1, product.getProperties().size());
+        assertEquals(1, propertiesOfProduct);
     }
 
     @Test
@@ -0,0 +1,137 @@
+package com.database.services;
+
+import com.database.models.Address;
+import com.database.models.Customer;
+import com.database.models.Product;
+import com.database.models.SalesSummary;
+import com.database.models.ShoppingCart;
+import com.database.models.enums.ProductType;
+import com.database.models.enums.Status;
+import org.testng.annotations.AfterSuite;
+import org.testng.annotations.Test;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+import javax.persistence.Persistence;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNull;
+
+public class SalesSummaryServiceTest {
+    private SalesSummaryService salesSummaryService = new SalesSummaryService();
+    private ProductService productService = new ProductService();
+    private ShoppingCartService shoppingCartService = new ShoppingCartService();
+    private CustomerService customerService = new CustomerService();
+    private EntityManagerFactory entityManagerFactory = Persistence.createEntityManagerFactory("shop-database");
+    private EntityManager entityManager = entityManagerFactory.createEntityManager();
+
+    @Test
+    public void method_updateStatus_desc_CheckoutShouldAddCartToSalesSummaryOfItsPurchaseDayAndReturnToUnpaidShouldTakeItOut() {
+        LocalDate day = LocalDate.of(2001, 3, 4);
+        Address address = new Address("Poland", "30-091", "Cracow", "street", 7);
+        Customer customer = new Customer("Max", "Smith", "xyz@test.com", Timestamp.valueOf(day.atStartOfDay()), "password", false, address);
+        ShoppingCart shoppingCart = new ShoppingCart(Timestamp.valueOf(day.atTime(12, 0)), 0, Status.UNPAID, customer);
+        shoppingCartService.addShoppingCartToDatabase(shoppingCart);
+
+        Product wallet = new Product("summary1", 0, 20, 10, "testSummary1", 1, ProductType.WALLET);
+        Product secondWallet = new Product("summary2", 0, 5, 10, "testSummary2", 1, ProductType.WALLET);
+        Product belt = new Product("summary3", 0, 7, 10, "testSummary3", 1, ProductType.BELT);
+        productService.addProductToDatabase(wallet);
+        productService.addProductToDatabase(secondWallet);
+        productService.addProductToDatabase(belt);
+        shoppingCartService.addProductToShoppingCart(shoppingCart.getId(), wallet, 2);
+        shoppingCartService.addProductToShoppingCart(shoppingCart.getId(), secondWallet, 3);
+        shoppingCartService.addProductToShoppingCart(shoppingCart.getId(), belt, 1);
+
+        SalesSummary walletsBefore = salesSummaryService.getSalesSummary(ProductType.WALLET, day);
+        SalesSummary beltsBefore = salesSummaryService.getSalesSummary(ProductType.BELT, day);
+        shoppingCartService.updateStatus(shoppingCart.getId(), Status.IN_PROGRESS);
+        SalesSummary walletsAfterCheckout = salesSummaryService.getSalesSummary(ProductType.WALLET, day);
+        SalesSummary beltsAfterCheckout = salesSummaryService.getSalesSummary(ProductType.BELT, day);
+        shoppingCartService.addProductToShoppingCart(shoppingCart.getId(), belt, 1);
+        SalesSummary beltsAfterLineAdded = salesSummaryService.getSalesSummary(ProductType.BELT, day);
+        shoppingCartService.updateStatus(shoppingCart.getId(), Status.UNPAID);
+        SalesSummary walletsAfterReturn = salesSummaryService.getSalesSummary(ProductType.WALLET, day);
+
+        shoppingCartService.removeShoppingCartFromDatabase(shoppingCart.getId());
+        customerService.removeCustomerFromDatabase(customer.getId());
+        deleteInputedAddressFromDatabase(customer.getAddress().getId());
+        productService.removeProductFromDatabase(wallet.getId());
+        productService.removeProductFromDatabase(secondWallet.getId());
+        productService.removeProductFromDatabase(belt.getId());
+
+        assertEquals(5, unitsSold(walletsAfterCheckout) - unitsSold(walletsBefore));
+        assertEquals(55.0, revenue(walletsAfterCheckout) - revenue(walletsBefore), 0.001);
+        assertEquals(1, unitsSold(beltsAfterCheckout) - unitsSold(beltsBefore));
+        assertEquals(7.0, revenue(beltsAfterCheckout) - revenue(beltsBefore), 0.001);
+        assertEquals(2, unitsSold(beltsAfterLineAdded) - unitsSold(beltsBefore));
+        assertEquals(unitsSold(walletsBefore), unitsSold(walletsAfterReturn));
+    }
+
+    @Test
+    public void method_rebuildSalesSummary_desc_SalesSummaryServiceShouldRecomputeDaysFromSoldCarts() {
+        LocalDate day = LocalDate.of(2001, 2, 3);
+        Address address = new Address("Poland", "30-091", "Cracow", "street", 6);
+        Customer customer = new Customer("Max", "Smith", "xyz@test.com", Timestamp.valueOf(day.atStartOfDay()), "password", false, address);
+
+        ShoppingCart shippedShoppingCart = new ShoppingCart(Timestamp.valueOf(day.atTime(10, 0)), 0, Status.SHIPPED, customer);
+        ShoppingCart nextDayShoppingCart = new ShoppingCart(Timestamp.valueOf(day.plusDays(1).atTime(9, 0)), 0, Status.COLLECTED, customer);
+        ShoppingCart unpaidShoppingCart = new ShoppingCart(Timestamp.valueOf(day.atTime(11, 0)), 0, Status.UNPAID, customer);
+        shoppingCartService.addShoppingCartToDatabase(shippedShoppingCart);
+        shoppingCartService.addShoppingCartToDatabase(nextDayShoppingCart);
+        shoppingCartService.addShoppingCartToDatabase(unpaidShoppingCart);
+
+        Product bag = new Product("summary4", 0, 30, 10, "testSummary4", 1, ProductType.BAG);
+        productService.addProductToDatabase(bag);
+        shoppingCartService.addProductToShoppingCart(shippedShoppingCart.getId(), bag, 2);
+        shoppingCartService.addProductToShoppingCart(nextDayShoppingCart.getId(), bag, 1);
+        shoppingCartService.addProductToShoppingCart(unpaidShoppingCart.getId(), bag, 4);
+
+        int rebuiltDays = salesSummaryService.rebuildSalesSummary(day, day.plusDays(3), 2);
+        SalesSummary bags = salesSummaryService.getSalesSummary(ProductType.BAG, day);
+        List<SalesSummary> bagsOfDays = salesSummaryService.getSalesSummaries(ProductType.BAG, day, day.plusDays(3));
+        SalesSummary wallets = salesSummaryService.getSalesSummary(ProductType.WALLET, day);
+
+        for (ShoppingCart shoppingCart : List.of(shippedShoppingCart, nextDayShoppingCart, unpaidShoppingCart)) {
+            shoppingCartService.removeShoppingCartFromDatabase(shoppingCart.getId());
+        }
+        salesSummaryService.rebuildSalesSummary(day, day.plusDays(3), 2);
+        customerService.removeCustomerFromDatabase(customer.getId());
+        deleteInputedAddressFromDatabase(customer.getAddress().getId());
+        productService.removeProductFromDatabase(bag.getId());
+
+        assertEquals(3, rebuiltDays);
+        assertEquals(2, bags.getUnitsSold());
+        assertEquals(60.0, bags.getRevenue(), 0.001);
+        assertEquals(2, bagsOfDays.size());
+        assertEquals(1, bagsOfDays.get(1).getUnitsSold());
+        assertNull(wallets);
+    }
+
+    private static long unitsSold(SalesSummary salesSummary) {
+        return salesSummary == null ? 0 : salesSummary.getUnitsSold();
+    }
+
+    private static double revenue(SalesSummary salesSummary) {
+        return salesSummary == null ? 0 : salesSummary.getRevenue();
+    }
+
+    private void deleteInputedAddressFromDatabase(Long addressId) {
+        EntityTransaction tx = entityManager.getTransaction();
+        Address address = entityManager.find(Address.class, addressId);
+        tx.begin();
+        entityManager.remove(address);
+        tx.commit();
+    }
+
+    @AfterSuite
+    private void closeConnection() {
+        salesSummaryService.closeSession();
+        entityManager.close();
+        entityManagerFactory.close();
+    }
+}
@@ -1,11 +1,13 @@
 package com.database.services;
 
 import com.database.models.Address;
+import com.database.models.CartLine;
 import com.database.models.Customer;
 import com.database.models.Product;
 import com.database.models.ShoppingCart;
 import com.database.models.enums.ProductType;
 import com.database.models.enums.Status;
+import com.database.services.dto.OrderHistoryPage;
 import org.testng.annotations.AfterSuite;
 import org.testng.annotations.Test;
 
@@ -13,10 +15,20 @@ import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.EntityTransaction;
 import javax.persistence.Persistence;
+import java.util.ArrayList;
 import java.util.Date;
-
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static com.database.services.metrics.StatementCountAssertions.assertStatementCount;
 import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
 import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertTrue;
 
 public class ShoppingCartServiceTest {
     private ShoppingCartService shoppingCartService = new ShoppingCartService();
@@ -52,13 +64,19 @@ public class ShoppingCartServiceTest {
 
         shoppingCartService.addProductToShoppingCart(shoppingCart.getId(), product);
 
+        ShoppingCart storedShoppingCart = findShoppingCart(shoppingCart.getId());
+        int productsInShoppingCart = storedShoppingCart.getLines().size();
+        long shoppingCartsOfProduct = countCartLinesOfProduct(product.getId());
+        float totalPrice = storedShoppingCart.getTotalPrice();
+
         deleteInputedShoppingCartFromDatabase(shoppingCart.getId());
         deleteInputedCustomerFromDatabase(customer.getId());
         deleteInputedAddressFromDatabase(address.getId());
+        deleteInputedProductFromDatabase(product.getId());
 
-        assertEquals(1, shoppingCart.getProducts().size());
-        assertEquals(1, product.getShoppingCarts().size());
-        assertEquals(100.0f, shoppingCart.getTotalPrice());
+        assertEquals(1, productsInShoppingCart);
+        assertEquals(1, shoppingCartsOfProduct);
+        assertEquals(100.0f, totalPrice);
     }
 
     @Test
@@ -92,12 +110,15 @@ public class ShoppingCartServiceTest {
 
         shoppingCartService.removeShoppingCartFromDatabase(shoppingCart.getId());
 
+        ShoppingCart storedShoppingCart = findShoppingCart(shoppingCart.getId());
+        long shoppingCartsOfProduct = countCartLinesOfProduct(product.getId());
+
         deleteInputedCustomerFromDatabase(customer.getId());
         deleteInputedAddressFromDatabase(address.getId());
         deleteInputedProductFromDatabase(product.getId());
 
-        assertNull(entityManager.find(ShoppingCart.class, shoppingCart.getId()));
-        assertEquals(0, product.getShoppingCarts().size());
+        assertNull(storedShoppingCart);
+        assertEquals(0, shoppingCartsOfProduct);
     }
 
     @Test
@@ -115,14 +136,208 @@ public class ShoppingCartServiceTest {
         shoppingCartService.addProductToShoppingCart(shoppingCart.getId(), product);
         shoppingCartService.removeProductFromShoppingCart(shoppingCart.getId(), product);
 
+        ShoppingCart storedShoppingCart = findShoppingCart(shoppingCart.getId());
+        float totalPrice = storedShoppingCart.getTotalPrice();
+        int productsInShoppingCart = storedShoppingCart.getLines().size();
+        long shoppingCartsOfProduct = countCartLinesOfProduct(product.getId());
+
+        deleteInputedShoppingCartFromDatabase(shoppingCart.getId());
+        deleteInputedCustomerFromDatabase(customer.getId());
+        deleteInputedAddressFromDatabase(address.getId());
+        deleteInputedProductFromDatabase(product.getId());
+
+        assertEquals(0.0f,totalPrice);
+        assertEquals(0, productsInShoppingCart);
+        assertEquals(0, shoppingCartsOfProduct);
+    }
+
+    @Test
+    public void method_addProductToShoppingCart_desc_ShoppingCartServiceShouldKeepQuantityOnOneLine() {
+        Address address = new Address("Poland", "30-091", "Cracow", "street", 3);
+        Customer customer = new Customer("Adam", "Smith", "xyz@test.com", new Date(11111999L), "password", false, address);
+
+        ShoppingCart shoppingCart = new ShoppingCart(new Date(11112020), 0, Status.IN_PROGRESS, customer);
+
+        Product product = new Product("test1", 0, 100, 5, "testSHC4", 1, ProductType.BELT);
+        productService.addProductToDatabase(product);
+
+        shoppingCartService.addShoppingCartToDatabase(shoppingCart);
+
+        shoppingCartService.addProductToShoppingCart(shoppingCart.getId(), product);
+        shoppingCartService.addProductToShoppingCart(shoppingCart.getId(), product, 2);
+        shoppingCartService.removeProductFromShoppingCart(shoppingCart.getId(), product, 1);
+
+        List<CartLine> lines = shoppingCartService.getCartLines(shoppingCart.getId());
+        float totalPrice = findShoppingCart(shoppingCart.getId()).getTotalPrice();
+
+        deleteInputedShoppingCartFromDatabase(shoppingCart.getId());
+        deleteInputedCustomerFromDatabase(customer.getId());
+        deleteInputedAddressFromDatabase(address.getId());
+        deleteInputedProductFromDatabase(product.getId());
+
+        assertEquals(1, lines.size());
+        assertEquals(2, lines.get(0).getQuantity());
+        assertEquals(100.0f, lines.get(0).getUnitPrice());
+        assertEquals(200.0f, totalPrice);
+    }
+
+    @Test
+    public void method_addProductToShoppingCart_desc_ShoppingCartServiceShouldMergeConcurrentFirstAddsIntoOneLine() throws Exception {
+        Address address = new Address("Poland", "30-091", "Cracow", "street", 3);
+        Customer customer = new Customer("Adam", "Smith", "xyz@test.com", new Date(11111999L), "password", false, address);
+
+        ShoppingCart shoppingCart = new ShoppingCart(new Date(11112020), 0, Status.IN_PROGRESS, customer);
+
+        Product product = new Product("test1", 0, 100, 5, "testSHC9", 1, ProductType.BELT);
+        productService.addProductToDatabase(product);
+
+        shoppingCartService.addShoppingCartToDatabase(shoppingCart);
+
+        int threads = 4;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        List<Future<Object>> adds = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            adds.add(executorService.submit(() -> {
+                start.await();
+                shoppingCartService.addProductToShoppingCart(shoppingCart.getId(), product);
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<Object> add : adds) {
+            add.get(60, TimeUnit.SECONDS);
+        }
+        executorService.shutdown();
+
+        List<CartLine> lines = shoppingCartService.getCartLines(shoppingCart.getId());
+        float totalPrice = findShoppingCart(shoppingCart.getId()).getTotalPrice();
+
         deleteInputedShoppingCartFromDatabase(shoppingCart.getId());
         deleteInputedCustomerFromDatabase(customer.getId());
         deleteInputedAddressFromDatabase(address.getId());
         deleteInputedProductFromDatabase(product.getId());
 
-        assertEquals(0.0f,shoppingCart.getTotalPrice());
-        assertEquals(0, shoppingCart.getProducts().size());
-        assertEquals(0, product.getShoppingCarts().size());
+        assertEquals(1, lines.size());
+        assertEquals(threads, lines.get(0).getQuantity());
+        assertEquals(threads * 100.0f, totalPrice);
+    }
+
+    @Test
+    public void method_transitionStatus_desc_ShoppingCartServiceShouldMoveOnlyCartsInExpectedStatusOfPurchaseDay() {
+        Address address = new Address("Poland", "30-091", "Cracow", "street", 3);
+        Customer customer = new Customer("Eve", "Smith", "xyz@test.com", new Date(11111999L), "password", false, address);
+
+        ShoppingCart firstPaidCart = new ShoppingCart(new Date(86_400_000L * 20000), 0, Status.UNPAID, customer);
+        ShoppingCart secondPaidCart = new ShoppingCart(new Date(86_400_000L * 20000 + 1000), 0, Status.UNPAID, customer);
+        ShoppingCart shippedCart = new ShoppingCart(new Date(86_400_000L * 20000 + 2000), 0, Status.SHIPPED, customer);
+        ShoppingCart nextDayCart = new ShoppingCart(new Date(86_400_000L * 20001), 0, Status.UNPAID, customer);
+        shoppingCartService.addShoppingCartToDatabase(firstPaidCart);
+        shoppingCartService.addShoppingCartToDatabase(secondPaidCart);
+        shoppingCartService.addShoppingCartToDatabase(shippedCart);
+        shoppingCartService.addShoppingCartToDatabase(nextDayCart);
+
+        List<Long> transitioned = shoppingCartService.transitionStatus(Status.UNPAID, Status.IN_PROGRESS,
+                new Date(86_400_000L * 20000), new Date(86_400_000L * 20001));
+        List<Long> transitionedAgain = shoppingCartService.transitionStatus(List.of(firstPaidCart.getId(), nextDayCart.getId()), Status.IN_PROGRESS, Status.WAITING_FOR_SHIPMENT);
+
+        Status firstPaidCartStatus = findShoppingCart(firstPaidCart.getId()).getStatus();
+        Status shippedCartStatus = findShoppingCart(shippedCart.getId()).getStatus();
+        Status nextDayCartStatus = findShoppingCart(nextDayCart.getId()).getStatus();
+
+        deleteInputedShoppingCartFromDatabase(firstPaidCart.getId());
+        deleteInputedShoppingCartFromDatabase(secondPaidCart.getId());
+        deleteInputedShoppingCartFromDatabase(shippedCart.getId());
+        deleteInputedShoppingCartFromDatabase(nextDayCart.getId());
+        deleteInputedCustomerFromDatabase(customer.getId());
+        deleteInputedAddressFromDatabase(address.getId());
+
+        assertEquals(2, transitioned.size());
+        assertTrue(transitioned.containsAll(List.of(firstPaidCart.getId(), secondPaidCart.getId())));
+        assertEquals(List.of(firstPaidCart.getId()), transitionedAgain);
+        assertEquals(Status.WAITING_FOR_SHIPMENT, firstPaidCartStatus);
+        assertEquals(Status.SHIPPED, shippedCartStatus);
+        assertEquals(Status.UNPAID, nextDayCartStatus);
+    }
+
+    @Test
+    public void method_getShoppingCartWithLines_desc_ShoppingCartServiceShouldLoadLinesAndProductsInTwoStatements() {
+        Address address = new Address("Poland", "30-091", "Cracow", "street", 3);
+        Customer customer = new Customer("Lucas", "Smith", "xyz@test.com", new Date(11111999L), "password", false, address);
+
+        ShoppingCart shoppingCart = new ShoppingCart(new Date(11112020), 0, Status.IN_PROGRESS, customer);
+        shoppingCartService.addShoppingCartToDatabase(shoppingCart);
+
+        Product product = new Product("test6", 0, 100, 10, "testSHC6", 1, ProductType.BAG);
+        Product secondProduct = new Product("test7", 0, 40, 10, "testSHC7", 1, ProductType.BAG);
+        productService.addProductToDatabase(product);
+        productService.addProductToDatabase(secondProduct);
+        shoppingCartService.addProductToShoppingCart(shoppingCart.getId(), product);
+        shoppingCartService.addProductToShoppingCart(shoppingCart.getId(), secondProduct, 2);
+
+        ShoppingCart storedShoppingCart = assertStatementCount(2, () -> shoppingCartService.getShoppingCartWithLines(shoppingCart.getId()));
+        int quantity = storedShoppingCart.getLines().stream().mapToInt(CartLine::getQuantity).sum();
+        int properties = storedShoppingCart.getLines().stream().mapToInt(line -> line.getProduct().getProperties().size()).sum();
+        String customerCity = storedShoppingCart.getCustomer().getAddress().getCity();
+
+        shoppingCartService.removeShoppingCartFromDatabase(shoppingCart.getId());
+        deleteInputedCustomerFromDatabase(customer.getId());
+        deleteInputedAddressFromDatabase(address.getId());
+        deleteInputedProductFromDatabase(product.getId());
+        deleteInputedProductFromDatabase(secondProduct.getId());
+
+        assertEquals(3, quantity);
+        assertEquals(0, properties);
+        assertEquals("Cracow", customerCity);
+    }
+
+    @Test
+    public void method_getOrderHistoryPage_desc_ShoppingCartServiceShouldPageOrdersNewestFirstWithItemCounts() {
+        Address address = new Address("Poland", "30-091", "Cracow", "street", 3);
+        Customer customer = new Customer("Leo", "Smith", "xyz@test.com", new Date(11111999L), "password", false, address);
+
+        ShoppingCart oldestShoppingCart = new ShoppingCart(new Date(1_000_000L), 0, Status.COLLECTED, customer);
+        ShoppingCart middleShoppingCart = new ShoppingCart(new Date(2_000_000L), 0, Status.SHIPPED, customer);
+        ShoppingCart newestShoppingCart = new ShoppingCart(new Date(3_000_000L), 0, Status.IN_PROGRESS, customer);
+        shoppingCartService.addShoppingCartToDatabase(oldestShoppingCart);
+        shoppingCartService.addShoppingCartToDatabase(middleShoppingCart);
+        shoppingCartService.addShoppingCartToDatabase(newestShoppingCart);
+
+        Product product = new Product("test8", 0, 10, 10, "testSHC8", 1, ProductType.BAG);
+        productService.addProductToDatabase(product);
+        shoppingCartService.addProductToShoppingCart(middleShoppingCart.getId(), product, 3);
+
+        OrderHistoryPage firstPage = assertStatementCount(1, () -> shoppingCartService.getOrderHistoryPage(customer.getId(), null, 2));
+        OrderHistoryPage secondPage = shoppingCartService.getOrderHistoryPage(customer.getId(), firstPage.getLastItem(), 2);
+
+        for (ShoppingCart shoppingCart : List.of(oldestShoppingCart, middleShoppingCart, newestShoppingCart)) {
+            shoppingCartService.removeShoppingCartFromDatabase(shoppingCart.getId());
+        }
+        deleteInputedCustomerFromDatabase(customer.getId());
+        deleteInputedAddressFromDatabase(address.getId());
+        deleteInputedProductFromDatabase(product.getId());
+
+        assertEquals(2, firstPage.getItems().size());
+        assertTrue(firstPage.hasNext());
+        assertEquals(newestShoppingCart.getId(), firstPage.getItems().get(0).getId());
+        assertEquals(middleShoppingCart.getId(), firstPage.getItems().get(1).getId());
+        assertEquals(3, firstPage.getItems().get(1).getItemCount());
+        assertEquals(30.0f, firstPage.getItems().get(1).getTotalPrice());
+        assertEquals(0, firstPage.getItems().get(0).getItemCount());
+        assertEquals(1, secondPage.getItems().size());
+        assertEquals(oldestShoppingCart.getId(), secondPage.getItems().get(0).getId());
+        assertFalse(secondPage.hasNext());
+    }
+
+    private long countCartLinesOfProduct(Long productId) {
+        return entityManager.createQuery("select count(l) from CartLine l where l.product.id = ?1", Long.class)
+                .setParameter(1, productId)
+                .getSingleResult();
+    }
+
+    private ShoppingCart findShoppingCart(Long shoppingCartId) {
+        entityManager.clear();
+        return entityManager.find(ShoppingCart.class, shoppingCartId);
     }
 
     private void deleteInputedShoppingCartFromDatabase(Long shoppingCartId) {
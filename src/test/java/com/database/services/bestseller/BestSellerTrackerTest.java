@@ -0,0 +1,86 @@
+package com.database.services.bestseller;
+
+import com.database.models.enums.ProductType;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+public class BestSellerTrackerTest {
+
+    private final List<List<BestSeller>> persisted = new ArrayList<>();
+
+    @Test
+    public void method_record_desc_bestSellerTrackerShouldKeepTopProductsOfEveryTypeInOrder() {
+        BestSellerTracker tracker = new BestSellerTracker(2, persisted::add);
+
+        tracker.record(1, ProductType.BAG, 5);
+        tracker.record(2, ProductType.BAG, 3);
+        tracker.record(3, ProductType.BAG, 4);
+        tracker.record(4, ProductType.BELT, 1);
+        tracker.record(2, ProductType.BAG, 3);
+
+        assertEquals(List.of(2L, 1L), productIds(tracker.getTopSellers(ProductType.BAG)));
+        assertEquals(6, tracker.getTopSellers(ProductType.BAG).get(0).getUnitsSold());
+        assertEquals(List.of(4L), productIds(tracker.getTopSellers(ProductType.BELT)));
+        assertTrue(tracker.getTopSellers(ProductType.WALLET).isEmpty());
+
+        tracker.remove(2);
+
+        assertEquals(List.of(1L, 3L), productIds(tracker.getTopSellers(ProductType.BAG)));
+    }
+
+    @Test
+    public void method_record_desc_bestSellerTrackerShouldCountEveryConcurrentSale() throws Exception {
+        BestSellerTracker tracker = new BestSellerTracker(3, persisted::add);
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        List<Future<?>> buyers = new ArrayList<>();
+        for (int buyer = 0; buyer < 8; buyer++) {
+            buyers.add(executorService.submit(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    tracker.record(i % 5, ProductType.WALLET, i % 5 + 1);
+                }
+            }));
+        }
+        for (Future<?> buyer : buyers) {
+            buyer.get();
+        }
+        executorService.shutdown();
+
+        assertEquals(8 * 2_000 * 5, tracker.getUnitsSold(4));
+        assertEquals(List.of(4L, 3L, 2L), productIds(tracker.getTopSellers(ProductType.WALLET)));
+        assertEquals(8 * 2_000 * 5, tracker.getTopSellers(ProductType.WALLET).get(0).getUnitsSold());
+    }
+
+    @Test
+    public void method_persist_desc_bestSellerTrackerShouldPersistOnlyUnitsSoldSinceLastWrite() {
+        BestSellerTracker tracker = new BestSellerTracker(2, persisted::add);
+        tracker.restore(List.of(new BestSeller(1, ProductType.BAG, 10), new BestSeller(2, ProductType.BAG, 7)));
+
+        tracker.record(2, ProductType.BAG, 5);
+        tracker.record(3, ProductType.BELT, 1);
+
+        assertEquals(List.of(2L, 1L), productIds(tracker.getTopSellers(ProductType.BAG)));
+        assertEquals(2, tracker.persist());
+        assertEquals(List.of(2L, 3L), productIds(persisted.get(0)));
+        assertEquals(5, persisted.get(0).get(0).getUnitsSold());
+        assertEquals(0, tracker.persist());
+
+        tracker.record(1, ProductType.BAG, 1);
+        tracker.close();
+
+        assertEquals(2, persisted.size());
+        assertEquals(1, persisted.get(1).get(0).getUnitsSold());
+    }
+
+    private static List<Long> productIds(List<BestSeller> bestSellers) {
+        return bestSellers.stream().map(BestSeller::getProductId).collect(Collectors.toList());
+    }
+}
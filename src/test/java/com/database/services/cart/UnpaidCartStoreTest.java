@@ -0,0 +1,153 @@
+package com.database.services.cart;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertTrue;
+import static org.testng.AssertJUnit.fail;
+
+public class UnpaidCartStoreTest {
+    private static final long NOT_UNPAID_CART_ID = 100;
+    private static final long REJECTED_CART_ID = 2;
+
+    private final List<List<BufferedCart>> flushedBatches = new ArrayList<>();
+
+    @BeforeMethod
+    public void clearFlushedBatches() {
+        flushedBatches.clear();
+    }
+
+    @Test
+    public void method_flush_desc_unpaidCartStoreShouldWriteChangedCartsOnlyOnFlushInBatches() throws IOException {
+        UnpaidCartStore store = createStore(Files.createTempDirectory("cart-journal"));
+        store.setFlushBatchSize(2);
+
+        store.addProduct(1, 10, 1, 100);
+        store.addProduct(1, 10, 2, 150);
+        store.addProduct(2, 10, 1, 100);
+        store.addProduct(3, 11, 4, 5);
+        store.removeProduct(3, 11, 1);
+
+        assertTrue(flushedBatches.isEmpty());
+        assertNull(store.addProduct(NOT_UNPAID_CART_ID, 10, 1, 100));
+
+        assertEquals(3, store.flush());
+        assertEquals(2, flushedBatches.size());
+        assertEquals(300.0f, flushedBatches.get(0).get(0).getTotalPrice());
+        assertEquals(3, flushedBatches.get(0).get(0).getLine(10).getQuantity());
+        assertEquals(15.0f, flushedBatches.get(1).get(0).getTotalPrice());
+        assertEquals(0, store.flush());
+        store.close();
+    }
+
+    @Test
+    public void method_recover_desc_unpaidCartStoreShouldReplayJournalOfUnflushedCarts() throws IOException {
+        Path journalDirectory = Files.createTempDirectory("cart-journal");
+        UnpaidCartStore crashedStore = createStore(journalDirectory);
+        crashedStore.addProduct(1, 10, 2, 100);
+        crashedStore.addProduct(1, 11, 1, 50);
+        crashedStore.removeProduct(1, 11, 1);
+        crashedStore.addProduct(2, 10, 1, 100);
+        crashedStore.discard(2);
+        appendTornRecord(journalDirectory);
+
+        UnpaidCartStore recoveredStore = createStore(journalDirectory);
+
+        assertEquals(1, recoveredStore.recover());
+        BufferedCart recoveredCart = flushedBatches.get(0).get(0);
+        assertEquals(1, recoveredCart.getShoppingCartId());
+        assertEquals(1, recoveredCart.getLines().size());
+        assertEquals(200.0f, recoveredCart.getTotalPrice());
+        recoveredStore.close();
+    }
+
+    @Test
+    public void method_flush_desc_unpaidCartStoreShouldQuarantineRejectedCartAndWriteTheOthers() throws IOException {
+        Path journalDirectory = Files.createTempDirectory("cart-journal");
+        UnpaidCartStore store = createRejectingStore(journalDirectory, new AtomicBoolean(true));
+
+        store.addProduct(1, 10, 1, 100);
+        store.addProduct(REJECTED_CART_ID, 10, 1, 100);
+        store.addProduct(3, 10, 1, 100);
+
+        assertEquals(2, store.flush());
+        assertEquals(0, store.flush());
+        assertEquals(2, flushedBatches.size());
+        assertEquals(1, store.getQuarantinedCarts().size());
+        assertEquals(REJECTED_CART_ID, store.getQuarantinedCarts().get(0).getShoppingCartId());
+        assertEquals(1, store.getQuarantineCount());
+        assertTrue(store.getLastFlushFailure().getCause() instanceof IllegalArgumentException);
+        assertFalse(store.contains(REJECTED_CART_ID));
+        try (Stream<Path> files = Files.list(journalDirectory)) {
+            assertEquals(1, files.filter(file -> file.getFileName().toString().startsWith("cart-journal-")).count());
+        }
+        store.close();
+    }
+
+    @Test
+    public void method_retryQuarantined_desc_unpaidCartStoreShouldKeepQuarantinedCartAcrossRestartsUntilItIsWritten() throws IOException {
+        Path journalDirectory = Files.createTempDirectory("cart-journal");
+        AtomicBoolean rejecting = new AtomicBoolean(true);
+        UnpaidCartStore store = createRejectingStore(journalDirectory, rejecting);
+        store.addProduct(REJECTED_CART_ID, 10, 2, 100);
+        store.addProduct(REJECTED_CART_ID + 1, 10, 1, 100);
+        store.flush();
+        store.close();
+
+        UnpaidCartStore restartedStore = createRejectingStore(journalDirectory, rejecting);
+        assertEquals(0, restartedStore.recover());
+        assertEquals(1, restartedStore.getQuarantinedCarts().size());
+        try {
+            restartedStore.retryQuarantined(REJECTED_CART_ID);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals(1, restartedStore.getQuarantinedCarts().size());
+        }
+
+        rejecting.set(false);
+        assertTrue(restartedStore.retryQuarantined(REJECTED_CART_ID));
+        assertEquals(200.0f, flushedBatches.get(flushedBatches.size() - 1).get(0).getTotalPrice());
+        assertNull(restartedStore.discardQuarantined(REJECTED_CART_ID));
+        restartedStore.close();
+
+        assertTrue(createRejectingStore(journalDirectory, rejecting).getQuarantinedCarts().isEmpty());
+    }
+
+    private UnpaidCartStore createRejectingStore(Path journalDirectory, AtomicBoolean rejecting) {
+        return new UnpaidCartStore(journalDirectory, FsyncPolicy.ALWAYS,
+                shoppingCartId -> new BufferedCart(shoppingCartId, List.of()),
+                carts -> {
+                    if (rejecting.get() && carts.stream().anyMatch(cart -> cart.getShoppingCartId() == REJECTED_CART_ID)) {
+                        throw new IllegalArgumentException("product of cart doesn't exist");
+                    }
+                    flushedBatches.add(new ArrayList<>(carts));
+                },
+                failure -> failure instanceof IllegalArgumentException);
+    }
+
+    private UnpaidCartStore createStore(Path journalDirectory) {
+        return new UnpaidCartStore(journalDirectory, FsyncPolicy.ALWAYS,
+                shoppingCartId -> shoppingCartId == NOT_UNPAID_CART_ID ? null : new BufferedCart(shoppingCartId, List.of()),
+                carts -> flushedBatches.add(new ArrayList<>(carts)));
+    }
+
+    private void appendTornRecord(Path journalDirectory) throws IOException {
+        try (Stream<Path> segments = Files.list(journalDirectory)) {
+            Path lastSegment = segments.sorted().reduce((first, second) -> second).orElseThrow();
+            Files.write(lastSegment, "L,1,10,7".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.database.services.concurrent;
+
+import com.database.services.exceptions.InvalidParameterProvidedException;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+import static org.testng.AssertJUnit.fail;
+
+public class BoundedServiceExecutorTest {
+
+    @Test
+    public void method_supply_desc_boundedServiceExecutorShouldNeverRunMoreOperationsThanItsLimit() {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger mostRunning = new AtomicInteger();
+        try (BoundedServiceExecutor executor = new BoundedServiceExecutor("test-async", 4)) {
+            List<CompletableFuture<Integer>> lookups = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                int lookup = i;
+                lookups.add(executor.supply(() -> {
+                    mostRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    sleepQuietly(2);
+                    running.decrementAndGet();
+                    return lookup;
+                }));
+            }
+
+            int sum = CompletableFuture.allOf(lookups.toArray(new CompletableFuture[0]))
+                    .thenApply(done -> lookups.stream().mapToInt(CompletableFuture::join).sum())
+                    .join();
+
+            assertEquals(99 * 100 / 2, sum);
+            assertTrue(mostRunning.get() <= 4);
+            assertEquals(0, executor.getRunning());
+        }
+    }
+
+    @Test
+    public void method_supply_desc_boundedServiceExecutorShouldNotStartMorePlatformThreadsThanItsLimit() {
+        Set<String> threadNames = ConcurrentHashMap.newKeySet();
+        try (BoundedServiceExecutor executor = new BoundedServiceExecutor("test-bounded", 2)) {
+            List<CompletableFuture<Void>> operations = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                operations.add(executor.run(() -> {
+                    // virtual threads are unnamed, only the platform threads of the fallback pool are counted
+                    String threadName = Thread.currentThread().getName();
+                    if (threadName.startsWith("test-bounded")) {
+                        threadNames.add(threadName);
+                    }
+                    sleepQuietly(1);
+                }));
+            }
+
+            CompletableFuture.allOf(operations.toArray(new CompletableFuture[0])).join();
+
+            assertTrue(threadNames.size() <= 2);
+            assertEquals(0, executor.getWaiting());
+        }
+    }
+
+    @Test
+    public void method_run_desc_boundedServiceExecutorShouldCompleteExceptionallyWithTheServiceException() {
+        try (BoundedServiceExecutor executor = new BoundedServiceExecutor("test-async", 1)) {
+            CompletableFuture<Void> failed = executor.run(() -> {
+                throw new InvalidParameterProvidedException("productId shouldn't be null");
+            });
+            try {
+                failed.join();
+                fail("expected the operation to fail");
+            } catch (CompletionException e) {
+                assertTrue(e.getCause() instanceof InvalidParameterProvidedException);
+            }
+
+            assertEquals("next", executor.supply(() -> "next").join());
+        }
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.database.services.concurrent;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertTrue;
+
+public class StripedLocksTest {
+
+    private int stock;
+
+    @Test
+    public void method_withLock_desc_stripedLocksShouldSerializeWorkOnTheSameId() throws Exception {
+        StripedLocks locks = new StripedLocks(16);
+        stock = 80_000;
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        List<Future<?>> buyers = new ArrayList<>();
+        for (int buyer = 0; buyer < 8; buyer++) {
+            buyers.add(executorService.submit(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    locks.runWithLock(42, () -> stock--);
+                }
+            }));
+        }
+        for (Future<?> buyer : buyers) {
+            buyer.get();
+        }
+        executorService.shutdown();
+
+        assertEquals(0, stock);
+        assertEquals(80_000, locks.getAcquisitions());
+        assertEquals(0, locks.getQueuedThreads());
+    }
+
+    @Test
+    public void method_withLock_desc_stripedLocksShouldLetIdsOfOtherStripesProceedAndCountWaits() throws Exception {
+        StripedLocks locks = new StripedLocks(10);
+        assertEquals(16, locks.getStripeCount());
+        assertTrue(locks.stripeOf(1) != locks.stripeOf(2));
+
+        CountDownLatch holding = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        Future<?> holder = executorService.submit(() -> locks.runWithLock(1, () -> {
+            holding.countDown();
+            awaitQuietly(release);
+        }));
+        holding.await();
+
+        assertEquals("other stripe", locks.withLock(2, () -> "other stripe"));
+        Future<?> waiter = executorService.submit(() -> locks.runWithLock(1, () -> { }));
+        while (locks.getQueuedThreads() == 0) {
+            Thread.sleep(1);
+        }
+        assertFalse(waiter.isDone());
+
+        release.countDown();
+        holder.get(5, TimeUnit.SECONDS);
+        waiter.get(5, TimeUnit.SECONDS);
+        executorService.shutdown();
+
+        assertEquals(3, locks.getAcquisitions());
+        assertEquals(1, locks.getContendedAcquisitions());
+        assertTrue(locks.getLockWaitMaxMillis() > 0);
+    }
+
+    @Test
+    public void method_withLocks_desc_stripedLocksShouldLockEveryStripeOnceAndReleaseThemAll() {
+        StripedLocks locks = new StripedLocks(4);
+
+        // 1 and 5 share a stripe of four
+        String result = locks.withLocks(List.of(5L, 1L, 2L), () -> {
+            assertEquals(0, locks.getQueuedThreads());
+            return "bought";
+        });
+
+        assertEquals("bought", result);
+        assertEquals(2, locks.getAcquisitions());
+        assertEquals(0, locks.getContendedAcquisitions());
+        assertEquals("free", locks.withLock(1, () -> "free"));
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
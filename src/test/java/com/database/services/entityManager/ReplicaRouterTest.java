@@ -0,0 +1,143 @@
+package com.database.services.entityManager;
+
+import com.database.models.Product;
+import com.database.models.enums.ProductType;
+import com.database.services.ProductService;
+import com.database.services.async.AsyncProductService;
+import com.database.services.concurrent.BoundedServiceExecutor;
+import org.testng.annotations.Test;
+
+import javax.persistence.EntityManager;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static org.testng.AssertJUnit.assertEquals;
+
+/**
+ * Primary and replicas are in-memory H2 databases. Their second-level cache is off, as it would be the
+ * CacheManager of the MySQL test database and closing the primary here would close it for the other tests.
+ */
+public class ReplicaRouterTest {
+
+    @Test
+    public void method_getProductById_desc_replicaRouterShouldReadFromReplicaUnlessTheCallerJustWrote() {
+        EntityManagerFactoryProvider primary = embeddedDatabase();
+        EntityManagerFactoryProvider replica = ReplicaRouter.replicaProvider(embeddedDatabaseProperties(seededReplicaUrl("replica copy")));
+        try (ReplicaRouter router = new ReplicaRouter(List.of(replica), ReplicaRouter.Selection.ROUND_ROBIN, 60_000, 60_000)) {
+            ProductService productService = new ProductService(primary);
+            productService.setReplicaRouter(router);
+            Product product = new Product("primary copy", 10, 10, 1, "replicated product", 1, ProductType.BAG);
+            productService.addProductToDatabase(product);
+
+            String nameAfterWrite = productService.getProductById(product.getId()).getName();
+            String nameOnPrimary = router.onPrimary(() -> productService.getProductById(product.getId()).getName());
+
+            assertEquals("primary copy", nameAfterWrite);
+            assertEquals("primary copy", nameOnPrimary);
+            assertEquals(0, router.getReplicaReads());
+            assertEquals(2, router.getPrimaryReads());
+
+            ProductService readerService = new ProductService(primary);
+            ReplicaRouter readerRouter = new ReplicaRouter(List.of(replica), ReplicaRouter.Selection.LEAST_LOADED, 0, 60_000);
+            readerService.setReplicaRouter(readerRouter);
+
+            assertEquals("replica copy", readerService.getProductById(product.getId()).getName());
+            assertEquals(1, readerRouter.getReplicaReads());
+        } finally {
+            primary.close();
+        }
+    }
+
+    @Test
+    public void method_getProductById_desc_replicaRouterShouldReadAsyncWritesOfTheCallerFromPrimary() {
+        EntityManagerFactoryProvider primary = embeddedDatabase();
+        EntityManagerFactoryProvider replica = ReplicaRouter.replicaProvider(embeddedDatabaseProperties(seededReplicaUrl("replica copy")));
+        try (ReplicaRouter router = new ReplicaRouter(List.of(replica), ReplicaRouter.Selection.ROUND_ROBIN, 60_000, 60_000);
+             BoundedServiceExecutor executor = new BoundedServiceExecutor("test-replica", 2)) {
+            ProductService productService = new ProductService(primary);
+            productService.setReplicaRouter(router);
+            AsyncProductService asyncProductService = new AsyncProductService(productService, executor);
+            Product product = new Product("primary copy", 10, 10, 1, "replicated product", 1, ProductType.BAG);
+
+            String name = asyncProductService.addProductToDatabase(product)
+                    .thenCompose(added -> asyncProductService.getProductById(product.getId()))
+                    .join()
+                    .getName();
+
+            assertEquals("primary copy", name);
+            assertEquals("primary copy", productService.getProductById(product.getId()).getName());
+            assertEquals(0, router.getReplicaReads());
+
+            String nameForOtherCaller = CompletableFuture.supplyAsync(() -> asyncProductService.getProductById(product.getId()).join()).join().getName();
+
+            assertEquals("replica copy", nameForOtherCaller);
+        } finally {
+            primary.close();
+        }
+    }
+
+    @Test
+    public void method_getProductById_desc_replicaRouterShouldFallBackToPrimaryWhileReplicaIsDown() {
+        EntityManagerFactoryProvider primary = embeddedDatabase();
+        Map<String, Object> unreachable = embeddedDatabaseProperties("jdbc:h2:tcp://localhost:1/unreachable");
+        unreachable.put("hibernate.hikari.connectionTimeout", "250");
+        EntityManagerFactoryProvider replica = ReplicaRouter.replicaProvider(unreachable);
+        try (ReplicaRouter router = new ReplicaRouter(List.of(replica), ReplicaRouter.Selection.ROUND_ROBIN, 0, 60_000)) {
+            ProductService productService = new ProductService(primary);
+            productService.setReplicaRouter(router);
+            Product product = new Product("primary only", 10, 10, 1, "product of the primary", 1, ProductType.BAG);
+            productService.addProductToDatabase(product);
+
+            assertEquals("primary only", productService.getProductById(product.getId()).getName());
+            assertEquals("primary only", productService.getProductById(product.getId()).getName());
+
+            assertEquals(1, router.getFailovers());
+            assertEquals(2, router.getPrimaryReads());
+            assertEquals(0, router.getAvailableReplicas());
+        } finally {
+            primary.close();
+        }
+    }
+
+    /**
+     * Creates the schema in a new in-memory database with one product and keeps the database after the
+     * seeding provider is closed.
+     */
+    private static String seededReplicaUrl(String productName) {
+        Map<String, Object> properties = embeddedDatabaseProperties("jdbc:h2:mem:replica-" + UUID.randomUUID() + ";MODE=MySQL;DB_CLOSE_DELAY=-1");
+        properties.put("javax.persistence.schema-generation.database.action", "create");
+        EntityManagerFactoryProvider seeding = new EntityManagerFactoryProvider(EntityManagerFactoryProvider.PERSISTENCE_UNIT_NAME, properties);
+        EntityManager entityManager = seeding.getEntityManagerFactory().createEntityManager();
+        try {
+            entityManager.getTransaction().begin();
+            entityManager.persist(new Product(productName, 10, 10, 1, "replicated product", 1, ProductType.BAG));
+            entityManager.getTransaction().commit();
+        } finally {
+            entityManager.close();
+            seeding.close();
+        }
+        return (String) properties.get("javax.persistence.jdbc.url");
+    }
+
+    private static EntityManagerFactoryProvider embeddedDatabase() {
+        Map<String, Object> properties = embeddedDatabaseProperties("jdbc:h2:mem:primary-" + UUID.randomUUID() + ";MODE=MySQL");
+        properties.put("javax.persistence.schema-generation.database.action", "create");
+        return new EntityManagerFactoryProvider(EntityManagerFactoryProvider.PERSISTENCE_UNIT_NAME, properties);
+    }
+
+    private static Map<String, Object> embeddedDatabaseProperties(String jdbcUrl) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("javax.persistence.jdbc.url", jdbcUrl);
+        properties.put("javax.persistence.jdbc.driver", "org.h2.Driver");
+        properties.put("javax.persistence.jdbc.user", "sa");
+        properties.put("javax.persistence.jdbc.password", "");
+        properties.put("javax.persistence.sharedCache.mode", "NONE");
+        properties.put("hibernate.cache.use_second_level_cache", "false");
+        properties.put("hibernate.cache.use_query_cache", "false");
+        properties.put("hibernate.hikari.minimumIdle", "1");
+        return properties;
+    }
+}
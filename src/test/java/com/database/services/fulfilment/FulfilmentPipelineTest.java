@@ -0,0 +1,93 @@
+package com.database.services.fulfilment;
+
+import com.database.models.enums.Status;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.LongConsumer;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+public class FulfilmentPipelineTest {
+
+    @Test
+    public void method_drain_desc_fulfilmentPipelineShouldMoveCartsThroughEveryStageAndKeepFailedOnes() {
+        InMemoryCartStatusRepository repository = new InMemoryCartStatusRepository();
+        for (long id = 1; id <= 2000; id++) {
+            repository.statuses.put(id, Status.IN_PROGRESS);
+        }
+        repository.statuses.put(5000L, Status.UNPAID);
+
+        List<FulfilmentStageMetrics> metrics = new FulfilmentPipeline(repository)
+                .setBatchSize(100)
+                .setQueueCapacity(1)
+                .setStageConcurrency(8)
+                .addStage(Status.IN_PROGRESS, Status.WAITING_FOR_SHIPMENT, id -> {
+                })
+                .addStage(Status.WAITING_FOR_SHIPMENT, Status.SHIPPED, id -> {
+                    if (id % 10 == 0) {
+                        throw new IllegalStateException("no shipping label for " + id);
+                    }
+                })
+                .drain();
+
+        assertEquals(2000, metrics.get(0).getProcessed());
+        assertEquals(1800, metrics.get(1).getProcessed());
+        assertEquals(200, metrics.get(1).getFailed());
+        assertEquals(0, metrics.get(1).getQueueDepth());
+        assertEquals(Status.SHIPPED, repository.statuses.get(1L));
+        assertEquals(Status.WAITING_FOR_SHIPMENT, repository.statuses.get(10L));
+        assertEquals(Status.UNPAID, repository.statuses.get(5000L));
+    }
+
+    @Test
+    public void method_drain_desc_fulfilmentPipelineShouldNotStartMorePlatformThreadsThanItsStagesCanUse() {
+        InMemoryCartStatusRepository repository = new InMemoryCartStatusRepository();
+        for (long id = 1; id <= 1000; id++) {
+            repository.statuses.put(id, Status.IN_PROGRESS);
+        }
+        Set<String> threadNames = ConcurrentHashMap.newKeySet();
+        LongConsumer recordThread = id -> {
+            // virtual threads are unnamed, only the platform threads of the fallback pool are counted
+            String threadName = Thread.currentThread().getName();
+            if (threadName.startsWith("fulfilment")) {
+                threadNames.add(threadName);
+            }
+        };
+
+        new FulfilmentPipeline(repository)
+                .setStageConcurrency(4)
+                .addStage(Status.IN_PROGRESS, Status.WAITING_FOR_SHIPMENT, recordThread)
+                .addStage(Status.WAITING_FOR_SHIPMENT, Status.SHIPPED, recordThread)
+                .drain();
+
+        assertEquals(Status.SHIPPED, repository.statuses.get(1000L));
+        assertTrue(threadNames.size() <= 2 * (1 + 4));
+    }
+
+    private static class InMemoryCartStatusRepository implements CartStatusRepository {
+        private final Map<Long, Status> statuses = new ConcurrentSkipListMap<>();
+
+        @Override
+        public long[] findCartIds(Status status, long afterId, int limit) {
+            return statuses.entrySet().stream()
+                    .filter(cart -> cart.getKey() > afterId && cart.getValue() == status)
+                    .limit(limit)
+                    .mapToLong(Map.Entry::getKey)
+                    .toArray();
+        }
+
+        @Override
+        public synchronized long[] transition(long[] shoppingCartIds, Status from, Status to) {
+            return Arrays.stream(shoppingCartIds)
+                    .filter(id -> statuses.replace(id, from, to))
+                    .toArray();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.database.services.index;
+
+import com.database.models.enums.ProductType;
+import org.testng.annotations.Test;
+
+import java.util.Map;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+public class ProductFacetIndexTest {
+
+    @Test
+    public void method_findProductIds_desc_productFacetIndexShouldAndDifferentKeysAndOrValuesOfOneKey() {
+        ProductFacetIndex index = createIndex();
+
+        FacetQuery query = new FacetQuery()
+                .withProductTypes(ProductType.BAG)
+                .withAnyOf("colour", "black", "brown");
+
+        assertEquals(2, index.count(query));
+        assertEquals(1L, index.findProductIds(query)[0]);
+        assertEquals(2L, index.findProductIds(query)[1]);
+    }
+
+    @Test
+    public void method_countValues_desc_productFacetIndexShouldIgnoreOwnKeyFilterWhenCountingValues() {
+        ProductFacetIndex index = createIndex();
+
+        FacetQuery query = new FacetQuery()
+                .withProductTypes(ProductType.BAG)
+                .withAnyOf("colour", "black");
+        Map<String, Integer> colours = index.countValues(query, "colour");
+        Map<ProductType, Integer> productTypes = index.countProductTypes(query);
+
+        assertEquals(Integer.valueOf(1), colours.get("black"));
+        assertEquals(Integer.valueOf(1), colours.get("brown"));
+        assertEquals(Integer.valueOf(1), productTypes.get(ProductType.BAG));
+        assertEquals(Integer.valueOf(1), productTypes.get(ProductType.BELT));
+    }
+
+    @Test
+    public void method_removeProduct_desc_productFacetIndexShouldRemoveProductFromEveryFacet() {
+        ProductFacetIndex index = createIndex();
+
+        index.removeProduct(1);
+        index.removeProperty(3, "length", "110cm");
+
+        assertEquals(2, index.count(new FacetQuery()));
+        assertEquals(0, index.count(new FacetQuery().withAnyOf("colour", "black").withProductTypes(ProductType.BAG)));
+        assertTrue(index.countValues(new FacetQuery(), "length").isEmpty());
+    }
+
+    private ProductFacetIndex createIndex() {
+        ProductFacetIndex index = new ProductFacetIndex();
+        index.addProduct(1, ProductType.BAG);
+        index.addProperty(1, "colour", "black");
+        index.addProduct(2, ProductType.BAG);
+        index.addProperty(2, "colour", "brown");
+        index.addProduct(3, ProductType.BELT);
+        index.addProperty(3, "colour", "black");
+        index.addProperty(3, "length", "110cm");
+        return index;
+    }
+}
@@ -0,0 +1,51 @@
+package com.database.services.index;
+
+import org.testng.annotations.Test;
+
+import java.util.List;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+public class ProductSearchIndexTest {
+
+    @Test
+    public void method_search_desc_productSearchIndexShouldRankNameMatchesAboveDescriptionMatches() {
+        ProductSearchIndex index = createIndex();
+
+        List<SearchHit> hits = index.search("leather", 10);
+
+        assertEquals(3, hits.size());
+        assertEquals(1L, hits.get(0).getProductId());
+    }
+
+    @Test
+    public void method_search_desc_productSearchIndexShouldMatchPrefixesDiacriticsAndRequireEveryTerm() {
+        ProductSearchIndex index = createIndex();
+
+        List<SearchHit> hits = index.search("Sk\u00f3rz bel", 10);
+
+        assertEquals(1, hits.size());
+        assertEquals(3L, hits.get(0).getProductId());
+    }
+
+    @Test
+    public void method_index_desc_productSearchIndexShouldReplacePreviousTermsOfProduct() {
+        ProductSearchIndex index = createIndex();
+
+        index.index(1, "Canvas bag", "Light canvas bag");
+        index.remove(2);
+
+        assertEquals(1, index.search("leather", 10).size());
+        assertEquals(1L, index.search("canvas", 10).get(0).getProductId());
+        assertTrue(index.search("wallet", 10).isEmpty());
+    }
+
+    private ProductSearchIndex createIndex() {
+        ProductSearchIndex index = new ProductSearchIndex();
+        index.index(1, "Leather bag", "Brown bag with a long strap");
+        index.index(2, "Wallet", "Small wallet made of black leather");
+        index.index(3, "Belt", "Sk\u00f3rzany pasek, genuine leather");
+        return index;
+    }
+}
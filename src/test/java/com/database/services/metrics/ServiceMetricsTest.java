@@ -0,0 +1,107 @@
+package com.database.services.metrics;
+
+import com.database.services.entityManager.EntityManagerFactoryProvider;
+import com.database.services.entityManager.EntityManagerService;
+import org.testng.annotations.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Map;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+import static org.testng.AssertJUnit.fail;
+
+public class ServiceMetricsTest {
+
+    @Test
+    public void method_record_desc_serviceMetricsShouldCountCallsErrorsStatementsAndTransactions() {
+        ServiceMetrics serviceMetrics = new ServiceMetrics(false);
+        StatementCounter statementCounter = new StatementCounter();
+
+        serviceMetrics.record("ProductService", "buyProduct", () -> {
+            statementCounter.inspect("select 1");
+            statementCounter.inspect("update product set quantity = quantity - 1");
+            ServiceMetrics.recordTransaction(2_000_000);
+            return null;
+        });
+        try {
+            serviceMetrics.record("ProductService", "buyProduct", () -> {
+                throw new IllegalStateException("out of stock");
+            });
+            fail("exception should be rethrown");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        MethodMetrics metrics = serviceMetrics.getMethodMetrics("ProductService", "buyProduct");
+        assertEquals(2, metrics.getCalls());
+        assertEquals(1, metrics.getErrors());
+        assertEquals(1.0, metrics.getStatementsPerCall());
+        assertEquals(1, metrics.getTransactions());
+        assertTrue(metrics.getTransactionP99Millis() >= 1.99 && metrics.getTransactionP99Millis() <= 2.01);
+    }
+
+    @Test
+    public void method_counting_desc_statementCounterShouldCountEveryExecutionOfPlainJdbcStatements() throws SQLException {
+        PreparedStatement statement = (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{PreparedStatement.class},
+                (proxy, method, args) -> method.getReturnType() == int.class ? 1 : method.getReturnType() == int[].class ? new int[]{1, 1} : null);
+        Connection connection = (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> method.getName().equals("prepareStatement") ? statement : null);
+        long before = StatementCounter.current();
+
+        try (PreparedStatement counted = StatementCounter.counting(connection).prepareStatement("update product set quantity = ? where id = ?")) {
+            counted.setInt(1, 1);
+            counted.executeUpdate();
+            counted.addBatch();
+            counted.addBatch();
+            counted.executeBatch();
+        }
+
+        assertEquals(2, StatementCounter.current() - before);
+    }
+
+    @Test
+    public void method_metered_desc_entityManagerServiceShouldRecordCallUnderNameOfCallingMethod() {
+        MeteredService service = new MeteredService();
+
+        service.findAnswer();
+        service.findAnswer();
+
+        assertEquals(2, ServiceMetrics.getDefault().getMethodMetrics("MeteredService", "findAnswer").getCalls());
+    }
+
+    private static class MeteredService extends EntityManagerService {
+        private MeteredService() {
+            super(new EntityManagerFactoryProvider(EntityManagerFactoryProvider.PERSISTENCE_UNIT_NAME, Map.of()));
+        }
+
+        private int findAnswer() {
+            return metered(() -> 42);
+        }
+    }
+
+    @Test
+    public void method_record_desc_serviceMetricsShouldCountNestedCallOnlyAsPartOfOuterCall() {
+        ServiceMetrics serviceMetrics = new ServiceMetrics(false);
+
+        serviceMetrics.record("ShoppingCartService", "addProductToShoppingCart",
+                () -> serviceMetrics.record("ShoppingCartService", "addProductToShoppingCart", () -> 1));
+
+        assertEquals(1, serviceMetrics.getMethodMetrics("ShoppingCartService", "addProductToShoppingCart").getCalls());
+    }
+
+    @Test
+    public void method_writePrometheusText_desc_serviceMetricsShouldExportCountersAndQuantiles() {
+        ServiceMetrics serviceMetrics = new ServiceMetrics(false);
+        serviceMetrics.record("CustomerService", "getCustomerById", () -> null);
+
+        String text = serviceMetrics.toPrometheusText();
+
+        assertTrue(text.contains("service_calls_total{service=\"CustomerService\",method=\"getCustomerById\"} 1\n"));
+        assertTrue(text.contains("service_latency_seconds{service=\"CustomerService\",method=\"getCustomerById\",quantile=\"0.999\"} "));
+        assertTrue(text.contains("service_latency_seconds_count{service=\"CustomerService\",method=\"getCustomerById\"} 1\n"));
+    }
+}
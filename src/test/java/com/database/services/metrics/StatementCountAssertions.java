@@ -0,0 +1,29 @@
+package com.database.services.metrics;
+
+import java.util.function.Supplier;
+
+import static org.testng.AssertJUnit.assertEquals;
+
+/**
+ * Asserts how many SQL statements an operation prepares, so a fetch plan falling back to one query per
+ * entity (N+1) fails the test. The operation has to run on the calling thread.
+ */
+public final class StatementCountAssertions {
+
+    private StatementCountAssertions() {
+    }
+
+    public static <T> T assertStatementCount(long expected, Supplier<T> operation) {
+        long before = StatementCounter.current();
+        T result = operation.get();
+        assertEquals("SQL statements", expected, StatementCounter.current() - before);
+        return result;
+    }
+
+    public static void assertStatementCount(long expected, Runnable operation) {
+        assertStatementCount(expected, () -> {
+            operation.run();
+            return null;
+        });
+    }
+}
@@ -0,0 +1,122 @@
+package com.database.services.reservation;
+
+import org.testng.annotations.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertTrue;
+
+public class StockReservationsTest {
+    private static final long PRODUCT_ID = 7;
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+
+    @Test
+    public void method_reserve_desc_stockReservationsShouldNotReserveMoreThanAvailableToSell() {
+        StockReservations reservations = new StockReservations(60_000, 100, productId -> 5, now::get);
+
+        assertTrue(reservations.reserve(1, PRODUCT_ID, 3));
+        assertFalse(reservations.reserve(2, PRODUCT_ID, 3));
+        assertTrue(reservations.reserve(2, PRODUCT_ID, 2));
+        assertEquals(0, reservations.getAvailableStock(PRODUCT_ID));
+
+        reservations.release(1, PRODUCT_ID, 1);
+        reservations.releaseAll(2);
+
+        assertEquals(3, reservations.getAvailableStock(PRODUCT_ID));
+        assertEquals(2, reservations.getReservedQuantity(1, PRODUCT_ID));
+        assertEquals(0, reservations.getReservedQuantity(2, PRODUCT_ID));
+        assertEquals(1, reservations.getReservationCount());
+    }
+
+    @Test
+    public void method_expire_desc_stockReservationsShouldReleaseReservationsOnlyAfterTheirLastRenewalExpired() {
+        StockReservations reservations = new StockReservations(1_000, 100, productId -> 10, now::get);
+        reservations.reserve(1, PRODUCT_ID, 4);
+        reservations.reserve(2, PRODUCT_ID, 1);
+
+        now.addAndGet(600);
+        reservations.reserve(1, PRODUCT_ID, 1);
+        assertEquals(0, reservations.expire());
+
+        now.addAndGet(500);
+        assertEquals(1, reservations.expire());
+        assertEquals(5, reservations.getAvailableStock(PRODUCT_ID));
+
+        now.addAndGet(600);
+        assertEquals(1, reservations.expire());
+        assertEquals(10, reservations.getAvailableStock(PRODUCT_ID));
+        assertEquals(0, reservations.getReservationCount());
+    }
+
+    @Test
+    public void method_expire_desc_stockReservationsShouldExpireManyReservationsAcrossWheelRotations() {
+        StockReservations reservations = new StockReservations(500_000, 100, productId -> Integer.MAX_VALUE, now::get);
+        for (long shoppingCartId = 0; shoppingCartId < 100_000; shoppingCartId++) {
+            reservations.reserve(shoppingCartId, shoppingCartId % 100, 1);
+            now.addAndGet(shoppingCartId % 10);
+        }
+        assertEquals(100_000, reservations.getReservationCount());
+
+        int expired = 0;
+        for (int i = 0; i < 20; i++) {
+            now.addAndGet(50_000);
+            expired += reservations.expire();
+        }
+
+        assertEquals(100_000, expired);
+        assertEquals(Integer.MAX_VALUE, reservations.getAvailableStock(3));
+    }
+
+    @Test
+    public void method_stockChanged_desc_stockReservationsShouldReloadStockOnHandAfterItChanged() {
+        AtomicInteger stockOnHand = new AtomicInteger(5);
+        StockReservations reservations = new StockReservations(60_000, 100, productId -> stockOnHand.get(), now::get);
+        reservations.reserve(1, PRODUCT_ID, 2);
+
+        stockOnHand.set(3);
+        reservations.stockChanged(PRODUCT_ID);
+
+        assertEquals(1, reservations.getAvailableStock(PRODUCT_ID));
+        assertFalse(reservations.reserve(2, PRODUCT_ID, 2));
+    }
+
+    @Test
+    public void method_stockChanged_desc_stockReservationsShouldDiscardStockOnHandLoadedWhileItChanged() {
+        AtomicInteger stockOnHand = new AtomicInteger(5);
+        AtomicReference<StockReservations> reservations = new AtomicReference<>();
+        AtomicInteger loads = new AtomicInteger();
+        reservations.set(new StockReservations(60_000, 100, productId -> {
+            int read = stockOnHand.get();
+            if (loads.incrementAndGet() == 1) {
+                // a purchase commits after the stock was read and before it is installed
+                stockOnHand.set(3);
+                reservations.get().stockChanged(PRODUCT_ID);
+            }
+            return read;
+        }, now::get));
+
+        assertEquals(3, reservations.get().getAvailableStock(PRODUCT_ID));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void method_holdForSale_desc_stockReservationsShouldHoldOnlyStockNotReservedByOtherCarts() {
+        StockReservations reservations = new StockReservations(60_000, 100, productId -> 5, now::get);
+        reservations.reserve(1, PRODUCT_ID, 3);
+
+        assertFalse(reservations.holdForSale(null, PRODUCT_ID, 3));
+        assertFalse(reservations.holdForSale(2L, PRODUCT_ID, 3));
+        assertTrue(reservations.holdForSale(1L, PRODUCT_ID, 5));
+        assertEquals(0, reservations.getAvailableStock(PRODUCT_ID));
+
+        reservations.releaseHold(PRODUCT_ID, 5);
+        assertTrue(reservations.holdForSale(null, PRODUCT_ID, 2));
+        assertEquals(0, reservations.getAvailableStock(PRODUCT_ID));
+        assertEquals(3, reservations.getReservedQuantity(1, PRODUCT_ID));
+    }
+}
@@ -0,0 +1,57 @@
+package com.database.services.sharding;
+
+import org.testng.annotations.Test;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+public class ConsistentHashRingTest {
+
+    private static final int KEYS = 100_000;
+
+    @Test
+    public void method_shardFor_desc_consistentHashRingShouldSpreadSequentialKeysEvenly() {
+        ConsistentHashRing<String> ring = new ConsistentHashRing<>(shards(4), ConsistentHashRing.DEFAULT_VIRTUAL_NODES);
+
+        Map<String, Integer> keysByShard = new HashMap<>();
+        for (long key = 1; key <= KEYS; key++) {
+            keysByShard.merge(ring.shardFor(key), 1, Integer::sum);
+        }
+
+        assertEquals(4, keysByShard.size());
+        keysByShard.values().forEach(keys -> assertTrue("keys of a shard: " + keys, keys > KEYS * 0.18 && keys < KEYS * 0.32));
+        assertEquals(ring.shardFor(42), new ConsistentHashRing<>(shards(4), ConsistentHashRing.DEFAULT_VIRTUAL_NODES).shardFor(42));
+    }
+
+    @Test
+    public void method_withShard_desc_consistentHashRingShouldMoveOnlyTheKeysOfTheNewShard() {
+        ConsistentHashRing<String> ring = new ConsistentHashRing<>(shards(4), ConsistentHashRing.DEFAULT_VIRTUAL_NODES);
+        ConsistentHashRing<String> grown = ring.withShard("shard-4", "shard-4");
+        ConsistentHashRing<String> shrunk = grown.withoutShard("shard-4");
+
+        int moved = 0;
+        for (long key = 1; key <= KEYS; key++) {
+            String before = ring.shardFor(key);
+            String after = grown.shardFor(key);
+            if (!before.equals(after)) {
+                assertEquals("shard-4", after);
+                moved++;
+            }
+            assertEquals(before, shrunk.shardFor(key));
+        }
+
+        assertTrue("moved keys: " + moved, moved > KEYS * 0.12 && moved < KEYS * 0.28);
+    }
+
+    private static Map<String, String> shards(int count) {
+        Map<String, String> shards = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            shards.put("shard-" + i, "shard-" + i);
+        }
+        return shards;
+    }
+}
@@ -0,0 +1,175 @@
+package com.database.services.sharding;
+
+import com.database.models.Address;
+import com.database.models.Customer;
+import com.database.models.Product;
+import com.database.models.ShoppingCart;
+import com.database.models.enums.ProductType;
+import com.database.models.enums.Status;
+import com.database.services.ProductService;
+import com.database.services.entityManager.EntityManagerFactoryProvider;
+import com.database.services.exceptions.InvalidParameterProvidedException;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.fail;
+
+/**
+ * Three in-memory H2 databases as shards, without the second-level cache shared with the MySQL test database.
+ */
+public class ShardedCustomerServiceTest {
+    private final CustomerShards shards = new CustomerShards(embeddedShards(3), ConsistentHashRing.DEFAULT_VIRTUAL_NODES);
+    private final ShardedCustomerService customerService = new ShardedCustomerService(shards, new CustomerIdGenerator(1));
+    private final ShardedShoppingCartService shoppingCartService = new ShardedShoppingCartService(shards);
+
+    @Test
+    public void method_addCustomerToDatabase_desc_shardedCustomerServiceShouldKeepCustomerAndCartsOnTheShardOfItsId() {
+        List<Customer> customers = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            Customer customer = new Customer("Sharded" + i, "Smith", "xyz@test.com", new Date(11111999L), "password", false,
+                    new Address("Poland", "30-091", "Cracow", "street", i + 1));
+            customerService.addCustomerToDatabase(customer);
+            customers.add(customer);
+        }
+
+        Map<String, Integer> customersByShard = new HashMap<>();
+        for (Customer customer : customers) {
+            Shard shard = shards.shardFor(customer.getId());
+            customersByShard.merge(shard.getName(), 1, Integer::sum);
+            assertEquals(customer.getName(), customerService.getCustomerById(customer.getId()).getName());
+            for (Shard other : shards.getShards().values()) {
+                if (other != shard) {
+                    assertNull(other.getCustomerService().getCustomerById(customer.getId()));
+                }
+            }
+        }
+
+        Customer customer = customers.get(0);
+        ShoppingCart shoppingCart = new ShoppingCart(new Date(11112020), 0, Status.UNPAID, customer);
+        shoppingCartService.addShoppingCartToDatabase(shoppingCart);
+        Product product = productOnEveryShard();
+        shoppingCartService.addProductToShoppingCart(customer.getId(), shoppingCart.getId(), product, 2);
+
+        ShoppingCart storedShoppingCart = shoppingCartService.getShoppingCartWithLines(customer.getId(), shoppingCart.getId());
+        long unpaidCarts = shoppingCartService.countShoppingCarts(Status.UNPAID);
+        Map<String, List<Long>> moved = shoppingCartService.transitionStatus(Status.UNPAID, Status.IN_PROGRESS, new Date(0), new Date());
+
+        assertEquals(3, customersByShard.size());
+        assertNotNull(storedShoppingCart);
+        assertEquals(2, storedShoppingCart.getLines().iterator().next().getQuantity());
+        assertEquals(1, unpaidCarts);
+        assertEquals(List.of(shoppingCart.getId()), moved.get(shards.shardFor(customer.getId()).getName()));
+        assertEquals(0, shoppingCartService.countShoppingCarts(Status.UNPAID));
+    }
+
+    @Test
+    public void method_getShoppingCartById_desc_shardedShoppingCartServiceShouldRejectCartOfAnotherCustomerOnTheSameShard() {
+        Map<String, Customer> firstCustomerByShard = new HashMap<>();
+        Customer owner = null;
+        Customer other = null;
+        for (int i = 0; other == null; i++) {
+            Customer customer = new Customer("Neighbour" + i, "Smith", "xyz@test.com", new Date(11111999L), "password", false,
+                    new Address("Poland", "30-091", "Cracow", "street", i + 100));
+            customerService.addCustomerToDatabase(customer);
+            owner = firstCustomerByShard.putIfAbsent(shards.shardFor(customer.getId()).getName(), customer);
+            if (owner != null) {
+                other = customer;
+            }
+        }
+        ShoppingCart ownersCart = new ShoppingCart(new Date(11112020), 0, Status.UNPAID, owner);
+        ShoppingCart othersCart = new ShoppingCart(new Date(11112020), 0, Status.UNPAID, other);
+        shoppingCartService.addShoppingCartToDatabase(ownersCart);
+        shoppingCartService.addShoppingCartToDatabase(othersCart);
+        Long otherId = other.getId();
+        try {
+            assertEquals(ownersCart.getId(), shoppingCartService.getShoppingCartById(owner.getId(), ownersCart.getId()).getId());
+            assertRejected(() -> shoppingCartService.getShoppingCartById(otherId, ownersCart.getId()));
+            assertRejected(() -> shoppingCartService.updateStatus(otherId, ownersCart.getId(), Status.IN_PROGRESS));
+            assertRejected(() -> shoppingCartService.removeShoppingCartFromDatabase(otherId, ownersCart.getId()));
+            assertEquals(Status.UNPAID, shoppingCartService.getShoppingCartById(owner.getId(), ownersCart.getId()).getStatus());
+        } finally {
+            shoppingCartService.removeShoppingCartFromDatabase(owner.getId(), ownersCart.getId());
+            shoppingCartService.removeShoppingCartFromDatabase(otherId, othersCart.getId());
+        }
+    }
+
+    @Test
+    public void method_addShoppingCartToDatabase_desc_shardedShoppingCartServiceShouldNotAddCustomerAlongWithCart() {
+        Customer transientCustomer = new Customer("Unplaced", "Smith", "xyz@test.com", new Date(11111999L), "password", false,
+                new Address("Poland", "30-091", "Cracow", "street", 99));
+        Customer unknownCustomer = new Customer("Unknown", "Smith", "xyz@test.com", new Date(11111999L), "password", false,
+                new Address("Poland", "30-091", "Cracow", "street", 98));
+        unknownCustomer.setId(new CustomerIdGenerator(2).getAsLong());
+        long unpaidCarts = shoppingCartService.countShoppingCarts(Status.UNPAID);
+
+        assertRejected(() -> shoppingCartService.addShoppingCartToDatabase(new ShoppingCart(new Date(11112020), 0, Status.UNPAID, transientCustomer)));
+        assertRejected(() -> shoppingCartService.addShoppingCartToDatabase(new ShoppingCart(new Date(11112020), 0, Status.UNPAID, unknownCustomer)));
+
+        assertNull(transientCustomer.getId());
+        assertNull(customerService.getCustomerById(unknownCustomer.getId()));
+        assertEquals(unpaidCarts, shoppingCartService.countShoppingCarts(Status.UNPAID));
+    }
+
+    @Test
+    public void method_getShoppingCartService_desc_shardShouldNotExposeItsServicesOutsideOfTheShardedServices() throws NoSuchMethodException {
+        assertFalse(Modifier.isPublic(Shard.class.getDeclaredMethod("getCustomerService").getModifiers()));
+        assertFalse(Modifier.isPublic(Shard.class.getDeclaredMethod("getShoppingCartService").getModifiers()));
+    }
+
+    private static void assertRejected(Runnable operation) {
+        try {
+            operation.run();
+            fail();
+        } catch (InvalidParameterProvidedException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Products are reference data present on every shard, under the same id as the shards start out empty.
+     */
+    private Product productOnEveryShard() {
+        Product product = null;
+        for (Shard shard : shards.getShards().values()) {
+            product = new Product("sharded product", 10, 10, 100, "product on every shard", 1, ProductType.BAG);
+            new ProductService(shard.getEntityManagerFactoryProvider()).addProductToDatabase(product);
+        }
+        return product;
+    }
+
+    private static Map<String, EntityManagerFactoryProvider> embeddedShards(int count) {
+        Map<String, EntityManagerFactoryProvider> providers = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            Map<String, Object> properties = new HashMap<>();
+            properties.put("javax.persistence.jdbc.url", "jdbc:h2:mem:shard-" + UUID.randomUUID() + ";MODE=MySQL");
+            properties.put("javax.persistence.jdbc.driver", "org.h2.Driver");
+            properties.put("javax.persistence.jdbc.user", "sa");
+            properties.put("javax.persistence.jdbc.password", "");
+            properties.put("javax.persistence.schema-generation.database.action", "create");
+            properties.put("javax.persistence.sharedCache.mode", "NONE");
+            properties.put("hibernate.cache.use_second_level_cache", "false");
+            properties.put("hibernate.cache.use_query_cache", "false");
+            properties.put("hibernate.hikari.minimumIdle", "1");
+            providers.put("shard-" + i, new EntityManagerFactoryProvider(EntityManagerFactoryProvider.PERSISTENCE_UNIT_NAME, properties));
+        }
+        return providers;
+    }
+
+    @AfterClass
+    private void closeShards() {
+        shards.close();
+    }
+}